@@ -0,0 +1,128 @@
+package com.backontrack.dots;
+
+import java.util.Random;
+
+/**
+ * Seeded board positions shared by the benchmarks.
+ *
+ * Every position is generated from a seed, so a benchmark run always sees the same boards and
+ * results stay comparable between commits.
+ */
+final class BoardFixtures {
+
+    /** How crowded the generated board is. */
+    enum Profile {
+        /** About a tenth of the cells taken, few lines. */
+        SPARSE(0.10, 0.2),
+        /** About two thirds of the cells taken, most same-owner neighbours connected. */
+        DENSE(0.65, 0.8),
+        /** Rings of player lines around computer dots (and vice versa): many closed polygons and blocked dots. */
+        FENCED(0.35, 0.5);
+
+        final double fill;
+        final double lineRatio;
+
+        Profile(double fill, double lineRatio) {
+            this.fill = fill;
+            this.lineRatio = lineRatio;
+        }
+    }
+
+    /** Board dimensions. */
+    enum BoardSize {
+        /** The 40x30 board of the desktop game. */
+        CLASSIC(40, 30),
+        LARGE(200, 200),
+        HUGE(1000, 1000);
+
+        final int width;
+        final int height;
+
+        BoardSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private BoardFixtures() {
+    }
+
+    static DotMap board(Profile profile, BoardSize size, long seed) {
+        Random random = new Random(seed);
+        DotMap dotMap = new DotMap(size.width, size.height);
+        dotMap.createDotMap();
+        ConnectionStore connections = dotMap.getConnections();
+        int width = connections.getWidth();
+        int height = connections.getHeight();
+
+        if (profile == Profile.FENCED) {
+            for (int top = 1; top + 3 < height; top += 4) {
+                for (int left = 1; left + 3 < width; left += 4) {
+                    int owner = random.nextBoolean() ? 1 : 2;
+                    fence(dotMap, top, left, owner);
+                    attribute(dotMap, dotMap.getDot(top + 1, left + 1), 3 - owner);
+                }
+            }
+        }
+
+        int target = (int) (profile.fill * width * height);
+        int placed = countOwned(dotMap);
+        while (placed < target) {
+            Dot dot = dotMap.getDot(random.nextInt(height), random.nextInt(width));
+            if (dot.getPlayer() != 0) continue;
+            attribute(dotMap, dot, random.nextBoolean() ? 1 : 2);
+            placed++;
+        }
+
+        for (int i = 0; i < connections.size(); i++) {
+            Dot dot = dotMap.getDot(i);
+            if (dot.getPlayer() == 0) continue;
+            for (int dir = 0; dir < ConnectionStore.DIRECTIONS; dir++) {
+                int j = connections.neighbor(i, dir);
+                if (j < 0 || random.nextDouble() >= profile.lineRatio) continue;
+                Dot other = dotMap.getDot(j);
+                if (other.getPlayer() != dot.getPlayer()) continue;
+                if (dotMap.getEdgeIndex().crossesAny(dot.getRow(), dot.getCol(), other.getRow(), other.getCol())) continue;
+                dotMap.addConnection(dot, other);
+            }
+        }
+        return dotMap;
+    }
+
+    /** A seeded stream of empty cells, as {row, col} pairs, for player moves on the board. */
+    static int[] emptyCell(DotMap dotMap, Random random) {
+        ConnectionStore connections = dotMap.getConnections();
+        while (true) {
+            int row = random.nextInt(connections.getHeight());
+            int col = random.nextInt(connections.getWidth());
+            if (dotMap.getDot(row, col).getPlayer() == 0) return new int[]{row, col};
+        }
+    }
+
+    private static void fence(DotMap dotMap, int top, int left, int owner) {
+        Dot previous = null;
+        int[][] ring = {{0, 0}, {0, 1}, {0, 2}, {1, 2}, {2, 2}, {2, 1}, {2, 0}, {1, 0}, {0, 0}};
+        for (int[] offset : ring) {
+            Dot dot = dotMap.getDot(top + offset[0], left + offset[1]);
+            attribute(dotMap, dot, owner);
+            if (previous != null) dotMap.addConnection(previous, dot);
+            previous = dot;
+        }
+    }
+
+    private static void attribute(DotMap dotMap, Dot dot, int owner) {
+        if (owner == 1) {
+            dotMap.attributeDotToPlayer(dot);
+        } else {
+            dotMap.attributeDotToComputer(dot);
+        }
+    }
+
+    private static int countOwned(DotMap dotMap) {
+        int count = 0;
+        for (int i = 0; i < dotMap.size(); i++) {
+            if (dotMap.getDot(i).getPlayer() != 0) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,46 @@
+package com.backontrack.dots;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full turn: the player's placement followed by {@link GameEngine#computerMove()}.
+ *
+ * Each invocation starts from a freshly generated copy of the seeded position (setup is not
+ * timed), so every measured move sees the same board. Sample mode reports the latency
+ * percentiles; the gc profiler configured in build.gradle adds bytes allocated per move.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComputerMoveBenchmark {
+
+    @Param({"SPARSE", "DENSE", "FENCED"})
+    public BoardFixtures.Profile profile;
+
+    @Param({"CLASSIC", "LARGE"})
+    public BoardFixtures.BoardSize size;
+
+    private GameEngine gameEngine;
+    private int[] playerMove;
+    private long invocation;
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        DotMap dotMap = BoardFixtures.board(profile, size, 42);
+        long seed = invocation++ & 63;
+        playerMove = BoardFixtures.emptyCell(dotMap, new Random(seed));
+        gameEngine = new GameEngine(dotMap, new Random(seed));
+    }
+
+    @Benchmark
+    public Dot computersMove() {
+        gameEngine.placeDot(playerMove[0], playerMove[1]);
+        return gameEngine.computerMove();
+    }
+}
@@ -0,0 +1,92 @@
+package com.backontrack.dots;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Lookup and line drawing on the board model. */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DotMapBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @State(Scope.Thread)
+    public static class Lookups {
+        @Param({"SPARSE", "DENSE", "FENCED"})
+        public BoardFixtures.Profile profile;
+
+        @Param({"CLASSIC", "LARGE", "HUGE"})
+        public BoardFixtures.BoardSize size;
+
+        DotMap dotMap;
+        int[] rows = new int[LOOKUPS];
+        int[] cols = new int[LOOKUPS];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            dotMap = BoardFixtures.board(profile, size, 42);
+            Random random = new Random(7);
+            ConnectionStore connections = dotMap.getConnections();
+            for (int i = 0; i < LOOKUPS; i++) {
+                rows[i] = random.nextInt(connections.getHeight());
+                cols[i] = random.nextInt(connections.getWidth());
+            }
+        }
+    }
+
+    /** A fresh copy of the board and the lines still missing from it, so every invocation draws new lines. */
+    @State(Scope.Thread)
+    public static class MissingLines {
+        @Param({"SPARSE", "DENSE", "FENCED"})
+        public BoardFixtures.Profile profile;
+
+        @Param({"CLASSIC", "LARGE"})
+        public BoardFixtures.BoardSize size;
+
+        DotMap dotMap;
+        Dot[] starts;
+        Dot[] ends;
+        int count;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            dotMap = BoardFixtures.board(profile, size, 42);
+            ConnectionStore connections = dotMap.getConnections();
+            starts = new Dot[4 * connections.size()];
+            ends = new Dot[4 * connections.size()];
+            count = 0;
+            for (int i = 0; i < connections.size(); i++) {
+                Dot dot = dotMap.getDot(i);
+                if (dot.getPlayer() == 0) continue;
+                for (int dir = 0; dir < 4; dir++) {
+                    int j = connections.neighbor(i, dir);
+                    if (j < 0 || connections.hasEdge(i, dir) || dotMap.getDot(j).getPlayer() != dot.getPlayer()) continue;
+                    starts[count] = dot;
+                    ends[count] = dotMap.getDot(j);
+                    count++;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getDot(Lookups state, Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(state.dotMap.getDot(state.rows[i], state.cols[i]));
+        }
+    }
+
+    @Benchmark
+    public void addConnection(MissingLines state, Blackhole blackhole) {
+        for (int i = 0; i < state.count; i++) {
+            blackhole.consume(state.dotMap.addConnection(state.starts[i], state.ends[i]));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.backontrack.dots;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Full-board polygon detection on seeded positions of each board size. */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolygonDetectorBenchmark {
+
+    @Param({"SPARSE", "DENSE", "FENCED"})
+    public BoardFixtures.Profile profile;
+
+    @Param({"CLASSIC", "LARGE"})
+    public BoardFixtures.BoardSize size;
+
+    private final PolygonDetector polygonDetector = new PolygonDetector();
+    private DotMap dotMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dotMap = BoardFixtures.board(profile, size, 42);
+        polygonDetector.updateBlockedDots(dotMap);
+    }
+
+    @Benchmark
+    public DotMap updateBlockedDots() {
+        polygonDetector.updateBlockedDots(dotMap);
+        return dotMap;
+    }
+
+    @Benchmark
+    public Map<Dot, Dot> findFirstPolygonForComputer() {
+        return polygonDetector.findFirstPolygonForComputer(dotMap);
+    }
+
+    @Benchmark
+    public Map<Dot, Dot> findBestPolygonForComputer() {
+        return polygonDetector.findBestPolygonForComputer(dotMap);
+    }
+
+    @Benchmark
+    public List<Map<Dot, Dot>> findAllPolygonsForComputer() {
+        return polygonDetector.findAllPolygonsForComputer(dotMap);
+    }
+
+    @Benchmark
+    public boolean playerHasPossiblePolygon() {
+        return polygonDetector.playerHasPossiblePolygon(dotMap);
+    }
+}
@@ -0,0 +1,46 @@
+package com.backontrack.dots;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Full threat analysis of both sides, against the detector's single yes/no answer for the player. */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreatMapBenchmark {
+
+    @Param({"SPARSE", "DENSE", "FENCED"})
+    public BoardFixtures.Profile profile;
+
+    @Param({"CLASSIC", "LARGE"})
+    public BoardFixtures.BoardSize size;
+
+    private final ThreatMap threatMap = new ThreatMap();
+    private final PolygonDetector polygonDetector = new PolygonDetector();
+    private DotMap first;
+    private DotMap second;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        first = BoardFixtures.board(profile, size, 42);
+        second = BoardFixtures.board(profile, size, 43);
+    }
+
+    /** Alternates two positions, since the map skips a position it analysed last. */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public ThreatMap update() {
+        threatMap.update(first);
+        threatMap.update(second);
+        return threatMap;
+    }
+
+    @Benchmark
+    public boolean playerHasPossiblePolygon() {
+        return polygonDetector.playerHasPossiblePolygon(first);
+    }
+}
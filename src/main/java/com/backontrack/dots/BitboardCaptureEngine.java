@@ -0,0 +1,264 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+
+/**
+ * BitboardCaptureEngine - finds enclosed dots with bit-parallel flood fill.
+ *
+ * The board is kept on a grid refined by {@link #SCALE}: dot (r, c) sits at (3r, 3c) and a line
+ * covers the points between its endpoints. For each owner the engine keeps a wall bitboard (its
+ * dots and lines) and a dot bitboard, one {@code long[]} each, packed row by row. A scale of 2
+ * is not enough: a wall on the corner of a unit square could cut the triangle next to a diagonal
+ * into unconnected points, while at scale 3 every triangle keeps a connected interior.
+ *
+ * To find what an owner has enclosed, the engine floods the free points of the refined grid
+ * (4-connected) from the board edge. A line of walls is always 8-connected, so the 4-connected
+ * flood cannot slip through it. Opponent dots the flood does not reach lie inside a polygon of
+ * that owner and are blocked. Each row is filled with carry arithmetic, 64 points per operation,
+ * and rows are swept top-down and bottom-up until nothing changes.
+ *
+ * Produces the same blocked set as {@link PolygonDetector#updateBlockedDots(DotMap)}.
+ */
+public class BitboardCaptureEngine {
+
+    private static final int SCALE = 3;
+
+    private final int width;
+    private final int height;
+    private final int rows;
+    private final int cols;
+    private final int words;
+    private final long lastWordMask;
+
+    /** Index 1 = player, 2 = computer; index 0 unused. */
+    private final long[][] walls = new long[3][];
+    private final long[][] dots = new long[3][];
+    private final long[] blocked;
+
+    private final long[] free;
+    private final long[] reach;
+    private final long[] rowSeed;
+
+    public BitboardCaptureEngine(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rows = SCALE * (height - 1) + 1;
+        this.cols = SCALE * (width - 1) + 1;
+        this.words = (cols + 63) >>> 6;
+        int rem = cols & 63;
+        this.lastWordMask = rem == 0 ? -1L : (1L << rem) - 1;
+        for (int owner = 1; owner <= 2; owner++) {
+            walls[owner] = new long[rows * words];
+            dots[owner] = new long[rows * words];
+        }
+        this.blocked = new long[rows * words];
+        this.free = new long[rows * words];
+        this.reach = new long[rows * words];
+        this.rowSeed = new long[words];
+    }
+
+    public BitboardCaptureEngine copy() {
+        BitboardCaptureEngine copy = new BitboardCaptureEngine(width, height);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /** Overwrites this engine with the state of another engine of the same size, without allocating. */
+    public void copyFrom(BitboardCaptureEngine other) {
+        for (int owner = 1; owner <= 2; owner++) {
+            System.arraycopy(other.walls[owner], 0, walls[owner], 0, walls[owner].length);
+            System.arraycopy(other.dots[owner], 0, dots[owner], 0, dots[owner].length);
+        }
+        System.arraycopy(other.blocked, 0, blocked, 0, blocked.length);
+    }
+
+    // ---------------- Board updates ----------------
+
+    public void clear() {
+        for (int owner = 1; owner <= 2; owner++) {
+            Arrays.fill(walls[owner], 0L);
+            Arrays.fill(dots[owner], 0L);
+        }
+        Arrays.fill(blocked, 0L);
+    }
+
+    /** Reload ownership and lines from the dot map. */
+    public void load(DotMap dotMap) {
+        clear();
+        ConnectionStore connections = dotMap.getConnections();
+        for (int i = 0; i < dotMap.size(); i++) {
+            int owner = dotMap.getDot(i).getPlayer();
+            if (owner == 1 || owner == 2) dotPlaced(connections.rowOf(i), connections.colOf(i), owner);
+        }
+        connections.forEachEdge((from, to) -> {
+            int owner = dotMap.getDot(from).getPlayer();
+            if (owner == 0 || dotMap.getDot(to).getPlayer() != owner) return;
+            connectionAdded(connections.rowOf(from), connections.colOf(from),
+                    connections.rowOf(to), connections.colOf(to), owner);
+        });
+    }
+
+    public void dotPlaced(int row, int col, int owner) {
+        set(walls[owner], SCALE * row, SCALE * col);
+        set(dots[owner], SCALE * row, SCALE * col);
+    }
+
+    /** Records a line between two neighbouring dots of the same owner. */
+    public void connectionAdded(int row1, int col1, int row2, int col2, int owner) {
+        int dr = row2 - row1;
+        int dc = col2 - col1;
+        for (int i = 0; i <= SCALE; i++) {
+            set(walls[owner], SCALE * row1 + i * dr, SCALE * col1 + i * dc);
+        }
+    }
+
+    // ---------------- Capture detection ----------------
+
+    /**
+     * Recomputes the blocked set: every dot that lies inside a polygon drawn by its opponent.
+     *
+     * @return the number of blocked dots
+     */
+    public int computeBlocked() {
+        Arrays.fill(blocked, 0L);
+        for (int owner = 1; owner <= 2; owner++) {
+            floodFromEdge(walls[owner]);
+            long[] opponentDots = dots[3 - owner];
+            for (int i = 0; i < blocked.length; i++) {
+                blocked[i] |= opponentDots[i] & ~reach[i];
+            }
+        }
+        int count = 0;
+        for (long word : blocked) count += Long.bitCount(word);
+        return count;
+    }
+
+    /** Whether the dot was blocked by the last {@link #computeBlocked()}. */
+    public boolean isBlocked(int row, int col) {
+        int r = SCALE * row;
+        int c = SCALE * col;
+        return (blocked[r * words + (c >>> 6)] & (1L << c)) != 0;
+    }
+
+    /** Number of dots of {@code owner} blocked by the last {@link #computeBlocked()}. */
+    public int countBlocked(int owner) {
+        int count = 0;
+        long[] owned = dots[owner];
+        for (int i = 0; i < blocked.length; i++) count += Long.bitCount(blocked[i] & owned[i]);
+        return count;
+    }
+
+    /** Drop-in replacement for {@link PolygonDetector#updateBlockedDots(DotMap)}: reloads, floods and sets the flags. */
+    public void updateBlockedDots(DotMap dotMap) {
+        load(dotMap);
+        computeBlocked();
+        ConnectionStore connections = dotMap.getConnections();
+        for (int i = 0; i < dotMap.size(); i++) {
+            dotMap.setBlocked(dotMap.getDot(i), isBlocked(connections.rowOf(i), connections.colOf(i)));
+        }
+    }
+
+    /**
+     * Floods from the edge around the walls of {@code owner} alone, leaving the blocked set as it
+     * is; {@link #isInside(int, int)} then reads the result. Used by {@link ThreatMap} to test
+     * hypothetical walls.
+     */
+    void floodAround(int owner) {
+        floodFromEdge(walls[owner]);
+    }
+
+    /** After {@link #floodAround(int)}: whether the dot position is off the walls and cut off from the edge. */
+    boolean isInside(int row, int col) {
+        int i = SCALE * row * words + ((SCALE * col) >>> 6);
+        long bit = 1L << (SCALE * col);
+        return (free[i] & bit) != 0 && (reach[i] & bit) == 0;
+    }
+
+    // ---------------- Flood fill ----------------
+
+    /** Fills {@code reach} with every free point 4-connected to the edge of the refined grid. */
+    private void floodFromEdge(long[] wall) {
+        for (int r = 0; r < rows; r++) {
+            int base = r * words;
+            for (int w = 0; w < words; w++) {
+                long mask = (w == words - 1) ? lastWordMask : -1L;
+                free[base + w] = ~wall[base + w] & mask;
+                reach[base + w] = 0L;
+            }
+            // left and right edge points
+            reach[base] |= free[base] & 1L;
+            int last = cols - 1;
+            reach[base + (last >>> 6)] |= free[base + (last >>> 6)] & (1L << last);
+        }
+        // top and bottom edge rows
+        int bottom = (rows - 1) * words;
+        for (int w = 0; w < words; w++) {
+            reach[w] = free[w];
+            reach[bottom + w] = free[bottom + w];
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < rows; r++) {
+                changed |= sweepRow(r, r - 1);
+            }
+            for (int r = rows - 1; r >= 0; r--) {
+                changed |= sweepRow(r, r + 1);
+            }
+        }
+    }
+
+    /** Grows row {@code r} from its own reach and the reach of row {@code from}; returns true if it changed. */
+    private boolean sweepRow(int r, int from) {
+        int base = r * words;
+        boolean any = false;
+        for (int w = 0; w < words; w++) {
+            long seed = reach[base + w];
+            if (from >= 0 && from < rows) seed |= reach[from * words + w];
+            seed &= free[base + w];
+            rowSeed[w] = seed;
+            any |= seed != 0;
+        }
+        if (!any) return false;
+
+        fillRow(base);
+
+        boolean changed = false;
+        for (int w = 0; w < words; w++) {
+            if (rowSeed[w] != reach[base + w]) {
+                reach[base + w] = rowSeed[w];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Expands rowSeed to the full free runs containing a seed bit. Filling towards higher bits
+     * uses carry propagation: adding the seeds to a run of free bits flips the run from the seed
+     * up to its end. The opposite direction does the same on bit-reversed words.
+     */
+    private void fillRow(int base) {
+        long carry = 0;
+        for (int w = 0; w < words; w++) {
+            long f = free[base + w];
+            long s = (rowSeed[w] | carry) & f;
+            long up = (((f + s) ^ f) & f) | s;
+            carry = (up >>> 63) & 1L;
+            rowSeed[w] = up;
+        }
+        carry = 0;
+        for (int w = words - 1; w >= 0; w--) {
+            long f = Long.reverse(free[base + w]);
+            long s = (Long.reverse(rowSeed[w]) | carry) & f;
+            long down = (((f + s) ^ f) & f) | s;
+            carry = (down >>> 63) & 1L;
+            rowSeed[w] = Long.reverse(down);
+        }
+    }
+
+    private void set(long[] board, int r, int c) {
+        board[r * words + (c >>> 6)] |= 1L << c;
+    }
+}
@@ -0,0 +1,126 @@
+package com.backontrack.dots;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One change to the board between two {@link PersistentBoard} versions: a dot placed or taken
+ * back, a line drawn or taken back, or a dot enclosed or freed. Published in batches by
+ * {@link BoardChangePublisher}. Immutable.
+ */
+public final class BoardChange {
+
+    /**
+     * Kinds of change, in the order {@link #between(PersistentBoard, PersistentBoard)} lists them:
+     * applied one by one, no line is ever drawn to a missing dot.
+     */
+    public enum Type {
+        EDGE_REMOVED,
+        DOT_REMOVED,
+        DOT_PLACED,
+        EDGE_ADDED,
+        DOT_BLOCKED,
+        DOT_UNBLOCKED
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final Type type;
+    private final int owner;
+    private final int row;
+    private final int col;
+    private final int toRow;
+    private final int toCol;
+
+    private BoardChange(Type type, int owner, int row, int col, int toRow, int toCol) {
+        this.type = type;
+        this.owner = owner;
+        this.row = row;
+        this.col = col;
+        this.toRow = toRow;
+        this.toCol = toCol;
+    }
+
+    /**
+     * The changes that turn {@code before} into {@code after}, grouped by {@link Type} in its
+     * declaration order and by cell index within a type. Only the cells that differ are visited,
+     * so any two versions of one board can be compared, however far apart.
+     *
+     * @throws IllegalArgumentException if the boards are not the same size
+     */
+    public static List<BoardChange> between(PersistentBoard before, PersistentBoard after) {
+        if (before == after) return Collections.emptyList();
+        int width = after.getWidth();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<BoardChange>[] byType = new List[TYPES.length];
+        for (int i = 0; i < byType.length; i++) byType[i] = new ArrayList<>();
+
+        before.forEachDifference(after, cell -> {
+            int row = cell / width;
+            int col = cell % width;
+            int from = before.getOwner(cell);
+            int to = after.getOwner(cell);
+            if (from != to) {
+                if (from != 0) byType[Type.DOT_REMOVED.ordinal()].add(new BoardChange(Type.DOT_REMOVED, from, row, col, -1, -1));
+                if (to != 0) byType[Type.DOT_PLACED.ordinal()].add(new BoardChange(Type.DOT_PLACED, to, row, col, -1, -1));
+            }
+            // a line is stored on both endpoints; report it once, from the endpoint it leaves forwards
+            int changed = (before.getLines(cell) ^ after.getLines(cell)) & ConnectionStore.FORWARD_MASK;
+            while (changed != 0) {
+                int direction = Integer.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                int toRow = row + ConnectionStore.rowOffset(direction);
+                int toCol = col + ConnectionStore.colOffset(direction);
+                if ((after.getLines(cell) & (1 << direction)) != 0) {
+                    byType[Type.EDGE_ADDED.ordinal()].add(new BoardChange(Type.EDGE_ADDED, to, row, col, toRow, toCol));
+                } else {
+                    byType[Type.EDGE_REMOVED.ordinal()].add(new BoardChange(Type.EDGE_REMOVED, from, row, col, toRow, toCol));
+                }
+            }
+            boolean blocked = after.isBlocked(cell);
+            if (before.isBlocked(cell) != blocked) {
+                Type type = blocked ? Type.DOT_BLOCKED : Type.DOT_UNBLOCKED;
+                byType[type.ordinal()].add(new BoardChange(type, blocked ? to : from, row, col, -1, -1));
+            }
+        });
+
+        List<BoardChange> changes = new ArrayList<>();
+        for (List<BoardChange> ofType : byType) changes.addAll(ofType);
+        return Collections.unmodifiableList(changes);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Owner of the dot, or of the line's first dot; 0 for a cell that held no dot. */
+    public int getOwner() {
+        return owner;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    /** Row of the line's second dot, or -1 if the change is not a line. */
+    public int getToRow() {
+        return toRow;
+    }
+
+    /** Column of the line's second dot, or -1 if the change is not a line. */
+    public int getToCol() {
+        return toCol;
+    }
+
+    @Override
+    public String toString() {
+        String at = "(" + row + "," + col + ")";
+        if (toRow >= 0) at += "-(" + toRow + "," + toCol + ")";
+        return type + " " + at + " owner " + owner;
+    }
+}
@@ -0,0 +1,296 @@
+package com.backontrack.dots;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes what changed on one board, one {@link Batch} per action, to any number of
+ * {@link Flow.Subscriber}s.
+ *
+ * The publisher remembers the last {@link PersistentBoard} version it published. Handing it a
+ * new version ({@link #publish(PersistentBoard)}) compares the two, which visits only the cells
+ * that differ, and offers the {@link BoardChange}s as one batch: a dot with the lines drawn for
+ * it and the dots it enclosed arrive together, as do all the changes of an undo. While nobody is
+ * subscribed nothing is compared.
+ *
+ * Each subscription holds at most {@code bufferCapacity} batches and delivers them on the
+ * executor as the subscriber requests them, so the game never waits for a subscriber. When a
+ * slow subscriber's buffer is full, a new batch is merged into the last one held instead of
+ * being queued: the two versions it spans stay exact and its changes are recomputed from them
+ * when read. A subscriber therefore always sees an unbroken chain, each batch starting from the
+ * version the one before it ended with, only coarser the further it falls behind
+ * ({@link #getCoalesced()} counts the merges). The first batch of a subscription starts from the
+ * empty board, so a subscriber joining mid-game receives the whole position at once.
+ *
+ * {@link #publish(PersistentBoard)} is normally called by the thread moving the game; every
+ * method is thread-safe.
+ */
+public final class BoardChangePublisher implements Flow.Publisher<BoardChangePublisher.Batch>, AutoCloseable {
+
+    private final Executor executor;
+    private final int bufferCapacity;
+    private final PersistentBoard empty;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder coalesced = new LongAdder();
+    private PersistentBoard last;
+    private long sequence;
+    private boolean closed;
+
+    /** Delivers on the common fork-join pool with {@link Flow#defaultBufferSize()} batches per subscriber. */
+    public BoardChangePublisher(int width, int height) {
+        this(width, height, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    /** @param bufferCapacity batches held for each subscriber before new ones are merged */
+    public BoardChangePublisher(int width, int height, Executor executor, int bufferCapacity) {
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive");
+        }
+        this.executor = executor;
+        this.bufferCapacity = bufferCapacity;
+        this.empty = PersistentBoard.empty(width, height);
+        this.last = empty;
+    }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super Batch> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        if (last != empty) {
+            subscription.offer(new Batch(sequence, 0, empty, last, null));
+        }
+        if (closed) {
+            subscription.complete();
+        } else {
+            subscriptions.add(subscription);
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Offers the changes from the last published version to {@code board} to every subscriber.
+     *
+     * @return false if the board had not changed, nobody is subscribed or the publisher is closed
+     * @throws IllegalArgumentException if the board is not the size of the earlier ones
+     */
+    public synchronized boolean publish(PersistentBoard board) {
+        if (board.getWidth() != last.getWidth() || board.getHeight() != last.getHeight()) {
+            throw new IllegalArgumentException("Board size changed");
+        }
+        PersistentBoard before = last;
+        last = board;
+        if (board == before || subscriptions.isEmpty() || closed) {
+            return false;
+        }
+        Batch batch = new Batch(++sequence, 1, before, board, BoardChange.between(before, board));
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(batch);
+            subscription.schedule();
+        }
+        return true;
+    }
+
+    /** Batches merged into an earlier one because a subscriber was behind, all subscribers together. */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /** Completes every subscription once the batches it holds have been delivered. */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.complete();
+            subscription.schedule();
+        }
+        subscriptions.clear();
+    }
+
+    /** The changes of one or more consecutive actions. Immutable; safe to read on any thread. */
+    public static final class Batch {
+        private final long sequence;
+        private final int actions;
+        private final PersistentBoard before;
+        private final PersistentBoard after;
+        /**
+         * Null until first read for merged batches. Volatile, so that a list computed on one thread
+         * is seen whole on another; two threads reading at once may both compute the same list.
+         */
+        private volatile List<BoardChange> changes;
+
+        private Batch(long sequence, int actions, PersistentBoard before, PersistentBoard after, List<BoardChange> changes) {
+            this.sequence = sequence;
+            this.actions = actions;
+            this.before = before;
+            this.after = after;
+            this.changes = changes;
+        }
+
+        /** Number of the batch's last action among those published, from 1; 0 for a position before any. */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** Actions this batch stands for: 1, more if it was merged for a slow subscriber, 0 for an opening position. */
+        public int getActions() {
+            return actions;
+        }
+
+        public PersistentBoard getBefore() {
+            return before;
+        }
+
+        public PersistentBoard getAfter() {
+            return after;
+        }
+
+        /** The changes from {@link #getBefore()} to {@link #getAfter()}, in {@link BoardChange.Type} order. */
+        public List<BoardChange> getChanges() {
+            List<BoardChange> list = changes;
+            if (list == null) {
+                list = BoardChange.between(before, after);
+                changes = list;
+            }
+            return list;
+        }
+
+        private Batch mergedWith(Batch next) {
+            return new Batch(next.sequence, actions + next.actions, before, next.after, null);
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" + sequence + ", " + actions + " actions}";
+        }
+    }
+
+    /**
+     * One subscriber's buffer and demand. At most one delivery task runs at a time, so the
+     * subscriber is called by one thread at a time and in order, as {@link Flow} requires.
+     */
+    private final class Subscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Batch> subscriber;
+        private final ArrayDeque<Batch> buffer = new ArrayDeque<>();
+        private long demand;
+        private boolean subscribed;
+        private boolean completing;
+        private boolean cancelled;
+        private boolean scheduled;
+        private Throwable failure;
+
+        Subscription(Flow.Subscriber<? super Batch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void offer(Batch batch) {
+            if (cancelled) return;
+            if (buffer.size() < bufferCapacity) {
+                buffer.addLast(batch);
+            } else {
+                buffer.addLast(buffer.pollLast().mergedWith(batch));
+                coalesced.increment();
+            }
+        }
+
+        synchronized void complete() {
+            completing = true;
+        }
+
+        void schedule() {
+            synchronized (this) {
+                if (scheduled || cancelled) return;
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+                cancel();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        /** Delivers what the subscriber has asked for, then ends the task or the subscription. */
+        @Override
+        public void run() {
+            if (!subscribed) {
+                subscribed = true;
+                if (!call(() -> subscriber.onSubscribe(this))) return;
+            }
+            while (true) {
+                Batch next = null;
+                Throwable error = null;
+                boolean finished = false;
+                synchronized (this) {
+                    if (cancelled) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (failure != null) {
+                        error = failure;
+                    } else if (buffer.isEmpty() && completing) {
+                        finished = true;
+                    } else if (buffer.isEmpty() || demand == 0) {
+                        scheduled = false;
+                        return;
+                    } else {
+                        next = buffer.pollFirst();
+                        if (demand != Long.MAX_VALUE) demand--;
+                    }
+                }
+                if (next == null) {
+                    cancel();
+                    Throwable cause = error;
+                    call(finished ? subscriber::onComplete : () -> subscriber.onError(cause));
+                    return;
+                }
+                Batch batch = next;
+                if (!call(() -> subscriber.onNext(batch))) return;
+            }
+        }
+
+        /** Runs a subscriber method; one that throws loses its subscription. */
+        private boolean call(Runnable method) {
+            try {
+                method.run();
+                return true;
+            } catch (RuntimeException e) {
+                GameLog.message(GameLog.Level.WARN, "Board change subscriber failed: " + e);
+                cancel();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameMetrics.Phase;
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+
+import static com.backontrack.dots.Constants.*;
+
+/**
+ * Draws a {@link GameState} on two stacked canvases.
+ *
+ * The grid layer holds the grid lines; they do not depend on the position or on scrolling, so it
+ * is painted once. The piece layer holds dots and lines. It remembers what it last painted for
+ * every cell in view and, on each frame, repaints only the cells whose owner or lines changed:
+ * the area around such a cell is cleared under a clip rectangle and the dots and lines crossing
+ * it are drawn again. Scrolling, or more changed cells than {@link #MAX_DIRTY_CELLS}, repaints
+ * the whole layer instead.
+ *
+ * {@link #requestRender()} may be called any number of times; the work is deferred to the next
+ * animation pulse, so a burst of state changes costs one frame. While the renderer is
+ * suspended (the state is being changed on another thread) frames are held back, and resuming
+ * paints everything that changed meanwhile. All methods must be called on the JavaFX
+ * Application Thread.
+ */
+public class BoardRenderer {
+
+    /** Beyond this many changed cells in one frame a full repaint is cheaper than clipped ones. */
+    private static final int MAX_DIRTY_CELLS = 64;
+
+    private final GameState state;
+    private final int visibleCols;
+    private final int visibleRows;
+    private final Canvas gridLayer;
+    private final Canvas pieceLayer;
+    private final StackPane node;
+
+    /** Owner and line mask last painted for each cell in view. */
+    private final int[] paintedOwner;
+    private final int[] paintedMask;
+    private final int[] dirty;
+
+    private int viewRow;
+    private int viewCol;
+    private boolean fullRepaint = true;
+    private boolean framePending;
+    private boolean suspended;
+
+    private final AnimationTimer frame = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            stop();
+            framePending = false;
+            if (!suspended) {
+                paint();
+            }
+        }
+    };
+
+    public BoardRenderer(GameState state, int visibleCols, int visibleRows) {
+        this.state = state;
+        this.visibleCols = visibleCols;
+        this.visibleRows = visibleRows;
+        double width = visibleCols * CELL_SIZE + 2 * PADDING;
+        double height = visibleRows * CELL_SIZE + 2 * PADDING;
+        this.gridLayer = new Canvas(width, height);
+        this.pieceLayer = new Canvas(width, height);
+        this.node = new StackPane(gridLayer, pieceLayer);
+        this.paintedOwner = new int[visibleCols * visibleRows];
+        this.paintedMask = new int[visibleCols * visibleRows];
+        this.dirty = new int[MAX_DIRTY_CELLS];
+        paintGrid();
+        requestRender();
+    }
+
+    /** The layers, stacked; mouse events arrive on the piece layer. */
+    public Node getNode() {
+        return node;
+    }
+
+    public double getWidth() {
+        return pieceLayer.getWidth();
+    }
+
+    public int getViewRow() {
+        return viewRow;
+    }
+
+    public int getViewCol() {
+        return viewCol;
+    }
+
+    /** Moves the top-left corner of the view to the given cell and repaints the pieces. */
+    public void scrollTo(int row, int col) {
+        int maxRow = Math.max(0, state.getHeight() - visibleRows);
+        int maxCol = Math.max(0, state.getWidth() - visibleCols);
+        row = Math.max(0, Math.min(maxRow, row));
+        col = Math.max(0, Math.min(maxCol, col));
+        if (row == viewRow && col == viewCol) return;
+        viewRow = row;
+        viewCol = col;
+        fullRepaint = true;
+        requestRender();
+    }
+
+    /** Schedules a repaint of whatever changed, coalesced into the next frame. */
+    public void requestRender() {
+        if (!framePending && !suspended) {
+            framePending = true;
+            frame.start();
+        }
+    }
+
+    /** Paints whatever changed right away, without waiting for the next frame. */
+    public void renderNow() {
+        if (!suspended) {
+            paint();
+        }
+    }
+
+    /** Holds back frames while another thread changes the state; resuming requests a frame. */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+        if (!suspended) {
+            requestRender();
+        }
+    }
+
+    /** Column of the dot nearest to the x coordinate, which may be outside the board. */
+    public int colAt(double x) {
+        return viewCol + (int) ((x - PADDING + (double) CELL_SIZE / 2) / CELL_SIZE);
+    }
+
+    /** Row of the dot nearest to the y coordinate, which may be outside the board. */
+    public int rowAt(double y) {
+        return viewRow + (int) ((y - PADDING + (double) CELL_SIZE / 2) / CELL_SIZE);
+    }
+
+    // ---------------- Painting ----------------
+
+    private void paintGrid() {
+        GraphicsContext gc = gridLayer.getGraphicsContext2D();
+        gc.clearRect(0, 0, gridLayer.getWidth(), gridLayer.getHeight());
+        gc.setLineWidth(1);
+        gc.setStroke(Color.LIGHTGRAY);
+        for (int i = 0; i < visibleCols; i++) {
+            int pos = i * CELL_SIZE + PADDING;
+            gc.strokeLine(pos, PADDING + CELL_SIZE, pos, visibleRows * CELL_SIZE + (double) PADDING / 2);
+        }
+        for (int i = 0; i < visibleRows - 1; i++) {
+            int pos = i * CELL_SIZE + PADDING + CELL_SIZE;
+            gc.strokeLine(PADDING, pos, visibleCols * CELL_SIZE + (double) PADDING / 2, pos);
+        }
+    }
+
+    private void paint() {
+        long start = GameMetrics.start();
+        paintChanges();
+        GameMetrics.stop(Phase.RENDER, start);
+    }
+
+    private void paintChanges() {
+        if (fullRepaint) {
+            repaintAll();
+            return;
+        }
+        int dirtyCount = 0;
+        for (int r = 0; r < visibleRows; r++) {
+            for (int c = 0; c < visibleCols; c++) {
+                int slot = r * visibleCols + c;
+                if (paintedOwner[slot] == ownerAt(viewRow + r, viewCol + c)
+                        && paintedMask[slot] == maskAt(viewRow + r, viewCol + c)) {
+                    continue;
+                }
+                if (dirtyCount == MAX_DIRTY_CELLS) {
+                    repaintAll();
+                    return;
+                }
+                dirty[dirtyCount++] = slot;
+            }
+        }
+        GraphicsContext gc = pieceLayer.getGraphicsContext2D();
+        for (int i = 0; i < dirtyCount; i++) {
+            int row = viewRow + dirty[i] / visibleCols;
+            int col = viewCol + dirty[i] % visibleCols;
+            repaintAround(gc, row, col);
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            remember(dirty[i]);
+        }
+    }
+
+    private void repaintAll() {
+        fullRepaint = false;
+        GraphicsContext gc = pieceLayer.getGraphicsContext2D();
+        gc.clearRect(0, 0, pieceLayer.getWidth(), pieceLayer.getHeight());
+        // lines entering the view from the row above or the column to the left are included
+        paintPieces(gc, viewRow - 1, viewCol - 1, viewRow + visibleRows - 1, viewCol + visibleCols);
+        for (int slot = 0; slot < paintedOwner.length; slot++) {
+            remember(slot);
+        }
+    }
+
+    /**
+     * Repaints the square of cells centred on (row, col): every line touching the cell lies
+     * inside it. Pieces up to two cells away are redrawn under the clip, so lines that merely
+     * pass through the square are restored too.
+     */
+    private void repaintAround(GraphicsContext gc, int row, int col) {
+        double x = screenX(col - 1);
+        double y = screenY(row - 1);
+        double size = 2 * CELL_SIZE;
+        gc.save();
+        gc.beginPath();
+        gc.rect(x, y, size, size);
+        gc.clip();
+        gc.clearRect(x, y, size, size);
+        paintPieces(gc, row - 2, col - 2, row + 2, col + 2);
+        gc.restore();
+    }
+
+    /** Paints the dots of the given cells, then the lines leaving them forward (E, SE, S, SW) on top. */
+    private void paintPieces(GraphicsContext gc, int firstRow, int firstCol, int lastRow, int lastCol) {
+        firstRow = Math.max(0, firstRow);
+        firstCol = Math.max(0, firstCol);
+        lastRow = Math.min(state.getHeight() - 1, lastRow);
+        lastCol = Math.min(state.getWidth() - 1, lastCol);
+        ConnectionStore connections = state.getConnections();
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int owner = state.getOwner(row, col);
+                if (owner == 0) continue;
+                gc.setFill(owner == PLAYER ? PLAYERS_COLOR : COMPUTERS_COLOR);
+                gc.fillOval(screenX(col) - DOT_RADIUS, screenY(row) - DOT_RADIUS, DOT_RADIUS * 2, DOT_RADIUS * 2);
+            }
+        }
+
+        gc.setLineWidth(3);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int from = connections.indexOf(row, col);
+                int owner = state.getOwner(row, col);
+                if (owner == 0 || !connections.hasAnyEdge(from)) continue;
+                for (int direction = ConnectionStore.EAST; direction <= ConnectionStore.SOUTH_WEST; direction++) {
+                    if (!connections.hasEdge(from, direction)) continue;
+                    int row2 = row + ConnectionStore.rowOffset(direction);
+                    int col2 = col + ConnectionStore.colOffset(direction);
+                    if (state.getOwner(row2, col2) != owner) continue;
+                    gc.setStroke(owner == PLAYER ? PLAYERS_COLOR : COMPUTERS_COLOR);
+                    gc.strokeLine(screenX(col), screenY(row), screenX(col2), screenY(row2));
+                }
+            }
+        }
+    }
+
+    private void remember(int slot) {
+        int row = viewRow + slot / visibleCols;
+        int col = viewCol + slot % visibleCols;
+        paintedOwner[slot] = ownerAt(row, col);
+        paintedMask[slot] = maskAt(row, col);
+    }
+
+    private int ownerAt(int row, int col) {
+        return state.getOwner(row, col);
+    }
+
+    private int maskAt(int row, int col) {
+        ConnectionStore connections = state.getConnections();
+        return connections.mask(connections.indexOf(row, col));
+    }
+
+    private double screenX(int col) {
+        return (col - viewCol) * CELL_SIZE + PADDING;
+    }
+
+    private double screenY(int row) {
+        return (row - viewRow) * CELL_SIZE + PADDING;
+    }
+}
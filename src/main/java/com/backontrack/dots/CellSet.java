@@ -0,0 +1,65 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+
+/**
+ * Set of cell indices below a fixed capacity with constant-time add, remove and membership.
+ *
+ * The members are kept densely in an array, in insertion order until a removal moves the last
+ * member into the gap, and every cell remembers its position in that array. Iterating by
+ * position costs O(size) and allocates nothing. Not thread-safe.
+ */
+final class CellSet {
+
+    private final int[] cells;
+    /** Position of each cell in {@link #cells}, or -1. */
+    private final int[] slot;
+    private int size;
+
+    CellSet(int capacity) {
+        this.cells = new int[capacity];
+        this.slot = new int[capacity];
+        Arrays.fill(slot, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** The member at {@code position}, 0 to {@link #size()} - 1. */
+    int get(int position) {
+        return cells[position];
+    }
+
+    boolean contains(int cell) {
+        return slot[cell] >= 0;
+    }
+
+    /** @return false if the cell was already a member */
+    boolean add(int cell) {
+        if (slot[cell] >= 0) return false;
+        slot[cell] = size;
+        cells[size++] = cell;
+        return true;
+    }
+
+    /** @return false if the cell was not a member */
+    boolean remove(int cell) {
+        int position = slot[cell];
+        if (position < 0) return false;
+        int last = cells[--size];
+        cells[position] = last;
+        slot[last] = position;
+        slot[cell] = -1;
+        return true;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) slot[cells[i]] = -1;
+        size = 0;
+    }
+}
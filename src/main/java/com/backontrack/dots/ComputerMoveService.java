@@ -0,0 +1,209 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+import com.backontrack.dots.GameMetrics.Phase;
+import javafx.application.Platform;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Computes the computer's reply off the JavaFX Application Thread.
+ *
+ * The check for a player polygon, the strategy's search, placing the reply and the polygon
+ * detection that follows all run on one background thread; the result is handed back through
+ * {@link Platform#runLater(Runnable)}. The engine is not thread-safe, so the caller must not
+ * touch it (nor render from it) between {@link #requestReply(Consumer)} and the callback;
+ * {@link #isPending()} tells whether a reply is in flight.
+ *
+ * Each reply has a deadline: when it passes, the thinking thread is interrupted and strategies
+ * that support interruption, like {@link MctsStrategy}, play their best move so far.
+ * {@link #cancel()} interrupts the search as well, but the reply is then dropped instead of
+ * played. A reply already being placed on the board is always completed.
+ *
+ * The window gets a service with threads of its own. {@link GameServer} shares one bounded pool
+ * and one deadline timer between all its sessions instead, and skips the pause.
+ */
+public class ComputerMoveService {
+
+    /** Pause, as in the original game, after noticing that the player could close a polygon. */
+    private static final long PLAYER_POLYGON_PAUSE_MILLIS = 1000;
+
+    private final GameEngine gameEngine;
+    private final long deadlineMillis;
+    private final long playerPolygonPauseMillis;
+    private final Executor callbackExecutor;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+    /** False when the executors are shared with other services and outlive this one. */
+    private final boolean ownsExecutors;
+
+    /** Bumped by {@link #cancel()}; a reply only counts if the generation it started in is still current. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Written by the requesting thread and the callback; read by {@link #cancel()} from any thread. */
+    private volatile boolean pending;
+    private volatile Reply current;
+
+    public ComputerMoveService(GameEngine gameEngine, long deadlineMillis) {
+        this(gameEngine, deadlineMillis, Platform::runLater);
+    }
+
+    /** @param callbackExecutor where callbacks run; {@code Platform::runLater} for the window */
+    ComputerMoveService(GameEngine gameEngine, long deadlineMillis, Executor callbackExecutor) {
+        this(gameEngine, deadlineMillis, PLAYER_POLYGON_PAUSE_MILLIS, callbackExecutor,
+                Executors.newSingleThreadExecutor(daemonThreads("computer-move")),
+                Executors.newSingleThreadScheduledExecutor(daemonThreads("computer-move-deadline")), true);
+    }
+
+    /**
+     * A service thinking on shared executors, which {@link #shutdown()} leaves running.
+     *
+     * @param executor where replies are computed; if it rejects a reply, so does {@link #requestReply(Consumer)}
+     */
+    ComputerMoveService(GameEngine gameEngine, long deadlineMillis, long playerPolygonPauseMillis,
+                        Executor callbackExecutor, ExecutorService executor, ScheduledExecutorService watchdog) {
+        this(gameEngine, deadlineMillis, playerPolygonPauseMillis, callbackExecutor, executor, watchdog, false);
+    }
+
+    private ComputerMoveService(GameEngine gameEngine, long deadlineMillis, long playerPolygonPauseMillis,
+                                Executor callbackExecutor, ExecutorService executor,
+                                ScheduledExecutorService watchdog, boolean ownsExecutors) {
+        this.gameEngine = gameEngine;
+        this.deadlineMillis = deadlineMillis;
+        this.playerPolygonPauseMillis = playerPolygonPauseMillis;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = executor;
+        this.watchdog = watchdog;
+        this.ownsExecutors = ownsExecutors;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Starts computing the computer's reply to the player's last move.
+     *
+     * @param onReply called through the callback executor with the computer's new dot, or null
+     *                if there was no move or the reply was cancelled
+     * @throws IllegalStateException if a reply is already pending
+     * @throws RejectedExecutionException if the executor has no room for the reply; nothing is
+     *                                    pending then and the callback is not called
+     */
+    public void requestReply(Consumer<Dot> onReply) {
+        if (pending) {
+            throw new IllegalStateException("A computer reply is already pending");
+        }
+        Reply reply = new Reply(generation.get(), onReply);
+        reply.deadline = watchdog.schedule(reply::interruptThinking, deadlineMillis, TimeUnit.MILLISECONDS);
+        // before the reply starts, so that its callback cannot run first and be overwritten
+        pending = true;
+        current = reply;
+        try {
+            executor.execute(reply);
+        } catch (RejectedExecutionException e) {
+            reply.deadline.cancel(false);
+            pending = false;
+            current = null;
+            throw e;
+        }
+    }
+
+    /** Stops the pending reply, if any; its callback still runs, with null. */
+    public void cancel() {
+        generation.incrementAndGet();
+        Reply reply = current;
+        if (reply != null) {
+            reply.interruptThinking();
+        }
+    }
+
+    /** Cancels the pending reply and stops the background threads, unless they are shared. */
+    public void shutdown() {
+        cancel();
+        if (ownsExecutors) {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * One reply in flight. Interrupts reach its thread only while it is still choosing a move: the
+     * thread is published, withdrawn and interrupted under the reply's lock, so once it has been
+     * withdrawn no interrupt can arrive late and clearing the flag leaves the thread clean.
+     */
+    private final class Reply implements Runnable {
+        private final long ticket;
+        private final Consumer<Dot> onReply;
+        private final long requested = GameMetrics.start();
+        /** Guarded by this reply. */
+        private Thread thinking;
+        private volatile Future<?> deadline;
+
+        Reply(long ticket, Consumer<Dot> onReply) {
+            this.ticket = ticket;
+            this.onReply = onReply;
+        }
+
+        @Override
+        public void run() {
+            Dot dot = null;
+            try {
+                setThinking(Thread.currentThread());
+                Dot choice;
+                try {
+                    choice = think();
+                } finally {
+                    setThinking(null);
+                    Thread.interrupted();
+                }
+                if (generation.get() == ticket) {
+                    dot = gameEngine.playComputerMove(choice);
+                }
+            } finally {
+                deadline.cancel(false);
+                Dot result = dot;
+                callbackExecutor.execute(() -> {
+                    pending = false;
+                    current = null;
+                    GameMetrics.stop(Phase.COMPUTER_REPLY, requested);
+                    onReply.accept(generation.get() == ticket ? result : null);
+                });
+            }
+        }
+
+        synchronized void interruptThinking() {
+            if (thinking != null) {
+                thinking.interrupt();
+            }
+        }
+
+        private synchronized void setThinking(Thread thread) {
+            thinking = thread;
+        }
+    }
+
+    private Dot think() {
+        if (playerPolygonPauseMillis > 0 && gameEngine.playerHasPossiblePolygon()) {
+            GameLog.event(Level.INFO, Event.PLAYER_THREAT);
+            try {
+                TimeUnit.MILLISECONDS.sleep(playerPolygonPauseMillis);
+            } catch (InterruptedException e) {
+                GameLog.message(Level.DEBUG, "Pause after player threat interrupted");
+                Thread.currentThread().interrupt();
+            }
+        }
+        return gameEngine.chooseComputerMove();
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,187 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+
+/**
+ * Compact store of the lines drawn between dots.
+ *
+ * A line can only join a dot to one of its 8 neighbours, so every cell keeps its lines as an
+ * 8-bit direction mask in a single {@code byte[]}. Cells are addressed by the same row-major
+ * index as {@link DotMap}: {@code row * width + col}. Each undirected edge is stored on both
+ * endpoints, so {@link #hasEdge(int, int)} and {@link #neighbors(int, int[])} need only one cell.
+ *
+ * Directions are numbered clockwise (in screen coordinates) starting from east, so
+ * {@code (direction + 4) & 7} is the opposite direction and consecutive numbers are angular
+ * neighbours.
+ */
+public class ConnectionStore {
+    public static final int EAST = 0;
+    public static final int SOUTH_EAST = 1;
+    public static final int SOUTH = 2;
+    public static final int SOUTH_WEST = 3;
+    public static final int WEST = 4;
+    public static final int NORTH_WEST = 5;
+    public static final int NORTH = 6;
+    public static final int NORTH_EAST = 7;
+    public static final int DIRECTIONS = 8;
+
+    private static final int[] ROW_OFFSETS = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] COL_OFFSETS = {1, 1, 0, -1, -1, -1, 0, 1};
+
+    /** Mask of the directions that point "forward" (E, SE, S, SW); used to visit every edge once. */
+    static final int FORWARD_MASK = (1 << EAST) | (1 << SOUTH_EAST) | (1 << SOUTH) | (1 << SOUTH_WEST);
+
+    private final int width;
+    private final int height;
+    private final byte[] masks;
+    private int edgeCount;
+
+    public ConnectionStore(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.masks = new byte[width * height];
+    }
+
+    private ConnectionStore(ConnectionStore other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.masks = other.masks.clone();
+        this.edgeCount = other.edgeCount;
+    }
+
+    /** Functional callback for {@link #forEachEdge(EdgeConsumer)}. */
+    public interface EdgeConsumer {
+        void accept(int from, int to);
+    }
+
+    // ---------------- Geometry ----------------
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int size() { return masks.length; }
+
+    public int indexOf(int row, int col) { return row * width + col; }
+    public int rowOf(int index) { return index / width; }
+    public int colOf(int index) { return index % width; }
+
+    public static int rowOffset(int direction) { return ROW_OFFSETS[direction]; }
+    public static int colOffset(int direction) { return COL_OFFSETS[direction]; }
+    public static int opposite(int direction) { return (direction + 4) & 7; }
+
+    /** Returns the index of the neighbour of {@code index} in the given direction, or -1 if it is off the grid. */
+    public int neighbor(int index, int direction) {
+        int row = rowOf(index) + ROW_OFFSETS[direction];
+        int col = colOf(index) + COL_OFFSETS[direction];
+        if (row < 0 || row >= height || col < 0 || col >= width) return -1;
+        return row * width + col;
+    }
+
+    /** Returns the direction from {@code from} to {@code to}, or -1 if the cells are not 8-neighbours. */
+    public int directionBetween(int from, int to) {
+        int dr = rowOf(to) - rowOf(from);
+        int dc = colOf(to) - colOf(from);
+        for (int d = 0; d < DIRECTIONS; d++) {
+            if (ROW_OFFSETS[d] == dr && COL_OFFSETS[d] == dc) return d;
+        }
+        return -1;
+    }
+
+    // ---------------- Edges ----------------
+
+    public int mask(int index) {
+        return masks[index] & 0xff;
+    }
+
+    public boolean hasAnyEdge(int index) {
+        return masks[index] != 0;
+    }
+
+    public int degree(int index) {
+        return Integer.bitCount(mask(index));
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public boolean hasEdge(int index, int direction) {
+        return (masks[index] & (1 << direction)) != 0;
+    }
+
+    /** True if a line is drawn between the two cells. */
+    public boolean hasEdgeBetween(int from, int to) {
+        int direction = directionBetween(from, to);
+        return direction >= 0 && hasEdge(from, direction);
+    }
+
+    /**
+     * Draws a line between two neighbouring cells.
+     *
+     * @return true if the line is new, false if it was already present
+     * @throws IllegalArgumentException if the cells are not 8-neighbours
+     */
+    public boolean addEdge(int from, int to) {
+        int direction = directionBetween(from, to);
+        if (direction < 0) {
+            throw new IllegalArgumentException("Cells " + from + " and " + to + " are not neighbours");
+        }
+        if (hasEdge(from, direction)) return false;
+        masks[from] |= (byte) (1 << direction);
+        masks[to] |= (byte) (1 << opposite(direction));
+        edgeCount++;
+        return true;
+    }
+
+    /**
+     * Overwrites the direction mask of one cell. The store is only consistent again once every
+     * other cell whose lines changed has been set too, as when copying masks from a snapshot.
+     */
+    public void setMask(int index, int mask) {
+        edgeCount += Integer.bitCount(mask & FORWARD_MASK) - Integer.bitCount(masks[index] & FORWARD_MASK);
+        masks[index] = (byte) mask;
+    }
+
+    /**
+     * Writes the indices of all cells connected to {@code index} into {@code out}.
+     *
+     * @param out buffer of at least {@link #DIRECTIONS} elements
+     * @return the number of neighbours written
+     */
+    public int neighbors(int index, int[] out) {
+        int count = 0;
+        int mask = mask(index);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            out[count++] = neighbor(index, direction);
+        }
+        return count;
+    }
+
+    /** Visits every drawn line exactly once, in row-major order of its first endpoint. */
+    public void forEachEdge(EdgeConsumer consumer) {
+        for (int index = 0; index < masks.length; index++) {
+            int mask = masks[index] & FORWARD_MASK;
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                consumer.accept(index, neighbor(index, direction));
+            }
+        }
+    }
+
+    public ConnectionStore copy() {
+        return new ConnectionStore(this);
+    }
+
+    /** Overwrites this store with the lines of another store of the same size, without allocating. */
+    public void copyFrom(ConnectionStore other) {
+        System.arraycopy(other.masks, 0, masks, 0, masks.length);
+        edgeCount = other.edgeCount;
+    }
+
+    public void clear() {
+        Arrays.fill(masks, (byte) 0);
+        edgeCount = 0;
+    }
+}
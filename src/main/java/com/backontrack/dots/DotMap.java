@@ -1,140 +1,298 @@
 package com.backontrack.dots;
 
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+
 import java.util.*;
 
 import static com.backontrack.dots.Constants.GRID_SIZE_X;
 import static com.backontrack.dots.Constants.GRID_SIZE_Y;
 
-public class DotMap extends HashMap<Dot, Set<Dot>> {
-    private HashMap<Dot, Set<Dot>> map = new HashMap<>();
+/**
+ * Board model: every grid position owns one {@link Dot} and the set of dots it is connected to.
+ *
+ * The board size is fixed per map; the no-argument constructor uses the classic
+ * {@code GRID_SIZE_X} x {@code GRID_SIZE_Y} board.
+ *
+ * Dots are stored in a flat array indexed by {@code row * width + col}, so looking up a
+ * position is constant time. Connections live in a {@link ConnectionStore} using the same index;
+ * the {@code Set<Dot>} values seen through the {@link Map} interface are read-only views over it.
+ * Positions outside the grid have no dot:
+ * {@link #getDot(int, int)} returns {@code null} for them and {@link #isInBounds(int, int)} can be
+ * used to check a position up front.
+ *
+ * Every change is also written through to a {@link PersistentBoard}, which keeps the
+ * {@link Zobrist} hash of the position (owners, lines and blocked dots). {@link #snapshot()}
+ * returns that immutable version in O(1) and {@link #restore(PersistentBoard)} brings the map
+ * back to any earlier or later version, touching only the cells that differ. Ownership and
+ * blocked flags must therefore be changed through the map, not on the {@link Dot} directly.
+ *
+ * The map also keeps a {@link CellSet} of the cells of each owner (owner 0 being the empty
+ * cells) and of the cells of each owner with at least one line, updated by every change of
+ * ownership or lines. Counting, finding an empty cell and listing one side's dots therefore cost
+ * O(1) or O(result) instead of a scan of the board, and the maps returned by
+ * {@link #getMapOfAttributedDots(int)} and its variants are live views over those sets that are
+ * created once.
+ */
+public class DotMap extends AbstractMap<Dot, Set<Dot>> {
+    /** Neighbours looked at by {@link #getAnyDotAlone(int)}, in order: below, above, right, left. */
+    private static final int[] ALONE_ROWS = {1, -1, 0, 0};
+    private static final int[] ALONE_COLS = {0, 0, 1, -1};
+
+    private final int width;
+    private final int height;
+    private final Dot[] dots;
+    private final ConnectionStore connections;
+    private final EdgeIndex edgeIndex;
+    /** Cells per owner: empty, player, computer. */
+    private final CellSet[] owned = new CellSet[3];
+    /** Cells per owner that have at least one line. */
+    private final CellSet[] connected = new CellSet[3];
+    /** No empty cell has a lower index; see {@link #findFirstAvailableDot()}. */
+    private int firstEmpty;
+    private final Map<Dot, Set<Dot>>[] ownedViews;
+    private final Map<Dot, Set<Dot>>[] connectedViews;
+    /** Map entries by cell, created on first use and reused by every view. */
+    private final Entry<Dot, Set<Dot>>[] entries;
+    private PersistentBoard version;
+
+    public DotMap() {
+        this(GRID_SIZE_X, GRID_SIZE_Y);
+    }
+
+    public DotMap(int width, int height) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Board must be at least 2x2: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.dots = new Dot[width * height];
+        this.connections = new ConnectionStore(width, height);
+        this.edgeIndex = new EdgeIndex(width, height);
+        this.version = PersistentBoard.empty(width, height);
+        this.ownedViews = newViewArray();
+        this.connectedViews = newViewArray();
+        for (int owner = 0; owner < 3; owner++) {
+            owned[owner] = new CellSet(dots.length);
+            connected[owner] = new CellSet(dots.length);
+            ownedViews[owner] = new CellMap(owned[owner]);
+            connectedViews[owner] = new CellMap(connected[owner]);
+        }
+        this.entries = newEntryArray(dots.length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<Dot, Set<Dot>>[] newViewArray() {
+        return (Map<Dot, Set<Dot>>[]) new Map[3];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Entry<Dot, Set<Dot>>[] newEntryArray(int size) {
+        return (Entry<Dot, Set<Dot>>[]) new Entry[size];
+    }
 
     public void createDotMap() {
-        for (int row = 0; row < GRID_SIZE_Y; row++) {
-            for (int col = 0; col < GRID_SIZE_X; col++) {
-                map.put(new Dot(row, col, 0), new HashSet<>());
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                dots[indexOf(row, col)] = new Dot(row, col, 0);
             }
         }
+        connections.clear();
+        edgeIndex.clear();
+        for (int owner = 0; owner < 3; owner++) {
+            owned[owner].clear();
+            connected[owner].clear();
+        }
+        for (int i = 0; i < dots.length; i++) owned[0].add(i);
+        firstEmpty = 0;
+        Arrays.fill(entries, null);
+        version = PersistentBoard.empty(width, height);
+    }
+
+    public boolean isInBounds(int row, int col) {
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    public int getWidth() {
+        return width;
     }
 
+    public int getHeight() {
+        return height;
+    }
+
+    /** Returns the dot at the given position, or {@code null} if the position is outside the grid. */
     public Dot getDot(int row, int col) {
-        return map.entrySet().stream()
-                .filter(entry -> entry.getKey().getRow() == row && entry.getKey().getCol() == col)
-                .map(Entry::getKey)
-                .findFirst()
-                .orElse(getDefaultDot());
+        if (!isInBounds(row, col)) {
+            return null;
+        }
+        return dots[indexOf(row, col)];
+    }
+
+    public Dot getDot(int index) {
+        return dots[index];
+    }
+
+    public int indexOf(Dot dot) {
+        return indexOf(dot.getRow(), dot.getCol());
+    }
+
+    /** The lines drawn between dots, indexed like {@link #getDot(int)}. */
+    public ConnectionStore getConnections() {
+        return connections;
+    }
+
+    /** Drawn diagonals by unit square, for constant-time crossing checks. */
+    public EdgeIndex getEdgeIndex() {
+        return edgeIndex;
+    }
+
+    /** Number of dots owned by {@code owner}, 0 for empty cells; kept up to date with every change. */
+    public int getDotCount(int owner) {
+        return owned[owner].size();
+    }
+
+    /** The cells of {@code owner}, 0 for empty cells; a live set that callers must not modify. */
+    CellSet getCells(int owner) {
+        return owned[owner];
     }
 
-    public Dot getDefaultDot() {
-        return map.entrySet().stream()
-                .filter(entry -> entry.getKey().getRow() == 19 && entry.getKey().getCol() == 19)
-                .map(Entry::getKey)
-                .findFirst()
-                .orElse(null);
+    /** Zobrist hash of the current position; equal positions on boards of the same size hash equally. */
+    public long getHash() {
+        return version.getHash();
     }
 
+    /** The current position as an immutable board; later changes to the map do not affect it. */
+    public PersistentBoard snapshot() {
+        return version;
+    }
+
+    /**
+     * Makes this map hold the position of {@code target}: owners, blocked flags and lines. Only the
+     * cells where the current version and {@code target} differ are visited, so going back and
+     * forth between related versions (undo, redo) costs in proportion to the change.
+     *
+     * @throws IllegalArgumentException if {@code target} is for another board size
+     */
+    public void restore(PersistentBoard target) {
+        version.forEachDifference(target, index -> {
+            Dot dot = dots[index];
+            int owner = target.getOwner(index);
+            int lines = target.getLines(index);
+            int changed = connections.mask(index) ^ lines;
+            connected[dot.getPlayer()].remove(index);
+            if (lines != 0) connected[owner].add(index);
+            moveOwner(index, dot.getPlayer(), owner);
+            dot.setPlayer(owner);
+            dot.setBlocked(target.isBlocked(index));
+
+            connections.setMask(index, lines);
+            // diagonals are indexed once, from the endpoint they leave to the south
+            for (int direction = ConnectionStore.SOUTH_EAST; direction <= ConnectionStore.SOUTH_WEST; direction += 2) {
+                if ((changed & (1 << direction)) == 0) continue;
+                Dot other = dots[connections.neighbor(index, direction)];
+                if ((lines & (1 << direction)) != 0) {
+                    edgeIndex.add(dot.getRow(), dot.getCol(), other.getRow(), other.getCol());
+                } else {
+                    edgeIndex.remove(dot.getRow(), dot.getCol(), other.getRow(), other.getCol());
+                }
+            }
+        });
+        version = target;
+    }
+
+    /**
+     * The empty dot with the lowest index. Cells only fill up between undos, so the search resumes
+     * where the last one stopped and costs O(1) amortized.
+     */
     public Dot findFirstAvailableDot() {
-        return map.entrySet().stream()
-                .filter(entry -> entry.getKey().getPlayer() == 0)
-                .map(Entry::getKey)
-                .findFirst()
-                .orElse(null);
+        if (owned[0].isEmpty()) {
+            return null;
+        }
+        while (dots[firstEmpty].getPlayer() != 0) {
+            firstEmpty++;
+        }
+        return dots[firstEmpty];
     }
 
     public void attributeDotToComputer(Dot dot) {
-        dot.setPlayer(2);
+        setOwner(dot, 2);
     }
 
     public void attributeDotToPlayer(Dot dot) {
-        dot.setPlayer(1);
+        setOwner(dot, 1);
+    }
+
+    /** Sets or clears a dot's blocked flag, keeping the position hash current. */
+    public void setBlocked(Dot dot, boolean blocked) {
+        if (dot.isBlocked() != blocked) {
+            version = version.withBlocked(indexOf(dot), blocked);
+            dot.setBlocked(blocked);
+        }
     }
 
     public void attributeDotToComputerAndAddConnection(Dot dot1, Dot dot2) {
-        map.get(dot1).add(dot2);
-        map.get(dot2).add(dot1);
-        getDot(dot1.getRow(), dot1.getCol()).setPlayer(2);
-        getDot(dot2.getRow(), dot2.getCol()).setPlayer(2);
-        map.put(dot1, map.get(dot1));
-    }
-
-    public void addConnection(Dot dot1, Dot dot2) {
-        Set<Dot> set1 = new HashSet<>();
-        Set<Dot> set2 = new HashSet<>();
-
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (Objects.equals(entry.getKey().getRow(), dot1.getRow()) && Objects.equals(entry.getKey().getCol(), dot1.getCol())) {
-                dot1 = entry.getKey();
-                set1 = entry.getValue();
-                System.out.println(entry);
-            } else if (Objects.equals(entry.getKey().getRow(), dot2.getRow()) && Objects.equals(entry.getKey().getCol(), dot2.getCol())) {
-                dot2 = entry.getKey();
-                set2 = entry.getValue();
-                System.out.println(entry);
-            }
+        dot1 = getDot(dot1.getRow(), dot1.getCol());
+        dot2 = getDot(dot2.getRow(), dot2.getCol());
+        if (connections.addEdge(indexOf(dot1), indexOf(dot2))) {
+            edgeAdded(dot1, dot2);
         }
+        setOwner(dot1, 2);
+        setOwner(dot2, 2);
+    }
 
-        set1.add(dot2);
-        set2.add(dot1);
+    /** Draws a line between two neighbouring dots. Returns false if the line was already drawn. */
+    public boolean addConnection(Dot dot1, Dot dot2) {
+        dot1 = getDot(dot1.getRow(), dot1.getCol());
+        dot2 = getDot(dot2.getRow(), dot2.getCol());
 
-        System.out.printf("ADD CONNECTION: dot1: %d, %d, and dot2: %d, %d", dot1.getRow(), dot1.getCol(), dot2.getRow(), dot2.getCol());
-        System.out.println(isAnyConnectionPresent());
-        System.out.println("END OF CONNECTION");
-        System.out.println("Added connections in DotMap");
+        boolean added = connections.addEdge(indexOf(dot1), indexOf(dot2));
+        if (added) {
+            edgeAdded(dot1, dot2);
+            GameLog.event(Level.DEBUG, Event.CONNECTION_ADDED, dot1.getRow(), dot1.getCol(), dot2.getRow(), dot2.getCol());
+        }
+        return added;
     }
 
     public boolean isAnyConnectionPresent() {
-        boolean isAnyConnectionPresent = false;
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (!entry.getValue().isEmpty()) {
-                isAnyConnectionPresent = true;
-                System.out.println(entry);
-                break;
-            }
-        }
-        return isAnyConnectionPresent;
+        return connections.getEdgeCount() > 0;
     }
 
     public boolean isAnyDotAttributedByComputer() {
-        boolean isAnyDotAttributedByComputer = false;
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (entry.getKey().getPlayer() == 2) {
-                isAnyDotAttributedByComputer = true;
-                break;
-            }
-        }
-        return isAnyDotAttributedByComputer;
+        return isAnyDotAttributedTo(2);
+    }
+
+    public boolean isAnyDotAttributedTo(int owner) {
+        return !owned[owner].isEmpty();
     }
 
     public Dot getAnyPlayersDotAlone() {
+        return getAnyDotAlone(1);
+    }
+
+    /**
+     * Looks at the orthogonal neighbours (below, above, right, left) of every dot of
+     * {@code owner}, visited through the owner's index, and returns the last empty one found
+     * before a neighbour of the owner's own. A single pass decides: when it finds nothing,
+     * repeating it would not either.
+     *
+     * @return an empty cell next to a lonely dot of {@code owner}, or null
+     */
+    public Dot getAnyDotAlone(int owner) {
+        CellSet ownersCells = owned[owner];
         Dot dot = null;
-        boolean isAnyPlayerDotAlone = false;
-
-        while (!isAnyPlayerDotAlone) {
-            for (Entry<Dot, Set<Dot>> entry : map.entrySet()) {
-                if (entry.getKey().getPlayer() == 1) {
-                    int row = entry.getKey().getRow();
-                    int col = entry.getKey().getCol();
-
-                    List<Dot> temporaryAloneDotList = new ArrayList<>();
-
-                    temporaryAloneDotList.add(getDot(row + 1, col));
-                    temporaryAloneDotList.add(getDot(row - 1, col));
-                    temporaryAloneDotList.add(getDot(row, col + 1));
-                    temporaryAloneDotList.add(getDot(row, col - 1));
-//                    temporaryAloneDotList.add(getDot(row + 1, col + 1));
-//                    temporaryAloneDotList.add(getDot(row + 1, col - 1));
-//                    temporaryAloneDotList.add(getDot(row - 1, col + 1));
-//                    temporaryAloneDotList.add(getDot(row - 1, col - 1));
-
-                    for (Dot temporaryDot : temporaryAloneDotList) {
-                        if (temporaryDot.getPlayer() == 1) {
-                            break;
-                        } else if (temporaryDot.getPlayer() == 2) {
-                            isAnyPlayerDotAlone = true;
-                        } else {
-                            dot = temporaryDot;
-                            isAnyPlayerDotAlone = true;
-                        }
-                    }
+        for (int i = 0; i < ownersCells.size(); i++) {
+            int row = ownersCells.get(i) / width;
+            int col = ownersCells.get(i) % width;
+            for (int k = 0; k < ALONE_ROWS.length; k++) {
+                Dot neighbour = getDot(row + ALONE_ROWS[k], col + ALONE_COLS[k]);
+                if (neighbour == null) {
+                    continue;
+                }
+                if (neighbour.getPlayer() == owner) {
+                    break;
+                } else if (neighbour.getPlayer() == 0) {
+                    dot = neighbour;
                 }
             }
         }
@@ -142,44 +300,228 @@ public class DotMap extends HashMap<Dot, Set<Dot>> {
         return dot;
     }
 
-    public HashMap<Dot, Set<Dot>> getMapOfComputerAttributedDots() {
-        HashMap<Dot, Set<Dot>> computerAttributedDots = new HashMap<>();
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (entry.getKey().getPlayer() == 2) {
-                computerAttributedDots.put(entry.getKey(), entry.getValue());
+    public Map<Dot, Set<Dot>> getMapOfComputerAttributedDots() {
+        return getMapOfAttributedDots(2);
+    }
+
+    public Map<Dot, Set<Dot>> getMapOfPlayerAttributedDots() {
+        return getMapOfAttributedDots(1);
+    }
+
+    /**
+     * The dots of {@code owner} with their connections: a live, read-only view that follows every
+     * later change, iterated in no particular order.
+     */
+    public Map<Dot, Set<Dot>> getMapOfAttributedDots(int owner) {
+        return ownedViews[owner];
+    }
+
+    /** The computer's dots that have at least one line; a live, read-only view like {@link #getMapOfAttributedDots(int)}. */
+    public Map<Dot, Set<Dot>> getMapOfComputerAttributedDotsWithAtLeastOneConnection() {
+        return connectedViews[2];
+    }
+
+    public boolean isDotConnectedToAnother(Dot dot) {
+        return connections.hasAnyEdge(indexOf(dot));
+    }
+
+    // ---------------- Map view over the flat arrays ----------------
+
+    @Override
+    public Set<Dot> get(Object key) {
+        if (!(key instanceof Dot)) return null;
+        Dot dot = (Dot) key;
+        if (!isInBounds(dot.getRow(), dot.getCol())) return null;
+        return connectionsOf(indexOf(dot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return dots[0] == null ? 0 : dots.length;
+    }
+
+    @Override
+    public Set<Entry<Dot, Set<Dot>>> entrySet() {
+        return new AbstractSet<Entry<Dot, Set<Dot>>>() {
+            @Override
+            public Iterator<Entry<Dot, Set<Dot>>> iterator() {
+                return new Iterator<Entry<Dot, Set<Dot>>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size();
+                    }
+
+                    @Override
+                    public Entry<Dot, Set<Dot>> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return entryAt(index++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return DotMap.this.size();
             }
+        };
+    }
+
+    private Set<Dot> connectionsOf(int index) {
+        return new ConnectedDots(index);
+    }
+
+    private Entry<Dot, Set<Dot>> entryAt(int index) {
+        Entry<Dot, Set<Dot>> entry = entries[index];
+        if (entry == null) {
+            entry = new SimpleImmutableEntry<>(dots[index], connectionsOf(index));
+            entries[index] = entry;
         }
-        return computerAttributedDots;
+        return entry;
     }
 
-    public HashMap<Dot, Set<Dot>> getMapOfPlayerAttributedDots() {
-        HashMap<Dot, Set<Dot>> playerAttributedDots = new HashMap<>();
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (entry.getKey().getPlayer() == 1) {
-                playerAttributedDots.put(entry.getKey(), entry.getValue());
-            }
+    /** Read-only view of the dots in one {@link CellSet}, with their connections. */
+    private final class CellMap extends AbstractMap<Dot, Set<Dot>> {
+        private final CellSet cells;
+
+        private CellMap(CellSet cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public Set<Dot> get(Object key) {
+            return containsKey(key) ? connectionsOf(indexOf((Dot) key)) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof Dot)) return false;
+            Dot dot = (Dot) key;
+            return isInBounds(dot.getRow(), dot.getCol()) && cells.contains(indexOf(dot));
+        }
+
+        @Override
+        public int size() {
+            return cells.size();
+        }
+
+        @Override
+        public Set<Entry<Dot, Set<Dot>>> entrySet() {
+            return new AbstractSet<Entry<Dot, Set<Dot>>>() {
+                @Override
+                public Iterator<Entry<Dot, Set<Dot>>> iterator() {
+                    return new Iterator<Entry<Dot, Set<Dot>>>() {
+                        private int position = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < cells.size();
+                        }
+
+                        @Override
+                        public Entry<Dot, Set<Dot>> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            return entryAt(cells.get(position++));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return cells.size();
+                }
+            };
         }
-        return playerAttributedDots;
     }
 
-    public HashMap<Dot, Set<Dot>> getMapOfComputerAttributedDotsWithAtLeastOneConnection() {
-        HashMap<Dot, Set<Dot>> computerAttributedDotsWithAtLeastOneConnection = new HashMap<>();
-        for (Entry<Dot, Set<Dot>> entry: map.entrySet()) {
-            if (entry.getKey().getPlayer() == 2 && !entry.getValue().isEmpty()) {
-                computerAttributedDotsWithAtLeastOneConnection.put(entry.getKey(), entry.getValue());
-            }
+    /** Read-only view of the dots connected to one cell, decoded from its direction mask. */
+    private final class ConnectedDots extends AbstractSet<Dot> {
+        private final int index;
+
+        private ConnectedDots(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Iterator<Dot> iterator() {
+            return new Iterator<Dot>() {
+                private int remaining = connections.mask(index);
+
+                @Override
+                public boolean hasNext() {
+                    return remaining != 0;
+                }
+
+                @Override
+                public Dot next() {
+                    if (remaining == 0) throw new NoSuchElementException();
+                    int direction = Integer.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return dots[connections.neighbor(index, direction)];
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Dot)) return false;
+            Dot dot = (Dot) o;
+            return isInBounds(dot.getRow(), dot.getCol()) && connections.hasEdgeBetween(index, indexOf(dot));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !connections.hasAnyEdge(index);
+        }
+
+        @Override
+        public int size() {
+            return connections.degree(index);
         }
-        return computerAttributedDotsWithAtLeastOneConnection;
     }
 
-    public boolean isDotConnectedToAnother(Dot dot) {
-        return !map.get(dot).isEmpty();
+    private void setOwner(Dot dot, int owner) {
+        int index = indexOf(dot);
+        version = version.withOwner(index, owner);
+        if (connected[dot.getPlayer()].remove(index)) {
+            connected[owner].add(index);
+        }
+        moveOwner(index, dot.getPlayer(), owner);
+        dot.setPlayer(owner);
+    }
+
+    private void moveOwner(int index, int from, int to) {
+        if (from == to) return;
+        owned[from].remove(index);
+        owned[to].add(index);
+        if (to == 0 && index < firstEmpty) {
+            firstEmpty = index;
+        }
+    }
+
+    private void edgeAdded(Dot dot1, Dot dot2) {
+        int from = indexOf(dot1);
+        int to = indexOf(dot2);
+        connected[dot1.getPlayer()].add(from);
+        connected[dot2.getPlayer()].add(to);
+        edgeIndex.add(dot1.getRow(), dot1.getCol(), dot2.getRow(), dot2.getCol());
+        version = version.withLine(from, connections.directionBetween(from, to));
+    }
+
+    private int indexOf(int row, int col) {
+        return row * width + col;
     }
 
     @Override
     public String toString() {
         return "DotMap{" +
-                "map=" + map +
+                "map=" + super.toString() +
                 '}';
     }
 }
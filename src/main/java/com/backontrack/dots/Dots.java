@@ -1,13 +1,15 @@
 package com.backontrack.dots;
 
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.TextField;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
@@ -20,9 +22,23 @@ import java.util.concurrent.TimeUnit;
 
 import static com.backontrack.dots.Constants.*;
 
+/**
+ * The game window. The board size can be chosen at launch with {@code --width=N --height=N};
+ * boards larger than the window are shown through a scrollable viewport. Drawing is left to a
+ * {@link BoardRenderer}, which repaints only what changed.
+ */
 public class Dots extends Application {
 
-    private Canvas canvas;
+    /** The computer's reply is cut short after this long; covers the search budget and the pause after a player threat. */
+    private static final long COMPUTER_MOVE_DEADLINE_MILLIS = 3000;
+
+    /** Cells shown at once; larger boards scroll. */
+    private static final int VIEWPORT_COLS = GRID_SIZE_X;
+    private static final int VIEWPORT_ROWS = GRID_SIZE_Y;
+
+    private BoardRenderer renderer;
+    private ScrollBar horizontalScroll;
+    private ScrollBar verticalScroll;
     private GridPane root;
     private GridPane menu;
     private Label title = new Label();
@@ -30,25 +46,40 @@ public class Dots extends Application {
     private TextField playerName = new TextField();
     private Button submit = new Button();
     private Button newGame = new Button();
+    private Button undo = new Button();
+    private Button redo = new Button();
     private Button exit = new Button();
     private Player player = new Player("Player");
     //private Player computer = new Player("Computer");
 
     private Random temporaryRandom = new Random();
 
-    private int[][] grid = new int[GRID_SIZE_Y][GRID_SIZE_X]; //0 - empty, 1 - player, 2 - computer
     private int initialCol;
     private int initialRow;
     private int selectedRow = -1;
     private int selectedCol = -1;
 
-    private final DotMap dotMap = new DotMap();
-    PolygonDetector polygonDetector = new PolygonDetector();
+    private int visibleRows;
+    private int visibleCols;
+
+    private GameEngine gameEngine;
+    private ComputerMoveService computerMoves;
+    private final MctsStrategy computerStrategy = new MctsStrategy(500, Integer.MAX_VALUE);
 
 
     @Override
     public void start(Stage primaryStage) throws InterruptedException{
-        canvas = new Canvas(GRID_SIZE_X * CELL_SIZE + 2 * PADDING, GRID_SIZE_X * CELL_SIZE + 2 * PADDING);
+        int width = boardParameter("width", GRID_SIZE_X);
+        int height = boardParameter("height", GRID_SIZE_Y);
+        gameEngine = new GameEngine(width, height, new Random());
+        gameEngine.setComputerStrategy(computerStrategy);
+        computerMoves = new ComputerMoveService(gameEngine, COMPUTER_MOVE_DEADLINE_MILLIS);
+
+        visibleCols = Math.min(width, VIEWPORT_COLS);
+        visibleRows = Math.min(height, VIEWPORT_ROWS);
+        renderer = new BoardRenderer(gameEngine.getState(), visibleCols, visibleRows);
+        horizontalScroll = createScrollBar(Orientation.HORIZONTAL, width - visibleCols);
+        verticalScroll = createScrollBar(Orientation.VERTICAL, height - visibleRows);
 
         title.setTranslateX(50);
         title.setTranslateY(50);
@@ -99,6 +130,34 @@ public class Dots extends Application {
 //            }
         });
 
+        undo.setText("UNDO");
+        undo.setTranslateX(50);
+        undo.setTranslateY(410);
+        undo.setPrefSize(100, 19);
+        undo.setOnAction((e) -> {
+            if (computerMoves.isPending()) {
+                return;
+            }
+            gameEngine.undoTurn();
+            selectedRow = -1;
+            selectedCol = -1;
+            renderer.requestRender();
+        });
+
+        redo.setText("REDO");
+        redo.setTranslateX(50);
+        redo.setTranslateY(440);
+        redo.setPrefSize(100, 19);
+        redo.setOnAction((e) -> {
+            if (computerMoves.isPending()) {
+                return;
+            }
+            gameEngine.redoTurn();
+            selectedRow = -1;
+            selectedCol = -1;
+            renderer.requestRender();
+        });
+
         exit.setText("EXIT");
         exit.setTranslateX(50);
         exit.setTranslateY(500);
@@ -108,9 +167,16 @@ public class Dots extends Application {
             System.exit(0);
         });
 
-        drawGrid();
+        renderer.getNode().setOnMouseClicked(this::handleMouseClick);
+        renderer.getNode().setOnScroll((e) -> {
+            ScrollBar scrollBar = e.isShiftDown() ? horizontalScroll : verticalScroll;
+            double delta = e.isShiftDown() && e.getDeltaY() == 0 ? e.getDeltaX() : e.getDeltaY();
+            scrollBar.setValue(Math.max(0, Math.min(scrollBar.getMax(), scrollBar.getValue() - Math.signum(delta) * 3)));
+        });
 
-        canvas.setOnMouseClicked(this::handleMouseClick);
+        BorderPane board = new BorderPane(renderer.getNode());
+        board.setRight(verticalScroll);
+        board.setBottom(horizontalScroll);
 
 
 
@@ -124,13 +190,15 @@ public class Dots extends Application {
         menu.add(playerName, 2, 0);
         menu.add(submit, 2, 0);
         menu.add(newGame, 2, 0);
+        menu.add(undo, 2, 0);
+        menu.add(redo, 2, 0);
         menu.add(exit, 2, 0);
 
         root = new GridPane();
-        root.add(canvas, 0, 0);
+        root.add(board, 0, 0);
         root.add(menu, 1, 0);
 
-        root.getColumnConstraints().add(new ColumnConstraints(canvas.getWidth() + 100));
+        root.getColumnConstraints().add(new ColumnConstraints(renderer.getWidth() + 100));
         root.getColumnConstraints().add(new ColumnConstraints(200));
 
         Scene scene = new Scene(root, 1550, 870, Color.WHITE);
@@ -138,121 +206,79 @@ public class Dots extends Application {
         primaryStage.setTitle("Dots");
         primaryStage.setScene(scene);
 
-        dotMap.createDotMap();
-
         primaryStage.show();
     }
 
-    private void drawGrid() {
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-        gc.setLineWidth(1);
-
-        //Draw grid
-        gc.setStroke(Color.LIGHTGRAY);
-        for (int i = 0; i < GRID_SIZE_X; i++) {
-            int pos = i * CELL_SIZE + PADDING;
-            gc.strokeLine(pos, PADDING + CELL_SIZE, pos, GRID_SIZE_Y * CELL_SIZE + (double) PADDING / 2);
-        }
-
-        for (int i = 0; i < GRID_SIZE_Y - 1; i++) {
-            int pos = i * CELL_SIZE + PADDING + CELL_SIZE;
-            gc.strokeLine(PADDING, pos, GRID_SIZE_X * CELL_SIZE + (double) PADDING / 2, pos);
-        }
-
-        //Draw dots
-        for (int row = 0; row < GRID_SIZE_Y; row++) {
-            for (int col = 0; col < GRID_SIZE_X; col++) {
-                if (grid[row][col] == PLAYER) {
-                    drawDot(col, row, PLAYERS_COLOR);
-                } else if (grid[row][col] == COMPUTER) {
-                    drawDot(col, row, COMPUTERS_COLOR);
-                }
+    private ScrollBar createScrollBar(Orientation orientation, int hiddenCells) {
+        ScrollBar scrollBar = new ScrollBar();
+        scrollBar.setOrientation(orientation);
+        scrollBar.setMin(0);
+        scrollBar.setMax(Math.max(0, hiddenCells));
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setBlockIncrement(orientation == Orientation.HORIZONTAL ? visibleCols : visibleRows);
+        scrollBar.setVisible(hiddenCells > 0);
+        scrollBar.setManaged(hiddenCells > 0);
+        scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+            int cell = (int) Math.round(newValue.doubleValue());
+            if (orientation == Orientation.HORIZONTAL) {
+                renderer.scrollTo(renderer.getViewRow(), cell);
+            } else {
+                renderer.scrollTo(cell, renderer.getViewCol());
             }
-        }
+        });
+        return scrollBar;
+    }
 
-        //Draw lines
-        gc.setLineWidth(3);
-
-        int row1;
-        int col1;
-
-        for (Map.Entry<Dot, Set<Dot>> entry : dotMap.getMapOfPlayerAttributedDots().entrySet()) {
-            row1 = entry.getKey().getRow();
-            col1 = entry.getKey().getCol();
-            for (Dot dot : entry.getValue()) {
-                int row2 = dot.getRow();
-                int col2 = dot.getCol();
-                if (grid[row1][col1] == PLAYER && grid[row2][col2] == PLAYER) {
-                    gc.setStroke(PLAYERS_COLOR);
-                    gc.strokeLine(col1 * CELL_SIZE + 2 * CELL_SIZE,
-                            row1 * CELL_SIZE + 2 * CELL_SIZE,
-                            col2 * CELL_SIZE + 2 * CELL_SIZE,
-                            row2 * CELL_SIZE + 2 * CELL_SIZE
-                    );
-                }
-            }
+    private int boardParameter(String name, int defaultValue) {
+        String value = getParameters().getNamed().get(name);
+        if (value == null) {
+            return defaultValue;
         }
-
-        for (Map.Entry<Dot, Set<Dot>> entry : dotMap.getMapOfComputerAttributedDots().entrySet()) {
-            row1 = entry.getKey().getRow();
-            col1 = entry.getKey().getCol();
-
-            for (Dot dot : entry.getValue()) {
-                int row2 = dot.getRow();
-                int col2 = dot.getCol();
-                if (grid[row1][col1] == COMPUTER && grid[row2][col2] == COMPUTER) {
-                    gc.setStroke(COMPUTERS_COLOR);
-                    gc.strokeLine(col1 * CELL_SIZE + 2 * CELL_SIZE,
-                            row1 * CELL_SIZE + 2 * CELL_SIZE,
-                            col2 * CELL_SIZE + 2 * CELL_SIZE,
-                            row2 * CELL_SIZE + 2 * CELL_SIZE
-                    );
-                }
+        try {
+            int size = Integer.parseInt(value);
+            // a single row or column has no room for a polygon, and the board needs at least that
+            if (size >= 2) {
+                return size;
             }
+        } catch (NumberFormatException e) {
+            // reported below
         }
+        GameLog.message(Level.WARN, "Invalid board " + name + ": " + value + ", using " + defaultValue);
+        return defaultValue;
     }
 
-    private void drawDot(int col, int row, Color color) {
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        double x = col * CELL_SIZE + PADDING;
-        double y = row * CELL_SIZE + PADDING;
-
-        gc.setFill(color);
-        gc.fillOval(x - DOT_RADIUS, y - DOT_RADIUS, DOT_RADIUS * 2, DOT_RADIUS * 2);
+    @Override
+    public void stop() {
+        computerMoves.shutdown();
+        computerStrategy.shutdown();
     }
 
     private void handleMouseClick(MouseEvent event) {
-        int col = (int) ((event.getX() - PADDING + (double) CELL_SIZE / 2) / CELL_SIZE);
-        int row = (int) ((event.getY() - PADDING + (double) CELL_SIZE / 2) / CELL_SIZE);
+        if (computerMoves.isPending()) {
+            //Input is blocked until the computer has replied
+            return;
+        }
+        int col = renderer.colAt(event.getX());
+        int row = renderer.rowAt(event.getY());
 
-        if (col < 0 || col >= GRID_SIZE_X || row < 0 || row >= GRID_SIZE_Y) {
+        GameState state = gameEngine.getState();
+        if (col < 0 || col >= state.getWidth() || row < 0 || row >= state.getHeight()) {
             return;
         }
 
-        if (grid[row][col] == 0) {
+        if (state.getOwner(row, col) == 0) {
             //Empty cell: place a dot
-            grid[row][col] = PLAYER;
-            Dot dot = dotMap.getDot(row, col);
-            dot.setPlayer(PLAYER);
-            dotMap.attributeDotToPlayer(dot);
+            gameEngine.placeDot(row, col);
             selectedRow = -1;
             selectedCol = -1;
 
-            polygonDetector.updateBlockedDots(dotMap);
-
-            if (polygonDetector.playerHasPossiblePolygon(dotMap)) {
-                System.out.println("Player can connect");
-                try {
-                TimeUnit.MILLISECONDS.sleep(1000);}
-                catch (InterruptedException e) {
-                    System.out.println(e);
-                }
-            }
-
-            computersMove(row, col, 3);
+            //Show the player's dot, then leave the board to the computer until it replies
+            renderer.renderNow();
+            renderer.setSuspended(true);
+            computerMoves.requestReply((computersDot) -> renderer.setSuspended(false));
+            return;
 
-        } else if (grid[row][col] == PLAYER) {
+        } else if (state.getOwner(row, col) == PLAYER) {
             //Clicked on own existing dot
             if (selectedRow == -1 && selectedCol == -1) {
                 //First dot selected
@@ -260,251 +286,35 @@ public class Dots extends Application {
                 selectedCol = col;
                 initialRow = row;
                 initialCol = col;
-                System.out.printf("First move: %d, %d selected.", row, col);
+                GameLog.event(Level.DEBUG, Event.DOT_SELECTED, row, col);
             } else if (row == initialRow && col == initialCol) {
                 //Last dot selected - draw line
                 if (Math.abs(selectedRow - row) <= 1 && Math.abs(selectedCol - col) <= 1) {
-                    drawLineBetweenDots(selectedRow, selectedCol, row, col, PLAYER);
-                    dotMap.addConnection(dotMap.getDot(selectedRow, selectedCol), dotMap.getDot(row, col));
+                    gameEngine.connect(selectedRow, selectedCol, row, col);
                     selectedRow = -1;
                     selectedCol = -1;
-                    System.out.printf("Last move: %d, %d selected.", row, col);
+                    GameLog.event(Level.DEBUG, Event.DOT_SELECTED, row, col);
                 }
             } else {
                 //Next dot selected - draw line
                 if (Math.abs(selectedRow - row) <= 1 && Math.abs(selectedCol - col) <= 1) {
-                    drawLineBetweenDots(selectedRow, selectedCol, row, col, PLAYER);
-                    dotMap.addConnection(dotMap.getDot(selectedRow, selectedCol), dotMap.getDot(row, col));
+                    gameEngine.connect(selectedRow, selectedCol, row, col);
                     selectedRow = row;
                     selectedCol = col;
-                    System.out.printf("Following move: %d, %d selected.", row, col);
+                    GameLog.event(Level.DEBUG, Event.DOT_SELECTED, row, col);
                 }
             }
         }
 
-        drawGrid();
-
-    }
-
-    private void drawLineBetweenDots(int row1, int col1, int row2, int col2, int player) {
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        Color lineColor = (player == PLAYER) ? PLAYERS_COLOR : COMPUTERS_COLOR;
-
-        double y1 = row1 * CELL_SIZE + PADDING;
-        double x1 = col1 * CELL_SIZE + PADDING;
-        double y2 = row2 * CELL_SIZE + PADDING;
-        double x2 = col2 + CELL_SIZE + PADDING;
-
-        gc.setStroke(lineColor);
-        gc.setLineWidth(3);
-        gc.strokeLine(x1, y1, x2, y2);
-    }
-
-    private void computersMove(int lastRow, int lastCol, int difficulty) {
-        int row = lastRow;
-        int col = lastCol;
-        boolean isComputerMoveValid = false;
-
-        while (!isComputerMoveValid) {
-
-            int computerRow = -1;
-            int computerCol = -1;
-
-            if (null != dotMap.getAnyPlayersDotAlone()) {
-                computerRow = dotMap.getAnyPlayersDotAlone().getRow();
-                computerCol = dotMap.getAnyPlayersDotAlone().getCol();
-
-                System.out.printf("\nAlone Dot found: %d, %d\n", computerRow, computerCol);
-            } else if (dotMap.isAnyDotAttributedByComputer()) {
-                for (Map.Entry<Dot, Set<Dot>> entry : dotMap.getMapOfComputerAttributedDots().entrySet()) {
-                    row = entry.getKey().getRow();
-                    col = entry.getKey().getCol();
-
-                    System.out.println(entry.getKey());
-
-                    Map<Dot, Dot> temporaryBestDotMap = new HashMap<>();
-
-                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col), dotMap.getDot(row + 1, col));
-                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col), dotMap.getDot(row - 1, col));
-                    temporaryBestDotMap.put(dotMap.getDot(row, col + 2), dotMap.getDot(row, col + 1));
-                    temporaryBestDotMap.put(dotMap.getDot(row, col - 2), dotMap.getDot(row, col - 1));
-                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col + 2), dotMap.getDot(row + 1, col + 1));
-                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col - 2), dotMap.getDot(row + 1, col - 1));
-                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col + 2), dotMap.getDot(row - 1, col + 1));
-                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col - 2), dotMap.getDot(row - 1, col - 1));
-
-                    Dot temporaryDot = temporaryBestDotMap.entrySet().stream()
-                            .filter(k -> k.getKey().getPlayer() == COMPUTER && k.getValue().getPlayer() == 0)
-                            .filter(k -> dotMap.isDotConnectedToAnother(k.getValue()))
-                            .map(Map.Entry::getValue)
-                            .findFirst()
-                            .orElse(null);
-
-                    System.out.println("TEMPORARY DOT");
-                    System.out.println(temporaryDot);
-                    System.out.println();
-
-                    if (temporaryDot != null && temporaryDot.getPlayer() == 0) {
-                        computerRow = temporaryDot.getRow();
-                        computerCol = temporaryDot.getCol();
-                        System.out.printf("Close dot suitable for connection is found: Dot: %d, %d.", computerRow, computerCol);
-                        System.out.println("Grid[row][col]: " + grid[computerRow][computerCol]);
-                    } else {
-                        System.out.println("No luck");
-                        System.out.println("Random close position is being found.");
-
-                        boolean isDotAvailable = false;
-                        int counter = 0;
-
-                        while (!isDotAvailable) {
-                            System.out.println("Trying to find an available dot");
-                            if (counter < 10) {
-                                System.out.println("Counter: " + counter);
-                                int[] positions = {-3, -2, -1, 0, 1, 2, 3};
-                                computerRow = row + positions[temporaryRandom.nextInt(positions.length)];
-                                computerCol = col + positions[temporaryRandom.nextInt(positions.length)];
-
-                                counter++;
-
-                            } else {
-                                System.out.println("10 tries: find any available dot.");
-                                Dot availableDot = dotMap.findFirstAvailableDot();
-                                computerRow = availableDot.getRow();
-                                computerCol = availableDot.getCol();
-                            }
-
-                            if (dotMap.getDot(computerRow, computerCol).getPlayer() == 0) {
-                                isDotAvailable = true;
-                                System.out.println("Available dot found.");
-                            }
-                        }
-                    }
-                }
-            } else {
-                System.out.println("Random close position is being found.");
-                int[] positions = {-1, 0, 1};
-                computerRow = row + positions[temporaryRandom.nextInt(positions.length)];
-                computerCol = col + positions[temporaryRandom.nextInt(positions.length)];
-            }
-
-            if (computerCol >= 0 && computerCol < GRID_SIZE_X && computerRow > 0 && computerRow < GRID_SIZE_Y && grid[computerRow][computerCol] == 0) {
-                System.out.println("Dot is available.");
-                grid[computerRow][computerCol] = COMPUTER;
-                dotMap.attributeDotToComputer(dotMap.getDot(computerRow, computerCol));
-
-                isComputerMoveValid = true;
-
-                System.out.println("Trying to connect");
-                tryConnectEverythingToNearest();
-                tryToFindAClosedPolygon();
-                System.out.println("End of try");
-                drawGrid();
-            } else {
-                if (grid[computerRow][computerCol] != 0) {
-                    System.out.printf("Computer's move. Position already used [row %d, col %d].", computerRow, computerCol);
-                    System.out.println("Player: " + dotMap.getDot(computerRow, computerCol).getPlayer());
-                    //randomTimeoutForResponse();
-                } else {
-                    System.out.printf("Computer's move. Index out of bounds [row %d, col %d].", computerRow, computerCol);
-                }
-            }
-        }
-
-        System.out.println("COMPUTER'S DOT MAP WITH CONNECTIONS");
-        System.out.println(dotMap.getMapOfComputerAttributedDots());
-    }
-
-    private void tryToFindAClosedPolygon() {
-
-        Map<Dot, Dot> closedPolygonDots = polygonDetector.findFirstPolygonForComputer(dotMap);
-
-       if (closedPolygonDots.isEmpty()) {
-           System.out.println("There are no closed connections of dots.");
-       } else {
-           System.out.println("Closed polygon found");
-           for (Map.Entry<Dot, Dot> entry: closedPolygonDots.entrySet()) {
-               int row1 = entry.getKey().getRow();
-               int col1 = entry.getKey().getCol();
-               int row2 = entry.getValue().getRow();
-               int col2 = entry.getValue().getCol();
-
-               drawLineBetweenDots(row1, col1, row2, col2, COMPUTER);
-
-               polygonDetector.updateBlockedDots(dotMap);
-
-               //dotMap.addConnection(entry.getKey(), entry.getValue());
-               //System.out.printf("CONNECTIONS BETWEEN DOT1: %d, %d and DOT2: %d, %d added. Draw lines between them. \n", row1, col1, row2, col2);
-           }
-       }
-
-       drawGrid();
-
-
-    }
-
-    private void tryConnectEverythingToNearest() {
-
-        if (!dotMap.isAnyDotAttributedByComputer()) {
-            return;
-        } else {
-            System.out.println("There are dots attributed by computer.");
-        }
-
-        System.out.println("Map of Computer Dots");
-        System.out.println(dotMap.getMapOfComputerAttributedDots());
-
-        for (Map.Entry<Dot, Set<Dot>> entry : dotMap.getMapOfComputerAttributedDots().entrySet()) {
-            if (entry.getKey().getPlayer() == COMPUTER) {
-                System.out.println("Dot suitable for connection found.");
-                int row = entry.getKey().getRow();
-                int col = entry.getKey().getCol();
-                int bestRow = -1;
-                int bestCol = -1;
-
-                for (int r = 0; r < GRID_SIZE_Y; r++) {
-                    for (int c = 0; c < GRID_SIZE_X; c++) {
-                        if ((r != row || c != col) && grid[r][c] == COMPUTER) {
-                            int distX = Math.abs(col - c);
-                            int distY = Math.abs(row - r);
-                            if (distX <= 1 && distY <= 1) {
-                                bestRow = r;
-                                bestCol = c;
-                            }
-                        }
-                    }
-                }
-
-                if (bestRow != -1 && bestCol != -1) {
-
-                    //drawLineBetweenDots(row, col, bestRow, bestCol, COMPUTER);
-
-                    System.out.println("Creating dots for connection");
-                    Dot dot1 = dotMap.getDot(row, col);
-                    Dot dot2 = dotMap.getDot(bestRow, bestCol);
-
-                    dotMap.addConnection(dot1, dot2);
-                    System.out.printf("CONNECTIONS BETWEEN DOT1: %d, %d and DOT2: %d, %d added.\n", dot1.getRow(), dot1.getCol(), dot2.getRow(), dot2.getCol());
-                    System.out.printf("Draw line between: dot1: col %d, row %d and dot2: bestCol %d, bestRow %d", col, row, bestCol, bestRow);
-                }
-            }
-        }
-
-        drawGrid();
-
-        for (Map.Entry<Dot, Set<Dot>> entry1 : dotMap.entrySet()) {
-            if (!entry1.getValue().isEmpty()) {
-                System.out.println("Dot Map:" + entry1);
-            }
-        }
+        renderer.requestRender();
     }
 
     private void randomTimeoutForResponse() {
         int randomTimeoutForResponse = temporaryRandom.nextInt(1000);
         try {
-            System.out.println(randomTimeoutForResponse);
             TimeUnit.MILLISECONDS.sleep(randomTimeoutForResponse);
         } catch (InterruptedException e) {
-            System.out.println(e);
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -0,0 +1,75 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+
+/**
+ * Index of drawn diagonals keyed by the unit square they cross.
+ *
+ * Every line joins two 8-neighbours, so it is at most one unit long. Two such lines that do not
+ * share an endpoint can only cross when they are the two diagonals of the same unit square.
+ * The index keeps one byte per square with a bit for each diagonal, which turns
+ * "does this candidate line cross anything already drawn" into a single array read.
+ *
+ * Square (row, col) is the one whose top-left corner is dot (row, col).
+ */
+public class EdgeIndex {
+    /** Diagonal from the top-left to the bottom-right corner. */
+    public static final int BACKSLASH = 1;
+    /** Diagonal from the top-right to the bottom-left corner. */
+    public static final int SLASH = 2;
+
+    private final int width;
+    private final byte[] squares;
+
+    public EdgeIndex(int width, int height) {
+        this.width = width;
+        this.squares = new byte[Math.max(0, width - 1) * Math.max(0, height - 1)];
+    }
+
+    /** Records a drawn line. Orthogonal lines cannot be crossed and are ignored. */
+    public void add(int row1, int col1, int row2, int col2) {
+        int diagonal = diagonalOf(row1, col1, row2, col2);
+        if (diagonal == 0) return;
+        squares[squareOf(row1, col1, row2, col2)] |= (byte) diagonal;
+    }
+
+    /** Forgets a line, when a board is taken back to an earlier position. */
+    public void remove(int row1, int col1, int row2, int col2) {
+        int diagonal = diagonalOf(row1, col1, row2, col2);
+        if (diagonal == 0) return;
+        squares[squareOf(row1, col1, row2, col2)] &= (byte) ~diagonal;
+    }
+
+    /** True if the line between the two dots would cross a line already drawn. */
+    public boolean crossesAny(int row1, int col1, int row2, int col2) {
+        int diagonal = diagonalOf(row1, col1, row2, col2);
+        if (diagonal == 0) return false;
+        int opposite = diagonal ^ (BACKSLASH | SLASH);
+        return (squares[squareOf(row1, col1, row2, col2)] & opposite) != 0;
+    }
+
+    /** Diagonals drawn across square (row, col), as a combination of {@link #BACKSLASH} and {@link #SLASH}. */
+    public int diagonals(int row, int col) {
+        return squares[row * (width - 1) + col];
+    }
+
+    /** Overwrites this index with another index of the same size, without allocating. */
+    public void copyFrom(EdgeIndex other) {
+        System.arraycopy(other.squares, 0, squares, 0, squares.length);
+    }
+
+    public void clear() {
+        Arrays.fill(squares, (byte) 0);
+    }
+
+    private int diagonalOf(int row1, int col1, int row2, int col2) {
+        int dr = row2 - row1;
+        int dc = col2 - col1;
+        if (dr == 0 || dc == 0) return 0;
+        return dr == dc ? BACKSLASH : SLASH;
+    }
+
+    private int squareOf(int row1, int col1, int row2, int col2) {
+        return Math.min(row1, row2) * (width - 1) + Math.min(col1, col2);
+    }
+}
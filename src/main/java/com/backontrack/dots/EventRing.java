@@ -0,0 +1,99 @@
+package com.backontrack.dots;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, lock-free ring of {@link GameLog} entries.
+ *
+ * Writers claim a sequence number with one atomic increment and fill the slot it maps to; the
+ * entry is stored in parallel primitive arrays, so publishing allocates nothing. Each slot keeps
+ * the sequence number of the entry it holds, set to -1 while a writer is filling it. A reader
+ * checks that number before and after copying an entry (a seqlock), so it never returns an entry
+ * that was being written or overwritten meanwhile. The newest {@code capacity} entries are kept;
+ * older ones are overwritten.
+ */
+final class EventRing {
+
+    static final int ARGS = 4;
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final byte[] levels;
+    private final byte[] events;
+    private final int[] args;
+    private final String[] messages;
+
+    /** @param capacity number of entries kept, rounded up to a power of two */
+    EventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        if (size < capacity) size <<= 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, -1L);
+        this.timestamps = new long[size];
+        this.levels = new byte[size];
+        this.events = new byte[size];
+        this.args = new int[ARGS * size];
+        this.messages = new String[size];
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /** Sequence number the next entry will get; entries below it have been claimed. */
+    long head() {
+        return next.get();
+    }
+
+    void publish(int level, int event, int a, int b, int c, int d, String message) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        sequences.set(slot, -1L);
+        // a volatile store lets later plain stores move before it; keep them after the invalidation
+        VarHandle.storeStoreFence();
+        timestamps[slot] = System.currentTimeMillis();
+        levels[slot] = (byte) level;
+        events[slot] = (byte) event;
+        int base = slot * ARGS;
+        args[base] = a;
+        args[base + 1] = b;
+        args[base + 2] = c;
+        args[base + 3] = d;
+        messages[slot] = message;
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Copies entry {@code sequence} into {@code into}.
+     *
+     * @return false if the entry is not published yet, is being written, or was overwritten
+     */
+    boolean read(long sequence, Entry into) {
+        int slot = (int) sequence & mask;
+        if (sequences.get(slot) != sequence) return false;
+        into.sequence = sequence;
+        into.timestamp = timestamps[slot];
+        into.level = levels[slot];
+        into.event = events[slot];
+        int base = slot * ARGS;
+        for (int i = 0; i < ARGS; i++) into.args[i] = args[base + i];
+        into.message = messages[slot];
+        VarHandle.loadLoadFence();
+        return sequences.get(slot) == sequence;
+    }
+
+    /** Reusable holder for one entry. */
+    static final class Entry {
+        long sequence;
+        long timestamp;
+        int level;
+        int event;
+        final int[] args = new int[ARGS];
+        String message;
+    }
+}
@@ -0,0 +1,280 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FaceEnumerator - lists the bounded faces of one owner's graph of lines.
+ *
+ * The graph is given as per-cell direction masks, like {@link PolygonDetector} builds them, and
+ * is drawn on the grid with straight unit-length lines, so it is planar once no two diagonals
+ * cross. Every directed line is walked exactly once: from each line the walk continues along the
+ * first line found by turning clockwise at its end, as {@link IncrementalCaptureEngine} does.
+ * Each closed walk is the boundary of one face. Rows grow downwards, so with this turn rule the
+ * shoelace sum is negative for bounded faces and positive for the outer boundary of every
+ * connected part (zero for parts without a cycle). The caller lists the cells the graph uses, and
+ * only those are visited, so the enumeration is O(n log n + lines) for n listed cells whatever
+ * the size of the board.
+ *
+ * For every bounded face the enumerator keeps its vertices (with dead-end branches poking into
+ * the face stripped), twice its area and the number of opponent dots inside it. The count uses
+ * per-column suffix sums of opponent dots: a line stepping one column east adds the dots below
+ * it in that column and a line stepping west subtracts them, so the sum over the walk is the
+ * number of dots the face encloses, at O(1) per line. The sums are looked up, for the listed
+ * cells only, in the opponent's dots sorted by column and row.
+ *
+ * The buffers are reused between calls; an instance is not thread-safe.
+ */
+final class FaceEnumerator {
+
+    private int width;
+    private int height;
+    /** Bit d is set once the line leaving the cell in direction d has been walked. */
+    private int[] walked = new int[0];
+    /** Opponent dots in the cell's column strictly below the cell; set for the listed cells. */
+    private int[] opponentsBelow = new int[0];
+    /** The opponent's dots as col * height + row, sorted. */
+    private int[] opponentKeys = new int[0];
+    private int[] walk = new int[64];
+
+    private int faceCount;
+    private int[] faceStart = new int[16];
+    private int[] faceLength = new int[16];
+    private long[] faceTwiceArea = new long[16];
+    private int[] faceOpponents = new int[16];
+    private int[] vertices = new int[256];
+    private int vertexCount;
+
+    /**
+     * Enumerates the bounded faces of the graph.
+     *
+     * @param adjacency per-cell direction masks of the graph; crossing diagonals are removed in
+     *                  place, see {@link #planarize(ConnectionStore, int[], int[], int)}
+     * @param cells     every cell with a non-zero mask (others may be listed too), in row-major order
+     * @return the number of bounded faces
+     */
+    int enumerate(DotMap dotMap, int[] adjacency, int[] cells, int cellCount, int opponentValue) {
+        ConnectionStore connections = dotMap.getConnections();
+        prepare(dotMap, cells, cellCount, opponentValue);
+        planarize(connections, adjacency, cells, cellCount);
+
+        faceCount = 0;
+        vertexCount = 0;
+        for (int k = 0; k < cellCount; k++) {
+            int cell = cells[k];
+            int unwalked = adjacency[cell] & ~walked[cell];
+            while (unwalked != 0) {
+                int dir = Integer.numberOfTrailingZeros(unwalked);
+                unwalked &= unwalked - 1;
+                // an earlier face from this cell may have come back out along this line
+                if ((walked[cell] & (1 << dir)) == 0) walkFace(connections, adjacency, cell, dir);
+            }
+        }
+        // walks only reach listed cells; leave the marks clear for the next call
+        for (int k = 0; k < cellCount; k++) walked[cells[k]] = 0;
+        return faceCount;
+    }
+
+    int getFaceCount() {
+        return faceCount;
+    }
+
+    /** Number of vertices of the face; a vertex where the face touches itself appears twice. */
+    int getLength(int face) {
+        return faceLength[face];
+    }
+
+    /** Cell index of the face's i-th vertex, in walking order. */
+    int getVertex(int face, int i) {
+        return vertices[faceStart[face] + i];
+    }
+
+    long getTwiceArea(int face) {
+        return faceTwiceArea[face];
+    }
+
+    int getEnclosedOpponents(int face) {
+        return faceOpponents[face];
+    }
+
+    /**
+     * The face enclosing the most opponent dots, the one with the smaller area on a tie (fewer
+     * lines to draw for the same capture).
+     *
+     * @return the face, or -1 if no face encloses an opponent dot
+     */
+    int best() {
+        int best = -1;
+        for (int face = 0; face < faceCount; face++) {
+            if (faceOpponents[face] == 0) continue;
+            if (best < 0 || faceOpponents[face] > faceOpponents[best]
+                    || (faceOpponents[face] == faceOpponents[best] && faceTwiceArea[face] < faceTwiceArea[best])) {
+                best = face;
+            }
+        }
+        return best;
+    }
+
+    /** The face as PolygonDetector returns polygons: each vertex mapped to the next one. */
+    Map<Dot, Dot> toEdgeMap(DotMap dotMap, int face) {
+        Map<Dot, Dot> edges = new LinkedHashMap<>();
+        int length = faceLength[face];
+        for (int i = 0; i < length; i++) {
+            edges.put(dotMap.getDot(getVertex(face, i)), dotMap.getDot(getVertex(face, (i + 1) % length)));
+        }
+        return edges;
+    }
+
+    // ---------------- Face walk ----------------
+
+    private void walkFace(ConnectionStore connections, int[] adjacency, int from, int firstDir) {
+        long twiceArea = 0;
+        int opponents = 0;
+        int length = 0;
+        int u = from;
+        int dir = firstDir;
+        do {
+            walked[u] |= 1 << dir;
+            int v = connections.neighbor(u, dir);
+            int ru = u / width, cu = u % width;
+            int rv = v / width, cv = v % width;
+            twiceArea += (long) cu * rv - (long) cv * ru;
+            if (cv == cu + 1) {
+                opponents += opponentsBelow[u];
+            } else if (cv == cu - 1) {
+                opponents -= opponentsBelow[v];
+            }
+
+            // dead-end branches are walked there and back: drop the tip and the repeated vertex
+            if (length >= 2 && walk[length - 2] == v) {
+                length--;
+            } else {
+                if (length + 1 >= walk.length) walk = Arrays.copyOf(walk, walk.length * 2);
+                if (length == 0) walk[length++] = u;
+                walk[length++] = v;
+            }
+
+            int back = ConnectionStore.opposite(dir);
+            int next = back;
+            for (int step = 1; step < ConnectionStore.DIRECTIONS; step++) {
+                int candidate = (back + step) & 7;
+                if ((adjacency[v] & (1 << candidate)) != 0) {
+                    next = candidate;
+                    break;
+                }
+            }
+            u = v;
+            dir = next;
+        } while (u != from || dir != firstDir);
+
+        if (twiceArea >= 0) return;
+
+        // the walk list ends where it started; close it, then strip branches across the seam
+        int start = 0;
+        int end = length - 1;
+        while (end - start > 2) {
+            if (walk[end - 2] == walk[start]) {
+                end -= 2;
+            } else if (walk[end - 1] == walk[start + 1]) {
+                start++;
+                end--;
+            } else {
+                break;
+            }
+        }
+        addFace(start, end, -twiceArea, Math.abs(opponents));
+    }
+
+    private void addFace(int start, int end, long twiceArea, int opponents) {
+        if (faceCount == faceStart.length) {
+            int capacity = faceCount * 2;
+            faceStart = Arrays.copyOf(faceStart, capacity);
+            faceLength = Arrays.copyOf(faceLength, capacity);
+            faceTwiceArea = Arrays.copyOf(faceTwiceArea, capacity);
+            faceOpponents = Arrays.copyOf(faceOpponents, capacity);
+        }
+        int length = end - start;
+        if (vertexCount + length > vertices.length) {
+            vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, vertexCount + length));
+        }
+        System.arraycopy(walk, start, vertices, vertexCount, length);
+        faceStart[faceCount] = vertexCount;
+        faceLength[faceCount] = length;
+        faceTwiceArea[faceCount] = twiceArea;
+        faceOpponents[faceCount] = opponents;
+        faceCount++;
+        vertexCount += length;
+    }
+
+    // ---------------- Preparation ----------------
+
+    private void prepare(DotMap dotMap, int[] cells, int cellCount, int opponentValue) {
+        width = dotMap.getWidth();
+        height = dotMap.getHeight();
+        int size = dotMap.size();
+        if (walked.length < size) {
+            walked = new int[size];
+            opponentsBelow = new int[size];
+        }
+        CellSet opponents = dotMap.getCells(opponentValue);
+        int opponentCount = opponents.size();
+        if (opponentKeys.length < opponentCount) {
+            opponentKeys = new int[Math.max(opponentCount, opponentKeys.length * 2)];
+        }
+        for (int i = 0; i < opponentCount; i++) {
+            int cell = opponents.get(i);
+            opponentKeys[i] = (cell % width) * height + cell / width;
+        }
+        Arrays.sort(opponentKeys, 0, opponentCount);
+        for (int k = 0; k < cellCount; k++) {
+            int cell = cells[k];
+            int key = (cell % width) * height + cell / width;
+            int columnEnd = key - key % height + height;
+            opponentsBelow[cell] = firstAtLeast(opponentCount, columnEnd) - firstAtLeast(opponentCount, key + 1);
+        }
+    }
+
+    /** Position of the first opponent key not below {@code key}. */
+    private int firstAtLeast(int count, int key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (opponentKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Removes crossing diagonals so the graph is planar. Two undrawn (candidate) diagonals of a
+     * unit square are both removed: their four corners belong to the owner, so the square's sides
+     * are in the graph and enclose at least as much. Otherwise the undrawn one goes, or, for two
+     * drawn lines crossing, the / one.
+     */
+    private void planarize(ConnectionStore connections, int[] adjacency, int[] cells, int cellCount) {
+        int backslash = 1 << ConnectionStore.SOUTH_EAST;
+        int slash = 1 << ConnectionStore.SOUTH_WEST;
+        for (int k = 0; k < cellCount; k++) {
+            // a backslash from the top left corner means the unit square is on the board
+            int topLeft = cells[k];
+            if ((adjacency[topLeft] & backslash) == 0) continue;
+            int topRight = topLeft + 1;
+            if ((adjacency[topRight] & slash) == 0) continue;
+
+            boolean backslashDrawn = connections.hasEdge(topLeft, ConnectionStore.SOUTH_EAST);
+            boolean slashDrawn = connections.hasEdge(topRight, ConnectionStore.SOUTH_WEST);
+            if (!backslashDrawn) removeLine(connections, adjacency, topLeft, ConnectionStore.SOUTH_EAST);
+            if (!slashDrawn || backslashDrawn) removeLine(connections, adjacency, topRight, ConnectionStore.SOUTH_WEST);
+        }
+    }
+
+    private static void removeLine(ConnectionStore connections, int[] adjacency, int cell, int dir) {
+        adjacency[cell] &= ~(1 << dir);
+        adjacency[connections.neighbor(cell, dir)] &= ~(1 << ConnectionStore.opposite(dir));
+    }
+}
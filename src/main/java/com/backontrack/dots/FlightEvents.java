@@ -0,0 +1,131 @@
+package com.backontrack.dots;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the phases of a move.
+ *
+ * Every event is disabled by default, so a recording with the stock settings does not include
+ * them and an instrumented phase costs only the allocation of an event object, which the JIT
+ * usually removes. To record them, enable the events named {@code com.backontrack.dots.Move},
+ * {@code BlockedDots}, {@code CandidateGraph}, {@code CycleSearch} and {@code ChooseMove} in a
+ * recording, for example
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start settings=dots.jfc   (a copy of default.jfc with these events enabled)
+ * </pre>
+ * or one by one with {@code jdk.jfr.Recording#enable(String)}. Each event carries the board size and the
+ * dots each side owns, so a stall in the recording can be matched to the position that caused it.
+ *
+ * Instrumented code follows the usual pattern and fills the fields only when the event will
+ * actually be written:
+ * <pre>
+ * FlightEvents.BlockedDots event = new FlightEvents.BlockedDots();
+ * event.begin();
+ * ...
+ * event.end();
+ * if (event.shouldCommit()) {
+ *     event.board(dotMap);
+ *     event.commit();
+ * }
+ * </pre>
+ */
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /** Fields shared by every event: the board the phase worked on. */
+    @Enabled(false)
+    @StackTrace(false)
+    @Category({"Dots", "Engine"})
+    abstract static class BoardEvent extends Event {
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Player Dots")
+        int playerDots;
+
+        @Label("Computer Dots")
+        int computerDots;
+
+        void board(DotMap dotMap) {
+            width = dotMap.getWidth();
+            height = dotMap.getHeight();
+            playerDots = dotMap.getDotCount(1);
+            computerDots = dotMap.getDotCount(2);
+        }
+    }
+
+    @Name("com.backontrack.dots.Move")
+    @Label("Move")
+    @Description("A dot placed by the player or played for a side, with the lines drawn for it")
+    static final class Move extends BoardEvent {
+        @Label("Owner")
+        int owner;
+
+        @Label("Row")
+        int row;
+
+        @Label("Column")
+        int col;
+    }
+
+    @Name("com.backontrack.dots.BlockedDots")
+    @Label("Blocked Dots Update")
+    @Description("Full recomputation of the dots enclosed by drawn polygons")
+    static final class BlockedDots extends BoardEvent {
+        @Label("Cycles Found")
+        int cyclesFound;
+
+        @Label("Blocked Dots")
+        int blockedDots;
+    }
+
+    @Name("com.backontrack.dots.CandidateGraph")
+    @Label("Candidate Graph")
+    @Description("Lines a side could draw without crossing a drawn one")
+    static final class CandidateGraph extends BoardEvent {
+        @Label("Owner")
+        int owner;
+
+        @Label("Edges Tested")
+        @Description("Candidate lines checked for crossings")
+        int edgesTested;
+    }
+
+    @Name("com.backontrack.dots.CycleSearch")
+    @Label("Cycle Search")
+    @Description("Search for the polygons of a graph of lines")
+    static final class CycleSearch extends BoardEvent {
+        @Label("Method")
+        @Description("dfs for the drawn-polygon search, faces for the candidate-polygon search")
+        String method;
+
+        @Label("Cycles Found")
+        int cyclesFound;
+    }
+
+    @Name("com.backontrack.dots.ChooseMove")
+    @Label("Choose Move")
+    @Description("A strategy picking a cell for a side")
+    static final class ChooseMove extends BoardEvent {
+        @Label("Strategy")
+        String strategy;
+
+        @Label("Owner")
+        int owner;
+
+        @Label("Retries")
+        @Description("Candidate cells rejected because they were taken or off the board")
+        int retries;
+    }
+}
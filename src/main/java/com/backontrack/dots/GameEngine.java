@@ -0,0 +1,444 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+import com.backontrack.dots.GameMetrics.Phase;
+
+import java.util.*;
+
+import static com.backontrack.dots.Constants.*;
+
+/**
+ * Headless game rules: the board, the human player's moves and the computer's replies.
+ *
+ * The engine has no dependency on JavaFX, so it can be embedded, benchmarked and run in parallel
+ * (one engine per game; an engine is not thread-safe). The {@link Dots} window drives an engine
+ * and renders its {@link GameState}; {@link TournamentRunner} lets two strategies play each other
+ * through {@link #chooseMove(int, MoveStrategy)} and {@link #playMove(int, Dot)}.
+ *
+ * After every action the engine keeps the board's {@link PersistentBoard} version, which shares
+ * all unchanged cells with the version before it, so {@link #undo()} and {@link #redo()} step
+ * through the game without copying the board. Each version also keeps the capture engine's
+ * {@link IncrementalCaptureEngine#mark() mark}, and the engine is wound back or forward to it
+ * along with the board, at the cost of the action's own unions. The same versions feed an optional
+ * {@link BoardChangePublisher}, which tells subscribers what each action changed.
+ */
+public class GameEngine {
+
+    private final DotMap dotMap;
+    private final IncrementalCaptureEngine captureEngine;
+    private final PolygonDetector polygonDetector = new PolygonDetector();
+    private final ThreatMap threatMap = new ThreatMap();
+    private final GameState state;
+    private final GameRecord record;
+    private MoveStrategy computerStrategy;
+    private BoardChangePublisher changePublisher;
+
+    /** Last dot of each side, indexed by owner; -1 until the side has moved. */
+    private final int[] lastRow = {-1, -1, -1};
+    private final int[] lastCol = {-1, -1, -1};
+
+    /** The game after each action, oldest first; entry {@code current} is the position on the board. */
+    private final List<Version> history = new ArrayList<>();
+    private int current;
+
+    public GameEngine() {
+        this(new Random());
+    }
+
+    public GameEngine(Random random) {
+        this(GRID_SIZE_X, GRID_SIZE_Y, random);
+    }
+
+    public GameEngine(int width, int height, Random random) {
+        this(newDotMap(width, height), random);
+    }
+
+    /** Adopts a board prepared elsewhere (benchmarks, analysis) and rebuilds the capture state from it. */
+    GameEngine(DotMap dotMap, Random random) {
+        this.dotMap = dotMap;
+        this.computerStrategy = new HeuristicStrategy(random);
+        this.captureEngine = new IncrementalCaptureEngine(dotMap);
+        this.state = new GameState(dotMap);
+        this.record = new GameRecord(dotMap.getWidth(), dotMap.getHeight());
+        captureEngine.rebuild();
+        for (int i = 0; i < dotMap.size(); i++) {
+            Dot dot = dotMap.getDot(i);
+            if (dot.getPlayer() != 0) record.dotPlaced(dot.getRow(), dot.getCol(), dot.getPlayer());
+        }
+        ConnectionStore connections = dotMap.getConnections();
+        connections.forEachEdge((from, to) -> record.connectionAdded(
+                connections.rowOf(from), connections.colOf(from), connections.rowOf(to), connections.colOf(to)));
+        history.add(new Version());
+    }
+
+    private static DotMap newDotMap(int width, int height) {
+        DotMap dotMap = new DotMap(width, height);
+        dotMap.createDotMap();
+        return dotMap;
+    }
+
+    // ---------------- Public API ----------------
+
+    /**
+     * Places a player's dot on an empty cell.
+     *
+     * @return false if the position is off the grid or already taken
+     */
+    public boolean placeDot(int row, int col) {
+        if (!dotMap.isInBounds(row, col)) {
+            return false;
+        }
+        Dot dot = dotMap.getDot(row, col);
+        if (dot.getPlayer() != 0) {
+            return false;
+        }
+
+        FlightEvents.Move event = new FlightEvents.Move();
+        event.begin();
+        dotMap.attributeDotToPlayer(dot);
+        captureEngine.dotPlaced(dot);
+        record.dotPlaced(row, col, PLAYER);
+        state.incrementMoveCount();
+        lastRow[PLAYER] = row;
+        lastCol[PLAYER] = col;
+        GameLog.event(Level.DEBUG, Event.DOT_PLACED, row, col, PLAYER);
+        checkpoint();
+        commit(event, PLAYER, dot);
+        return true;
+    }
+
+    /**
+     * Draws a player's line between two of the player's neighbouring dots.
+     *
+     * @return false if the dots are not both the player's, not neighbours, or already connected
+     */
+    public boolean connect(int row1, int col1, int row2, int col2) {
+        if (!dotMap.isInBounds(row1, col1) || !dotMap.isInBounds(row2, col2)) {
+            return false;
+        }
+        if (Math.abs(row1 - row2) > 1 || Math.abs(col1 - col2) > 1 || (row1 == row2 && col1 == col2)) {
+            return false;
+        }
+        Dot dot1 = dotMap.getDot(row1, col1);
+        Dot dot2 = dotMap.getDot(row2, col2);
+        if (dot1.getPlayer() != PLAYER || dot2.getPlayer() != PLAYER) {
+            return false;
+        }
+        if (!addConnection(dot1, dot2)) {
+            return false;
+        }
+        checkpoint();
+        return true;
+    }
+
+    /** True if the player could close a polygon around a computer dot with lines alone. */
+    public boolean playerHasPossiblePolygon() {
+        return polygonDetector.playerHasPossiblePolygon(dotMap);
+    }
+
+    /**
+     * What each side could enclose next in the current position. Analysed only when asked, at most
+     * once per position; nothing in the engine asks.
+     */
+    public ThreatMap getThreatMap() {
+        threatMap.update(dotMap);
+        return threatMap;
+    }
+
+    /**
+     * Places the computer's reply chosen by its {@link MoveStrategy}, connects it to its
+     * neighbours and looks for a polygon it can close.
+     *
+     * @return the computer's new dot, or null if the board is full
+     */
+    public Dot computerMove() {
+        return playComputerMove(chooseComputerMove());
+    }
+
+    /**
+     * Asks the computer's {@link MoveStrategy} for its reply without changing the board. The
+     * search may be cut short by interrupting the calling thread, if the strategy supports it.
+     *
+     * @return the chosen empty dot, or null if there is no move
+     */
+    public Dot chooseComputerMove() {
+        return chooseMove(COMPUTER, computerStrategy);
+    }
+
+    /**
+     * Asks {@code strategy} where {@code owner} should move, given the opponent's last dot,
+     * without changing the board.
+     *
+     * @return the chosen empty dot, or null if there is no move
+     */
+    public Dot chooseMove(int owner, MoveStrategy strategy) {
+        int opponent = 3 - owner;
+        long start = GameMetrics.start();
+        Dot dot = strategy.chooseMove(dotMap, owner, lastRow[opponent], lastCol[opponent]);
+        GameMetrics.stop(Phase.CHOOSE_MOVE, start);
+        return dot;
+    }
+
+    /**
+     * Places a reply obtained from {@link #chooseComputerMove()}, connects it to its neighbours
+     * and looks for a polygon it can close.
+     *
+     * @return the computer's new dot, or null if {@code computersDot} is null or already taken
+     */
+    public Dot playComputerMove(Dot computersDot) {
+        return playMove(COMPUTER, computersDot);
+    }
+
+    /**
+     * Places a dot for {@code owner} the way the computer plays: the dot is connected to its
+     * neighbours of the same owner, and after a computer move the engine looks for a polygon the
+     * computer can close. Unlike {@link #placeDot(int, int)}, no lines are left for a human to draw.
+     *
+     * @return the new dot, or null if {@code dot} is null or already taken
+     */
+    public Dot playMove(int owner, Dot dot) {
+        if (dot == null || dot.getPlayer() != 0) {
+            return null;
+        }
+
+        FlightEvents.Move event = new FlightEvents.Move();
+        event.begin();
+        if (owner == COMPUTER) {
+            dotMap.attributeDotToComputer(dot);
+        } else {
+            dotMap.attributeDotToPlayer(dot);
+        }
+        captureEngine.dotPlaced(dot);
+        record.dotPlaced(dot.getRow(), dot.getCol(), owner);
+        state.incrementMoveCount();
+        lastRow[owner] = dot.getRow();
+        lastCol[owner] = dot.getCol();
+        if (owner == COMPUTER) {
+            GameLog.event(Level.INFO, Event.COMPUTER_MOVE, dot.getRow(), dot.getCol());
+        } else {
+            GameLog.event(Level.DEBUG, Event.DOT_PLACED, dot.getRow(), dot.getCol(), owner);
+        }
+
+        long start = GameMetrics.start();
+        tryConnectToNearest(dot, owner);
+        GameMetrics.stop(Phase.CONNECT, start);
+        if (owner == COMPUTER) {
+            tryToFindAClosedPolygon();
+        }
+        checkpoint();
+        commit(event, owner, dot);
+        return dot;
+    }
+
+    /**
+     * Takes back the last action: a dot together with the lines drawn for it, or a single line.
+     * Only the cells that action changed are restored.
+     *
+     * @return false if there is nothing to undo
+     */
+    public boolean undo() {
+        if (current == 0) {
+            return false;
+        }
+        moveTo(current - 1);
+        return true;
+    }
+
+    /**
+     * Plays again the last action taken back by {@link #undo()}. Any new move discards the
+     * actions that could still be redone.
+     *
+     * @return false if there is nothing to redo
+     */
+    public boolean redo() {
+        if (current + 1 >= history.size()) {
+            return false;
+        }
+        moveTo(current + 1);
+        return true;
+    }
+
+    /**
+     * Takes back the last action for good: like {@link #undo()}, but the action cannot be redone.
+     * For an action the caller could not complete, such as a dot whose reply found no thread.
+     *
+     * @return false if there is nothing to take back
+     */
+    boolean discardLastAction() {
+        if (!undo()) {
+            return false;
+        }
+        history.subList(current + 1, history.size()).clear();
+        return true;
+    }
+
+    /**
+     * Takes back the player's last turn: a line, or a dot together with the computer's reply to it.
+     * The player moves first and the computer answers every dot, so an odd move count after an
+     * undo means a reply was taken back without the dot it answered.
+     *
+     * @return false if there is nothing to undo
+     */
+    public boolean undoTurn() {
+        if (!undo()) {
+            return false;
+        }
+        if (state.getMoveCount() % 2 == 1) {
+            undo();
+        }
+        return true;
+    }
+
+    /** Plays again what {@link #undoTurn()} took back. @return false if there is nothing to redo */
+    public boolean redoTurn() {
+        if (!redo()) {
+            return false;
+        }
+        if (state.getMoveCount() % 2 == 1) {
+            redo();
+        }
+        return true;
+    }
+
+    /**
+     * Whether the capture engine holds the cell as enclosed by {@code owner}, as it would decide
+     * the next move; for checking that undo and redo leave it as an uninterrupted game would.
+     */
+    boolean isEnclosedBy(int row, int col, int owner) {
+        return captureEngine.isEnclosedBy(dotMap.getConnections().indexOf(row, col), owner);
+    }
+
+    /** Replaces the computer's move picker; the default is {@link HeuristicStrategy}. */
+    public void setComputerStrategy(MoveStrategy computerStrategy) {
+        this.computerStrategy = computerStrategy;
+    }
+
+    /**
+     * Publishes the changes of every later action, undo and redo to {@code publisher}, starting
+     * with the board as it is now; null stops publishing. The publisher must be for a board of
+     * this size and fed by this engine alone.
+     */
+    public void setChangePublisher(BoardChangePublisher publisher) {
+        this.changePublisher = publisher;
+        publishChanges();
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    /** Every dot and line of the game so far, in order; see {@link ReplayEngine}. */
+    public GameRecord getRecord() {
+        return record;
+    }
+
+    // ---------------- Automatic play helpers ----------------
+
+    private void tryToFindAClosedPolygon() {
+        Map<Dot, Dot> closedPolygonDots = polygonDetector.findBestPolygonForComputer(dotMap);
+        state.setLastComputerPolygon(closedPolygonDots);
+
+        if (closedPolygonDots.isEmpty()) {
+            GameLog.event(Level.DEBUG, Event.NO_POLYGON);
+        } else {
+            GameLog.event(Level.INFO, Event.POLYGON_FOUND, closedPolygonDots.size());
+        }
+    }
+
+    /**
+     * Every automatically played dot is connected to its last neighbour of the same owner in
+     * row-major order. A new dot can only change that for itself and for its own neighbours, so
+     * only those are visited instead of rescanning the board for every dot of the owner.
+     */
+    private void tryConnectToNearest(Dot newDot, int owner) {
+        connectToLastNeighbour(newDot, owner);
+        for (int r = newDot.getRow() - 1; r <= newDot.getRow() + 1; r++) {
+            for (int c = newDot.getCol() - 1; c <= newDot.getCol() + 1; c++) {
+                Dot neighbour = dotMap.getDot(r, c);
+                if (neighbour != null && neighbour != newDot && neighbour.getPlayer() == owner) {
+                    connectToLastNeighbour(neighbour, owner);
+                }
+            }
+        }
+    }
+
+    private void connectToLastNeighbour(Dot dot, int owner) {
+        int row = dot.getRow();
+        int col = dot.getCol();
+        Dot best = null;
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                Dot neighbour = dotMap.getDot(r, c);
+                if (neighbour != null && neighbour != dot && neighbour.getPlayer() == owner) {
+                    best = neighbour;
+                }
+            }
+        }
+
+        if (best != null) {
+            addConnection(dot, best);
+        }
+    }
+
+    // ---------------- History ----------------
+
+    private void checkpoint() {
+        history.subList(current + 1, history.size()).clear();
+        history.add(new Version());
+        current++;
+        publishChanges();
+    }
+
+    private void moveTo(int index) {
+        Version version = history.get(index);
+        dotMap.restore(version.board);
+        record.rewind(version.recordLength, version.recordMoves);
+        state.setMoveCount(version.moveCount);
+        state.setLastComputerPolygon(version.lastComputerPolygon);
+        System.arraycopy(version.lastRow, 0, lastRow, 0, lastRow.length);
+        System.arraycopy(version.lastCol, 0, lastCol, 0, lastCol.length);
+        captureEngine.moveTo(version.captureMark);
+        current = index;
+        publishChanges();
+    }
+
+    private void publishChanges() {
+        if (changePublisher != null) {
+            changePublisher.publish(history.get(current).board);
+        }
+    }
+
+    /** Everything an action changes, as it was right after the action. */
+    private final class Version {
+        final PersistentBoard board = dotMap.snapshot();
+        final int captureMark = captureEngine.mark();
+        final int recordLength = record.getByteLength();
+        final int recordMoves = record.getMoveCount();
+        final int moveCount = state.getMoveCount();
+        final Map<Dot, Dot> lastComputerPolygon = state.getLastComputerPolygon();
+        final int[] lastRow = GameEngine.this.lastRow.clone();
+        final int[] lastCol = GameEngine.this.lastCol.clone();
+    }
+
+    private boolean addConnection(Dot dot1, Dot dot2) {
+        if (dotMap.addConnection(dot1, dot2)) {
+            captureEngine.connectionAdded(dot1, dot2);
+            record.connectionAdded(dot1.getRow(), dot1.getCol(), dot2.getRow(), dot2.getCol());
+            return true;
+        }
+        return false;
+    }
+
+    /** Writes the flight recorder event of a move, if it is being recorded. */
+    private void commit(FlightEvents.Move event, int owner, Dot dot) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.owner = owner;
+            event.row = dot.getRow();
+            event.col = dot.getCol();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.backontrack.dots;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured game-event log.
+ *
+ * An entry is an {@link Event} with up to four int arguments (or a short message) recorded in a
+ * preallocated lock-free {@link EventRing}; nothing is formatted or written on the calling
+ * thread. Entries below the current {@link Level} are dropped after a single field read, so
+ * disabled logging costs next to nothing; callers that would build a message string first check
+ * {@link #isEnabled(Level)}.
+ *
+ * The ring keeps the most recent entries for {@link #recent(int)}. An optional file sink drains
+ * it from a background thread and writes one line per entry. Both can be configured at start-up
+ * with the system properties {@code dots.log.level} (default INFO) and {@code dots.log.file}
+ * ({@code /dev/stdout} restores the old console output).
+ */
+public final class GameLog {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, OFF }
+
+    /** What happened; the argument names document the int arguments in order. */
+    public enum Event {
+        MESSAGE(),
+        DOT_PLACED("row", "col", "owner"),
+        CONNECTION_ADDED("row1", "col1", "row2", "col2"),
+        COMPUTER_MOVE("row", "col"),
+        POLYGON_FOUND("dots"),
+        NO_POLYGON(),
+        PLAYER_THREAT(),
+        DOT_SELECTED("row", "col"),
+        CANDIDATE("row", "col"),
+        /** The owner is -1 for a cell outside the board. */
+        CANDIDATE_REJECTED("row", "col", "owner"),
+        SEARCH_DONE("playouts", "visits");
+
+        private final String[] argNames;
+
+        Event(String... argNames) {
+            this.argNames = argNames;
+        }
+    }
+
+    private static final int CAPACITY = 1 << 14;
+    private static final long SINK_INTERVAL_MILLIS = 200;
+
+    private static final EventRing RING = new EventRing(CAPACITY);
+    private static volatile int threshold = Level.INFO.ordinal();
+    private static FileSink sink;
+
+    static {
+        // a bad setting must not fail the class, which every part of the game uses
+        String level = System.getProperty("dots.log.level");
+        Level parsed = null;
+        if (level != null) {
+            try {
+                parsed = Level.valueOf(level.trim().toUpperCase());
+                setLevel(parsed);
+            } catch (IllegalArgumentException e) {
+                // reported below, once the file sink is writing
+            }
+        }
+        String file = System.getProperty("dots.log.file");
+        if (file != null) {
+            try {
+                startFileSink(Paths.get(file));
+            } catch (RuntimeException e) {
+                message(Level.WARN, "Ignoring dots.log.file: " + e.getMessage());
+            }
+        }
+        if (level != null && parsed == null) {
+            message(Level.WARN, "Ignoring dots.log.level=" + level + ", using " + Level.values()[threshold]);
+        }
+    }
+
+    private GameLog() {
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    public static void event(Level level, Event event) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), event.ordinal(), 0, 0, 0, 0, null);
+    }
+
+    public static void event(Level level, Event event, int a) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), event.ordinal(), a, 0, 0, 0, null);
+    }
+
+    public static void event(Level level, Event event, int a, int b) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), event.ordinal(), a, b, 0, 0, null);
+    }
+
+    public static void event(Level level, Event event, int a, int b, int c) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), event.ordinal(), a, b, c, 0, null);
+    }
+
+    public static void event(Level level, Event event, int a, int b, int c, int d) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), event.ordinal(), a, b, c, d, null);
+    }
+
+    /** Free-text entry; build the text only after checking {@link #isEnabled(Level)}. */
+    public static void message(Level level, String message) {
+        if (level.ordinal() >= threshold) RING.publish(level.ordinal(), Event.MESSAGE.ordinal(), 0, 0, 0, 0, message);
+    }
+
+    /** The newest entries still in the ring, oldest first, formatted as the file sink writes them. */
+    public static List<String> recent(int max) {
+        long head = RING.head();
+        long from = Math.max(0, head - Math.min(max, RING.capacity()));
+        List<String> lines = new ArrayList<>();
+        EventRing.Entry entry = new EventRing.Entry();
+        StringBuilder line = new StringBuilder();
+        for (long sequence = from; sequence < head; sequence++) {
+            if (!RING.read(sequence, entry)) continue;
+            line.setLength(0);
+            format(entry, line);
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /** Starts writing entries to {@code file} (appending), replacing any previous sink. */
+    public static synchronized void startFileSink(Path file) {
+        stopFileSink();
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            sink = new FileSink(writer, RING.head());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open game log " + file, e);
+        }
+        sink.start();
+    }
+
+    /** Writes what is left in the ring and closes the file sink, if any. */
+    public static synchronized void stopFileSink() {
+        if (sink != null) {
+            sink.close();
+            sink = null;
+        }
+    }
+
+    private static void format(EventRing.Entry entry, StringBuilder line) {
+        Event event = Event.values()[entry.event];
+        line.append(Instant.ofEpochMilli(entry.timestamp))
+                .append(' ').append(Level.values()[entry.level])
+                .append(' ').append(event);
+        for (int i = 0; i < event.argNames.length; i++) {
+            line.append(' ').append(event.argNames[i]).append('=').append(entry.args[i]);
+        }
+        if (entry.message != null) {
+            line.append(' ').append(entry.message);
+        }
+    }
+
+    /** Background thread that drains the ring into a file. */
+    private static final class FileSink extends Thread {
+        private final BufferedWriter writer;
+        private final EventRing.Entry entry = new EventRing.Entry();
+        private final StringBuilder line = new StringBuilder();
+        private long cursor;
+        private volatile boolean running = true;
+
+        FileSink(BufferedWriter writer, long cursor) {
+            super("game-log-writer");
+            setDaemon(true);
+            this.writer = writer;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                drain();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SINK_INTERVAL_MILLIS));
+            }
+        }
+
+        void close() {
+            running = false;
+            LockSupport.unpark(this);
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drain();
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // nothing more can be logged
+            }
+        }
+
+        private synchronized void drain() {
+            long head = RING.head();
+            try {
+                if (head - cursor > RING.capacity()) {
+                    long lost = head - RING.capacity() - cursor;
+                    writer.write("... " + lost + " entries overwritten before they were written\n");
+                    cursor = head - RING.capacity();
+                }
+                for (; cursor < head; cursor++) {
+                    // claimed but not published yet, or overwritten since head was read: retry it
+                    // next time, when an overwritten entry is reported with the lost ones
+                    if (!RING.read(cursor, entry)) break;
+                    line.setLength(0);
+                    format(entry, line);
+                    writer.append(line).append('\n');
+                }
+                writer.flush();
+            } catch (IOException e) {
+                running = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.backontrack.dots;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency histograms per phase of a move and counters of the work done, for the whole JVM.
+ *
+ * A phase is timed with a pair of calls around it:
+ * <pre>
+ * long start = GameMetrics.start();
+ * ...
+ * GameMetrics.stop(Phase.POLYGON_SEARCH, start);
+ * </pre>
+ * Each phase has a {@link LatencyHistogram}, so recording costs two {@link System#nanoTime()}
+ * calls and a few atomic adds, and any number of games may record at once. Counters are
+ * {@link LongAdder}s; hot loops count locally and add once per call. While metrics are disabled
+ * {@link #start()} returns 0 and nothing is recorded.
+ *
+ * {@link #snapshot()} copies everything for inspection; {@link Snapshot#format()} renders it as
+ * text. An optional dump thread appends that text to a file at a fixed interval. The system
+ * properties {@code dots.metrics} (default true), {@code dots.metrics.file} and
+ * {@code dots.metrics.interval} (milliseconds, default 10000) configure both at start-up;
+ * {@code /dev/stdout} dumps to the console.
+ */
+public final class GameMetrics {
+
+    /** Timed parts of a move, named after the code they time. */
+    public enum Phase {
+        /** Full recomputation of blocked dots, {@link PolygonDetector#updateBlockedDots(DotMap)}. */
+        BLOCKED_DOTS("updateBlockedDots"),
+        /** {@link PolygonDetector#playerHasPossiblePolygon(DotMap)}. */
+        PLAYER_THREAT("playerHasPossiblePolygon"),
+        /** A strategy picking a move, {@link GameEngine#chooseMove(int, MoveStrategy)}. */
+        CHOOSE_MOVE("chooseMove"),
+        /** Connecting a new dot to its neighbours. */
+        CONNECT("tryConnectToNearest"),
+        /** {@link PolygonDetector#findBestPolygonForComputer(DotMap)}. */
+        POLYGON_SEARCH("findBestPolygonForComputer"),
+        /** Analysis of both sides' threats, {@link ThreatMap#update(DotMap)}. */
+        THREAT_MAP("threatMap"),
+        /** A whole computer reply in {@link ComputerMoveService}, from request to callback. */
+        COMPUTER_REPLY("computerReply"),
+        /** One frame of {@link BoardRenderer}. */
+        RENDER("render");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Work done, counted across all games. */
+    public enum Counter {
+        /** Candidate cells a strategy rejected because they were taken or off the board. */
+        CANDIDATE_RETRIES,
+        /** Cycles of at least four dots met by PolygonDetector's depth-first search. */
+        CYCLES_EXPLORED,
+        /** Candidate lines tested against the drawn ones for crossings. */
+        EDGES_TESTED,
+        /** Cells scored by {@link ThreatStrategy}. */
+        CANDIDATES_SCORED,
+        /** Faces listed by {@link FaceEnumerator}. */
+        FACES_ENUMERATED,
+        /** Playouts completed by {@link MctsStrategy}. */
+        PLAYOUTS
+    }
+
+    private static final long DEFAULT_DUMP_INTERVAL_MILLIS = 10_000;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[PHASES.length];
+    private static final LongAdder[] COUNTS = new LongAdder[COUNTERS.length];
+    private static volatile boolean enabled = true;
+    private static Dumper dumper;
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) HISTOGRAMS[i] = new LatencyHistogram();
+        for (int i = 0; i < COUNTS.length; i++) COUNTS[i] = new LongAdder();
+        String on = System.getProperty("dots.metrics");
+        if (on != null) {
+            enabled = Boolean.parseBoolean(on.trim());
+        }
+        String file = System.getProperty("dots.metrics.file");
+        if (file != null) {
+            // a bad setting must not fail the class, which every timed phase uses
+            try {
+                startDump(Paths.get(file), dumpInterval(System.getProperty("dots.metrics.interval")));
+            } catch (RuntimeException e) {
+                GameLog.message(GameLog.Level.WARN, "Ignoring dots.metrics.file: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long dumpInterval(String interval) {
+        if (interval == null) return DEFAULT_DUMP_INTERVAL_MILLIS;
+        try {
+            long millis = Long.parseLong(interval.trim());
+            if (millis > 0) return millis;
+        } catch (NumberFormatException e) {
+            // falls through to the default
+        }
+        GameLog.message(GameLog.Level.WARN, "Ignoring dots.metrics.interval=" + interval
+                + ", using " + DEFAULT_DUMP_INTERVAL_MILLIS);
+        return DEFAULT_DUMP_INTERVAL_MILLIS;
+    }
+
+    private GameMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        GameMetrics.enabled = enabled;
+    }
+
+    /** Start of a timed phase: the current {@link System#nanoTime()}, or 0 while disabled. */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Records the time since {@code start}, unless {@link #start()} returned 0. */
+    public static void stop(Phase phase, long start) {
+        if (start != 0) HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - start);
+    }
+
+    public static void record(Phase phase, long nanos) {
+        if (enabled) HISTOGRAMS[phase.ordinal()].record(nanos);
+    }
+
+    public static void increment(Counter counter) {
+        if (enabled) COUNTS[counter.ordinal()].increment();
+    }
+
+    public static void add(Counter counter, long amount) {
+        if (enabled && amount != 0) COUNTS[counter.ordinal()].add(amount);
+    }
+
+    /** Clears every histogram and counter, for example between benchmark runs. */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) histogram.reset();
+        for (LongAdder count : COUNTS) count.reset();
+    }
+
+    public static Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] phases = new LatencyHistogram.Snapshot[PHASES.length];
+        for (int i = 0; i < phases.length; i++) phases[i] = HISTOGRAMS[i].snapshot();
+        long[] counters = new long[COUNTERS.length];
+        for (int i = 0; i < counters.length; i++) counters[i] = COUNTS[i].sum();
+        return new Snapshot(System.currentTimeMillis(), phases, counters);
+    }
+
+    /** Appends {@link #snapshot()} to {@code file} every {@code intervalMillis}, replacing any previous dump. */
+    public static synchronized void startDump(Path file, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Dump interval must be positive");
+        }
+        stopDump();
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            dumper = new Dumper(writer, intervalMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open metrics dump " + file, e);
+        }
+        dumper.start();
+    }
+
+    /** Writes a last dump and closes the file, if a dump is running. */
+    public static synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.close();
+            dumper = null;
+        }
+    }
+
+    /** Histograms and counters as they were at one moment. */
+    public static final class Snapshot {
+        private final long timestamp;
+        private final LatencyHistogram.Snapshot[] phases;
+        private final long[] counters;
+
+        private Snapshot(long timestamp, LatencyHistogram.Snapshot[] phases, long[] counters) {
+            this.timestamp = timestamp;
+            this.phases = phases;
+            this.counters = counters;
+        }
+
+        /** Milliseconds since the epoch when the snapshot was taken. */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long count(Phase phase) {
+            return phases[phase.ordinal()].count();
+        }
+
+        public long totalNanos(Phase phase) {
+            return phases[phase.ordinal()].totalNanos();
+        }
+
+        public long meanNanos(Phase phase) {
+            return phases[phase.ordinal()].meanNanos();
+        }
+
+        public long maxNanos(Phase phase) {
+            return phases[phase.ordinal()].maxNanos();
+        }
+
+        /** @param percentile 0 to 100; accurate to the 12.5% width of a histogram bucket */
+        public long percentileNanos(Phase phase, double percentile) {
+            return phases[phase.ordinal()].percentileNanos(percentile);
+        }
+
+        public long get(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /** One line per phase that was recorded (times in microseconds), then the counters. */
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            out.append("metrics ").append(Instant.ofEpochMilli(timestamp)).append('\n');
+            out.append(String.format("  %-28s %10s %10s %10s %10s %10s %10s%n",
+                    "phase (us)", "count", "mean", "p50", "p99", "p99.9", "max"));
+            for (Phase phase : PHASES) {
+                if (count(phase) == 0) continue;
+                out.append(String.format("  %-28s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                        phase.getLabel(), count(phase), meanNanos(phase) / 1e3,
+                        percentileNanos(phase, 50) / 1e3, percentileNanos(phase, 99) / 1e3,
+                        percentileNanos(phase, 99.9) / 1e3, maxNanos(phase) / 1e3));
+            }
+            for (Counter counter : COUNTERS) {
+                out.append(String.format("  %-28s %10d%n", counter.name().toLowerCase(), get(counter)));
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+
+    /** Background thread that appends a snapshot to a file at a fixed interval. */
+    private static final class Dumper extends Thread {
+        private final BufferedWriter writer;
+        private final long intervalNanos;
+        private volatile boolean running = true;
+
+        Dumper(BufferedWriter writer, long intervalMillis) {
+            super("game-metrics-dump");
+            setDaemon(true);
+            this.writer = writer;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        @Override
+        public void run() {
+            long next = System.nanoTime() + intervalNanos;
+            while (running) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                dump();
+                next += intervalNanos;
+            }
+        }
+
+        void close() {
+            running = false;
+            LockSupport.unpark(this);
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dump();
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // nothing more can be dumped
+            }
+        }
+
+        private synchronized void dump() {
+            try {
+                writer.write(snapshot().format());
+                writer.flush();
+            } catch (IOException e) {
+                running = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.backontrack.dots;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * GameRecord - compact, append-only binary log of one game.
+ *
+ * Every dot placed and every line drawn is appended as one unsigned LEB128 varint, in the order
+ * they happened. Cells use the row-major index of {@link DotMap}:
+ *
+ *  - dot:  {@code (cell * 2 + owner - 1) << 1}
+ *  - line: {@code (cell * 4 + direction) << 1 | 1}, from the endpoint with the lower index, so
+ *          the direction is one of E, SE, S, SW
+ *
+ * On the default 40x30 board a dot takes two bytes at most and a line two or three. Blocked flags
+ * are not stored: they follow from the dots and lines, see {@link ReplayEngine}.
+ *
+ * {@link #writeTo(DataOutputStream)} writes a short header (magic, version, board size, length)
+ * followed by the log. Records can be written one after another into a single archive and read
+ * back with {@link #readFrom(DataInputStream)} until it returns null.
+ */
+public final class GameRecord {
+
+    private static final int MAGIC = 0x444F5453; // "DOTS"
+    private static final int VERSION = 1;
+
+    /**
+     * Largest board side a record holds: the entry of every cell, read as an unsigned 32-bit value,
+     * still fits the five bytes of a varint.
+     */
+    static final int MAX_SIDE = 1 << 14;
+
+    private final int width;
+    private final int height;
+    private byte[] bytes;
+    private int length;
+    private int moveCount;
+
+    public GameRecord(int width, int height) {
+        this(width, height, new byte[64], 0, 0);
+        if (width < 1 || height < 1 || width > MAX_SIDE || height > MAX_SIDE) {
+            throw new IllegalArgumentException("Board must be 1 to " + MAX_SIDE + " cells a side: " + width + "x" + height);
+        }
+    }
+
+    private GameRecord(int width, int height, byte[] bytes, int length, int moveCount) {
+        this.width = width;
+        this.height = height;
+        this.bytes = bytes;
+        this.length = length;
+        this.moveCount = moveCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Number of dots placed. */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /** Size of the log in bytes, without the header. */
+    public int getByteLength() {
+        return length;
+    }
+
+    // ---------------- Appending ----------------
+
+    public void dotPlaced(int row, int col, int owner) {
+        if (owner != 1 && owner != 2) {
+            throw new IllegalArgumentException("Owner must be 1 or 2: " + owner);
+        }
+        append((cell(row, col) * 2 + owner - 1) << 1);
+        moveCount++;
+    }
+
+    /** Appends a line between two neighbouring cells, given in either order. */
+    public void connectionAdded(int row1, int col1, int row2, int col2) {
+        int from = cell(row1, col1);
+        int to = cell(row2, col2);
+        if (to < from) {
+            int swap = from;
+            from = to;
+            to = swap;
+        }
+        int dr = to / width - from / width;
+        int dc = to % width - from % width;
+        for (int direction = ConnectionStore.EAST; direction <= ConnectionStore.SOUTH_WEST; direction++) {
+            if (ConnectionStore.rowOffset(direction) == dr && ConnectionStore.colOffset(direction) == dc) {
+                append((from * 4 + direction) << 1 | 1);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Cells (" + row1 + ", " + col1 + ") and (" + row2 + ", " + col2 + ") are not neighbours");
+    }
+
+    /**
+     * Moves the end of the log to {@code length} bytes holding {@code moveCount} dots. For
+     * {@link GameEngine}'s undo and redo: the end can move back, and forward again over entries
+     * that nothing has been appended over since.
+     */
+    void rewind(int length, int moveCount) {
+        this.length = length;
+        this.moveCount = moveCount;
+    }
+
+    private int cell(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            throw new IllegalArgumentException("Position off the board: (" + row + ", " + col + ")");
+        }
+        return row * width + col;
+    }
+
+    private void append(int value) {
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    // ---------------- Serialization ----------------
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeInt(moveCount);
+        out.writeInt(length);
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * Reads the next record written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @return the record, or null at the end of the stream
+     * @throws IOException if the stream does not hold a record or ends inside one
+     */
+    public static GameRecord readFrom(DataInputStream in) throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a game record");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported game record version " + version);
+        }
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+        int moveCount = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || moveCount < 0 || width < 1 || height < 1 || width > MAX_SIDE || height > MAX_SIDE) {
+            throw new IOException("Corrupt game record header");
+        }
+        byte[] bytes = new byte[Math.max(64, length)];
+        in.readFully(bytes, 0, length);
+        GameRecord record = new GameRecord(width, height, bytes, length, moveCount);
+        record.check();
+        return record;
+    }
+
+    /** Decodes the whole log, so that a corrupt record fails when read and not during a replay. */
+    private void check() throws IOException {
+        Cursor cursor = new Cursor(0);
+        int dots = 0;
+        try {
+            while (cursor.next()) {
+                int row = cursor.cell / width;
+                int col = cursor.cell % width;
+                if (cursor.line) {
+                    row += ConnectionStore.rowOffset(cursor.direction);
+                    col += ConnectionStore.colOffset(cursor.direction);
+                } else {
+                    dots++;
+                }
+                if (row >= height || col < 0 || col >= width) {
+                    throw new IOException("Corrupt game record: entry at byte " + cursor.position + " is off the board");
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Corrupt game record: " + e.getMessage());
+        }
+        if (dots != moveCount) {
+            throw new IOException("Corrupt game record: " + dots + " dots, header says " + moveCount);
+        }
+    }
+
+    // ---------------- Reading ----------------
+
+    Cursor cursor(int position) {
+        return new Cursor(position);
+    }
+
+    /** Sequential decoder over the log; {@link #next()} fills the fields of the following entry. */
+    final class Cursor {
+        /** Byte position of the next entry. */
+        int position;
+        boolean line;
+        /** Dot: its cell. Line: the endpoint with the lower index. */
+        int cell;
+        /** Dot only. */
+        int owner;
+        /** Line only: the direction from {@link #cell} to the other endpoint. */
+        int direction;
+
+        private Cursor(int position) {
+            this.position = position;
+        }
+
+        boolean next() {
+            if (position >= length) return false;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= length) {
+                    throw new IllegalStateException("entry at byte " + position + " is cut off");
+                }
+                b = bytes[position++];
+                // the fifth byte carries the top four bits of 32, and nothing follows it
+                if (shift == 28 && (b & 0xF0) != 0) {
+                    throw new IllegalStateException("entry at byte " + (position - 1) + " is too large");
+                }
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            line = (value & 1) != 0;
+            value >>>= 1;
+            if (line) {
+                cell = value >>> 2;
+                direction = value & 3;
+            } else {
+                cell = value >>> 1;
+                owner = (value & 1) + 1;
+            }
+            return true;
+        }
+    }
+}
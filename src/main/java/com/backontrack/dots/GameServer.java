@@ -0,0 +1,382 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Level;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.backontrack.dots.Constants.*;
+
+/**
+ * Hosts many human-vs-computer games in one JVM over a line protocol.
+ *
+ * One thread runs a {@link Selector} over all connections and does everything except the
+ * computer's thinking: parsing commands, moving on each session's own {@link GameEngine} and
+ * writing replies. Computer replies are computed by a {@link ComputerMoveService} per session,
+ * all sharing one fixed pool of AI threads with a bounded queue and one deadline timer. A slow
+ * search is interrupted at the deadline, and when the queue is full the player's dot is taken
+ * back and the command answered with {@code ERR busy} instead of waiting, so no session can hold
+ * up the others. Finished replies are handed back to the selector thread, which writes them out;
+ * a session stops being read while more than 64 KiB of its replies wait
+ * for the client.
+ *
+ * The protocol is one ASCII command per line; numbers are decimal, rows and columns 0-based.
+ * <pre>
+ * server:  HELLO dots 1                      on connect
+ * NEW [width height]        GAME width height   starts a game, by default on the classic board
+ * PLACE row col             MOVE row col playerCaptures computerCaptures
+ *                           (row and col are -1 if the computer had no move)
+ * CONNECT r1 c1 r2 c2       OK
+ * UNDO | REDO               OK                  a whole turn, as in the window
+ * QUIT                      BYE
+ * </pre>
+ * Any command may instead be answered with {@code ERR <reason>}. Commands other than QUIT are
+ * refused while the computer is thinking.
+ *
+ * <pre>
+ * gradle server --args='--port=7777 --ai-threads=4 --queue=1024'
+ * </pre>
+ */
+public final class GameServer implements Runnable {
+
+    private static final int MAX_LINE = 256;
+    private static final int MAX_BOARD_SIDE = 200;
+    /** Reply bytes a session may have queued before the server stops reading its commands. */
+    private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final long moveDeadlineMillis;
+    private final ThreadPoolExecutor aiExecutor;
+    private final ScheduledExecutorService deadlines =
+            Executors.newSingleThreadScheduledExecutor(ComputerMoveService.daemonThreads("server-move-deadline"));
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    /** Work handed to the selector thread by AI threads. */
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final Executor selectorExecutor;
+    private volatile boolean running = true;
+
+    public GameServer(InetSocketAddress address, int aiThreads, int queueCapacity, long moveDeadlineMillis) throws IOException {
+        this.address = address;
+        this.moveDeadlineMillis = moveDeadlineMillis;
+        this.aiExecutor = new ThreadPoolExecutor(aiThreads, aiThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), ComputerMoveService.daemonThreads("server-ai"));
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.selectorExecutor = task -> {
+            completions.add(task);
+            selector.wakeup();
+        };
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(address, 4096);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("dots.log.level") == null) {
+            GameLog.setLevel(Level.WARN);
+        }
+        int port = 7777;
+        int aiThreads = Runtime.getRuntime().availableProcessors();
+        int queue = 1024;
+        long deadline = 1000;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "port": port = Integer.parseInt(value); break;
+                case "ai-threads": aiThreads = Integer.parseInt(value); break;
+                case "queue": queue = Integer.parseInt(value); break;
+                case "deadline": deadline = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        GameServer server = new GameServer(new InetSocketAddress(port), aiThreads, queue, deadline);
+        System.out.println("Dots server listening on port " + server.getPort());
+        server.run();
+    }
+
+    /** The port actually bound, useful when the server was given port 0. */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** Serves connections until {@link #stop()} is called. */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable completion;
+                while ((completion = completions.poll()) != null) {
+                    try {
+                        completion.run();
+                    } catch (RuntimeException e) {
+                        GameLog.message(Level.WARN, "Computer reply could not be delivered: " + e);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Session session = (Session) key.attachment();
+                            if (key.isReadable()) session.read();
+                            if (key.isValid() && key.isWritable()) session.flush();
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) ((Session) key.attachment()).close();
+                    } catch (RuntimeException e) {
+                        GameLog.message(Level.WARN, "Closing session after it failed: " + e);
+                        if (key.attachment() != null) ((Session) key.attachment()).close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Server loop failed on " + address, e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /** Makes {@link #run()} return; may be called from any thread. */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) ((Session) key.attachment()).close();
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // nothing left to serve
+        }
+        aiExecutor.shutdownNow();
+        deadlines.shutdownNow();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            session.send("HELLO dots 1");
+        }
+    }
+
+    /** One connection and its game; touched only by the selector thread, and by an AI thread while a reply is pending. */
+    private final class Session {
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        private final StringBuilder line = new StringBuilder();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        /** Bytes in {@link #output} not yet written. */
+        private int pendingOutput;
+        private SelectionKey key;
+        private GameEngine engine;
+        private ComputerMoveService computer;
+        /** Set after QUIT or a protocol error: the queued replies are written, then the connection closes. */
+        private boolean closing;
+        private boolean closed;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int read = channel.read(input);
+            if (read < 0) {
+                close();
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining() && !closing && !closed) {
+                char c = (char) input.get();
+                if (c == '\n') {
+                    String command = line.toString().trim();
+                    line.setLength(0);
+                    if (!command.isEmpty()) handle(command);
+                } else if (line.length() < MAX_LINE) {
+                    line.append(c);
+                } else {
+                    send("ERR line too long");
+                    closeAfterFlush();
+                }
+            }
+            input.clear();
+        }
+
+        private void handle(String command) {
+            String[] words = command.split("\\s+");
+            if (words[0].equals("QUIT")) {
+                send("BYE");
+                closeAfterFlush();
+                return;
+            }
+            if (computer != null && computer.isPending()) {
+                send("ERR busy");
+                return;
+            }
+            try {
+                switch (words[0]) {
+                    case "NEW": newGame(words); break;
+                    case "PLACE": place(words); break;
+                    case "CONNECT": connect(words); break;
+                    case "UNDO": send(game().undoTurn() ? "OK" : "ERR nothing to undo"); break;
+                    case "REDO": send(game().redoTurn() ? "OK" : "ERR nothing to redo"); break;
+                    default: send("ERR unknown command " + words[0]);
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                send("ERR " + e.getMessage());
+            } catch (RuntimeException e) {
+                // a bug in one game must not stop the loop that serves all of them
+                GameLog.message(Level.WARN, "Closing session after '" + command + "' failed: " + e);
+                send("ERR internal error");
+                closeAfterFlush();
+            }
+        }
+
+        private void newGame(String[] words) {
+            int width = words.length > 2 ? number(words[1]) : GRID_SIZE_X;
+            int height = words.length > 2 ? number(words[2]) : GRID_SIZE_Y;
+            if (width < 2 || height < 2 || width > MAX_BOARD_SIDE || height > MAX_BOARD_SIDE) {
+                throw new IllegalArgumentException("board must be 2 to " + MAX_BOARD_SIDE + " cells a side");
+            }
+            if (computer != null) computer.shutdown();
+            engine = new GameEngine(width, height, new Random());
+            computer = new ComputerMoveService(engine, moveDeadlineMillis, 0, selectorExecutor, aiExecutor, deadlines);
+            send("GAME " + width + " " + height);
+        }
+
+        private void place(String[] words) {
+            GameEngine game = game();
+            int row = number(words, 1);
+            int col = number(words, 2);
+            if (!game.placeDot(row, col)) {
+                send("ERR cannot place at " + row + " " + col);
+                return;
+            }
+            try {
+                computer.requestReply(this::replied);
+            } catch (RejectedExecutionException e) {
+                // no room to think: take the dot back, for good, so the player can try again
+                game.discardLastAction();
+                send("ERR busy");
+            }
+        }
+
+        private void replied(Dot dot) {
+            if (closed) return;
+            GameState state = engine.getState();
+            int row = dot == null ? -1 : dot.getRow();
+            int col = dot == null ? -1 : dot.getCol();
+            send("MOVE " + row + " " + col + " " + state.getCaptures(PLAYER) + " " + state.getCaptures(COMPUTER));
+        }
+
+        private void connect(String[] words) {
+            boolean connected = game().connect(number(words, 1), number(words, 2), number(words, 3), number(words, 4));
+            send(connected ? "OK" : "ERR cannot connect");
+        }
+
+        private GameEngine game() {
+            if (engine == null) throw new IllegalStateException("no game, send NEW first");
+            return engine;
+        }
+
+        private int number(String[] words, int i) {
+            if (i >= words.length) throw new IllegalArgumentException("missing argument " + i);
+            return number(words[i]);
+        }
+
+        private int number(String word) {
+            try {
+                return Integer.parseInt(word);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + word);
+            }
+        }
+
+        void send(String reply) {
+            if (closed || closing) return;
+            ByteBuffer buffer = ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII));
+            output.add(buffer);
+            pendingOutput += buffer.remaining();
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void flush() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer buffer = output.peek();
+                pendingOutput -= channel.write(buffer);
+                if (buffer.hasRemaining()) break;
+                output.poll();
+            }
+            if (closed) return;
+            if (output.isEmpty() && closing) {
+                close();
+                return;
+            }
+            // a client that does not read its replies is not read from either, so every command
+            // it sends waits in its own socket buffers rather than as replies in the server
+            int ops = pendingOutput > MAX_PENDING_OUTPUT ? 0 : SelectionKey.OP_READ;
+            key.interestOps(output.isEmpty() ? ops : ops | SelectionKey.OP_WRITE);
+        }
+
+        private void closeAfterFlush() {
+            closing = true;
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (computer != null) computer.shutdown();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the connection is gone either way
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.backontrack.dots;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Read-only view of a game owned by a {@link GameEngine}.
+ *
+ * The view is live: it reads straight from the engine's board, so it is cheap to obtain and always
+ * current, but it is not a snapshot and must not be read while another thread is moving.
+ */
+public class GameState {
+    private final DotMap dotMap;
+    private Map<Dot, Dot> lastComputerPolygon = Collections.emptyMap();
+    private int moveCount;
+
+    GameState(DotMap dotMap) {
+        this.dotMap = dotMap;
+    }
+
+    public int getWidth() {
+        return dotMap.getConnections().getWidth();
+    }
+
+    public int getHeight() {
+        return dotMap.getConnections().getHeight();
+    }
+
+    /** 0 - empty, 1 - player, 2 - computer. */
+    public int getOwner(int row, int col) {
+        return dotMap.getDot(row, col).getPlayer();
+    }
+
+    public boolean isBlocked(int row, int col) {
+        return dotMap.getDot(row, col).isBlocked();
+    }
+
+    /** Number of opponent dots {@code owner} has enclosed so far. */
+    public int getCaptures(int owner) {
+        int opponent = 3 - owner;
+        int captures = 0;
+        for (int i = 0; i < dotMap.size(); i++) {
+            Dot dot = dotMap.getDot(i);
+            if (dot.getPlayer() == opponent && dot.isBlocked()) {
+                captures++;
+            }
+        }
+        return captures;
+    }
+
+    public boolean isConnected(int row1, int col1, int row2, int col2) {
+        ConnectionStore connections = dotMap.getConnections();
+        return connections.hasEdgeBetween(connections.indexOf(row1, col1), connections.indexOf(row2, col2));
+    }
+
+    /** Lines drawn so far. Callers must not modify the store. */
+    public ConnectionStore getConnections() {
+        return dotMap.getConnections();
+    }
+
+    /** Number of dots placed by both sides. */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /** The polygon the computer found after its last move, as edges; empty if none. */
+    public Map<Dot, Dot> getLastComputerPolygon() {
+        return lastComputerPolygon;
+    }
+
+    void setLastComputerPolygon(Map<Dot, Dot> lastComputerPolygon) {
+        this.lastComputerPolygon = lastComputerPolygon;
+    }
+
+    void incrementMoveCount() {
+        moveCount++;
+    }
+
+    void setMoveCount(int moveCount) {
+        this.moveCount = moveCount;
+    }
+}
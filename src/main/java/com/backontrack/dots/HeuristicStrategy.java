@@ -0,0 +1,131 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+import com.backontrack.dots.GameMetrics.Counter;
+
+import java.util.*;
+
+/**
+ * The original computer opponent: takes a free cell next to a lonely opponent dot, otherwise tries
+ * to extend its own lines two cells out, otherwise picks a random cell near its dots. It can play
+ * either side, which self-play in {@link TournamentRunner} relies on.
+ */
+public class HeuristicStrategy implements MoveStrategy {
+
+    private final Random random;
+
+    public HeuristicStrategy(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public Dot chooseMove(DotMap dotMap, int owner, int lastRow, int lastCol) {
+        if (dotMap.findFirstAvailableDot() == null) {
+            return null;
+        }
+        FlightEvents.ChooseMove event = new FlightEvents.ChooseMove();
+        event.begin();
+        int retries = 0;
+
+        int row = lastRow;
+        int col = lastCol;
+        Dot computersDot = null;
+
+        while (computersDot == null) {
+
+            int computerRow = -1;
+            int computerCol = -1;
+
+            Dot playersDotAlone = dotMap.getAnyDotAlone(3 - owner);
+            if (null != playersDotAlone) {
+                computerRow = playersDotAlone.getRow();
+                computerCol = playersDotAlone.getCol();
+
+                GameLog.event(Level.TRACE, Event.CANDIDATE, computerRow, computerCol);
+            } else if (dotMap.isAnyDotAttributedTo(owner)) {
+                for (Map.Entry<Dot, Set<Dot>> entry : dotMap.getMapOfAttributedDots(owner).entrySet()) {
+                    row = entry.getKey().getRow();
+                    col = entry.getKey().getCol();
+
+                    Map<Dot, Dot> temporaryBestDotMap = new HashMap<>();
+
+                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col), dotMap.getDot(row + 1, col));
+                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col), dotMap.getDot(row - 1, col));
+                    temporaryBestDotMap.put(dotMap.getDot(row, col + 2), dotMap.getDot(row, col + 1));
+                    temporaryBestDotMap.put(dotMap.getDot(row, col - 2), dotMap.getDot(row, col - 1));
+                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col + 2), dotMap.getDot(row + 1, col + 1));
+                    temporaryBestDotMap.put(dotMap.getDot(row + 2, col - 2), dotMap.getDot(row + 1, col - 1));
+                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col + 2), dotMap.getDot(row - 1, col + 1));
+                    temporaryBestDotMap.put(dotMap.getDot(row - 2, col - 2), dotMap.getDot(row - 1, col - 1));
+
+                    Dot temporaryDot = temporaryBestDotMap.entrySet().stream()
+                            .filter(k -> k.getKey() != null && k.getValue() != null)
+                            .filter(k -> k.getKey().getPlayer() == owner && k.getValue().getPlayer() == 0)
+                            .filter(k -> dotMap.isDotConnectedToAnother(k.getValue()))
+                            .map(Map.Entry::getValue)
+                            .findFirst()
+                            .orElse(null);
+
+                    if (temporaryDot != null && temporaryDot.getPlayer() == 0) {
+                        computerRow = temporaryDot.getRow();
+                        computerCol = temporaryDot.getCol();
+                        GameLog.event(Level.TRACE, Event.CANDIDATE, computerRow, computerCol);
+                    } else {
+                        GameLog.message(Level.TRACE, "No close dot to connect, trying random close positions");
+
+                        boolean isDotAvailable = false;
+                        int counter = 0;
+
+                        while (!isDotAvailable) {
+                            if (counter < 10) {
+                                int[] positions = {-3, -2, -1, 0, 1, 2, 3};
+                                computerRow = row + positions[random.nextInt(positions.length)];
+                                computerCol = col + positions[random.nextInt(positions.length)];
+
+                                counter++;
+
+                            } else {
+                                GameLog.message(Level.TRACE, "10 tries: taking the first available dot");
+                                Dot availableDot = dotMap.findFirstAvailableDot();
+                                computerRow = availableDot.getRow();
+                                computerCol = availableDot.getCol();
+                            }
+
+                            Dot candidateDot = dotMap.getDot(computerRow, computerCol);
+                            if (candidateDot != null && candidateDot.getPlayer() == 0) {
+                                isDotAvailable = true;
+                            } else {
+                                retries++;
+                            }
+                        }
+                    }
+                }
+            } else {
+                GameLog.message(Level.TRACE, "Random close position is being found");
+                int[] positions = {-1, 0, 1};
+                computerRow = row + positions[random.nextInt(positions.length)];
+                computerCol = col + positions[random.nextInt(positions.length)];
+            }
+
+            if (dotMap.isInBounds(computerRow, computerCol) && dotMap.getDot(computerRow, computerCol).getPlayer() == 0) {
+                computersDot = dotMap.getDot(computerRow, computerCol);
+            } else {
+                int taken = dotMap.isInBounds(computerRow, computerCol) ? dotMap.getDot(computerRow, computerCol).getPlayer() : -1;
+                GameLog.event(Level.TRACE, Event.CANDIDATE_REJECTED, computerRow, computerCol, taken);
+                retries++;
+            }
+        }
+
+        GameMetrics.add(Counter.CANDIDATE_RETRIES, retries);
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.strategy = getClass().getSimpleName();
+            event.owner = owner;
+            event.retries = retries;
+            event.commit();
+        }
+        return computersDot;
+    }
+}
@@ -0,0 +1,305 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+
+/**
+ * IncrementalCaptureEngine - keeps Dot.blocked flags up to date one move at a time.
+ *
+ * The engine keeps a union-find structure per owner over the drawn lines. A line joining two
+ * different components cannot close a polygon, so it costs a single union. A line joining two
+ * dots that are already connected closes at least one new cycle, and every such cycle borders
+ * one of the two faces on either side of the new line. The engine walks only those two faces
+ * (always turning to the next drawn line of the same owner around each vertex). For each bounded
+ * face it marks the cells inside as enclosed by the owner and blocks the opponent dots among them.
+ *
+ * Lines are never removed and ownership never changes, so enclosures only grow. An opponent dot
+ * placed later in an enclosed cell is blocked as soon as {@link #dotPlaced(Dot)} is called.
+ * The per-move cost is bounded by the faces around the new line, not the whole board.
+ *
+ * The result matches {@link PolygonDetector#updateBlockedDots(DotMap)}, which remains available
+ * as a full recomputation.
+ *
+ * Every change the engine makes to its own state (a union, a newly enclosed cell) is appended to a
+ * log, so the state can be wound back to an earlier {@link #mark()} and forward again to a later
+ * one, at the cost of the changes in between. To keep unions reversible the union-find uses union
+ * by rank alone, without path compression, which still bounds a find by the log of the component
+ * size. Blocked flags live in the dot map and are not part of the log.
+ */
+public class IncrementalCaptureEngine {
+
+    private final DotMap dotMap;
+    private final ConnectionStore connections;
+    private final int cells;
+
+    /** Union-find parents per owner: index 0 for the player (1), 1 for the computer (2). */
+    private final int[][] parent = new int[2][];
+    private final byte[][] rank = new byte[2][];
+
+    /** Bit (1 << owner) is set when the cell lies inside a drawn polygon of that owner. */
+    private final byte[] enclosed;
+
+    private int[] faceBuffer = new int[64];
+
+    /**
+     * Changes in the order they were made, two ints each. A union stores the child root and
+     * (new parent << 2 | owner index << 1 | rank raised); a newly enclosed cell stores ~cell and
+     * its owner. Entries before {@code logPosition} are applied; those after it can be re-applied
+     * until the next change discards them.
+     */
+    private int[] log = new int[256];
+    private int logPosition;
+    private int logLength;
+
+    public IncrementalCaptureEngine(DotMap dotMap) {
+        this.dotMap = dotMap;
+        this.connections = dotMap.getConnections();
+        this.cells = connections.size();
+        this.enclosed = new byte[cells];
+        for (int k = 0; k < 2; k++) {
+            parent[k] = new int[cells];
+            rank[k] = new byte[cells];
+        }
+        reset();
+    }
+
+    // ---------------- Public API ----------------
+
+    /** Forget all state and replay every line currently drawn in the dot map. */
+    public void rebuild() {
+        reset();
+        logPosition = 0;
+        logLength = 0;
+        for (int i = 0; i < dotMap.size(); i++) dotMap.setBlocked(dotMap.getDot(i), false);
+        connections.forEachEdge((from, to) -> lineAdded(from, to));
+        for (int i = 0; i < dotMap.size(); i++) {
+            Dot dot = dotMap.getDot(i);
+            if (dot.getPlayer() != 0) dotPlaced(dot);
+        }
+    }
+
+    /**
+     * Must be called after a dot is attributed to an owner.
+     *
+     * @return the number of dots that became blocked (0 or 1)
+     */
+    public int dotPlaced(Dot dot) {
+        int owner = dot.getPlayer();
+        if (owner != 1 && owner != 2) return 0;
+        int opponent = 3 - owner;
+        if (!dot.isBlocked() && isEnclosedBy(dotMap.indexOf(dot), opponent)) {
+            dotMap.setBlocked(dot, true);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Must be called after a new line is drawn between two dots.
+     *
+     * @return the number of dots that became blocked by polygons closed by this line
+     */
+    public int connectionAdded(Dot dot1, Dot dot2) {
+        return lineAdded(dotMap.indexOf(dot1), dotMap.indexOf(dot2));
+    }
+
+    /** True if the cell lies inside a polygon already drawn by {@code owner}. */
+    public boolean isEnclosedBy(int index, int owner) {
+        return (enclosed[index] & (1 << owner)) != 0;
+    }
+
+    /** The current state, to come back to with {@link #moveTo(int)}. */
+    public int mark() {
+        return logPosition;
+    }
+
+    /**
+     * Winds the state back, or forward again, to the one at {@code mark}. Going forward is only
+     * possible over changes that were not discarded by a change made after going back.
+     */
+    public void moveTo(int mark) {
+        if (mark < 0 || mark > logLength) {
+            throw new IllegalArgumentException("mark " + mark + " outside 0.." + logLength);
+        }
+        while (logPosition > mark) {
+            logPosition -= 2;
+            undoChange(log[logPosition], log[logPosition + 1]);
+        }
+        while (logPosition < mark) {
+            redoChange(log[logPosition], log[logPosition + 1]);
+            logPosition += 2;
+        }
+    }
+
+    // ---------------- Incremental update ----------------
+
+    private int lineAdded(int from, int to) {
+        int owner = dotMap.getDot(from).getPlayer();
+        if (owner != 1 && owner != 2) return 0;
+        if (dotMap.getDot(to).getPlayer() != owner) return 0;
+
+        int k = owner - 1;
+        int rootFrom = find(k, from);
+        int rootTo = find(k, to);
+        if (rootFrom != rootTo) {
+            union(k, rootFrom, rootTo);
+            return 0;
+        }
+
+        // the line closes a cycle: examine the faces on both of its sides
+        return encloseFace(owner, from, to) + encloseFace(owner, to, from);
+    }
+
+    /**
+     * Walks the face to the right of the directed line from -> to. If it is bounded, marks every
+     * cell inside it as enclosed by the owner and blocks the opponent dots found there.
+     */
+    private int encloseFace(int owner, int from, int to) {
+        int length = walkFace(owner, from, to);
+
+        long twiceArea = 0;
+        int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+        int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+        for (int i = 0; i < length; i++) {
+            int a = faceBuffer[i];
+            int b = faceBuffer[(i + 1) % length];
+            int ra = connections.rowOf(a), ca = connections.colOf(a);
+            int rb = connections.rowOf(b), cb = connections.colOf(b);
+            twiceArea += (long) ca * rb - (long) cb * ra;
+            minRow = Math.min(minRow, ra);
+            maxRow = Math.max(maxRow, ra);
+            minCol = Math.min(minCol, ca);
+            maxCol = Math.max(maxCol, ca);
+        }
+        // with clockwise direction numbering, bounded faces are traversed with positive area
+        if (twiceArea <= 0) return 0;
+
+        int opponent = 3 - owner;
+        byte bit = (byte) (1 << owner);
+        int blocked = 0;
+        for (int row = minRow + 1; row < maxRow; row++) {
+            for (int col = minCol + 1; col < maxCol; col++) {
+                int index = connections.indexOf(row, col);
+                Dot dot = dotMap.getDot(index);
+                if (dot.getPlayer() == owner) continue;
+                if ((enclosed[index] & bit) != 0) {
+                    if (dot.getPlayer() == opponent && !dot.isBlocked()) {
+                        dotMap.setBlocked(dot, true);
+                        blocked++;
+                    }
+                    continue;
+                }
+                if (!isInsideFace(length, row, col)) continue;
+                enclosed[index] |= bit;
+                append(~index, owner);
+                if (dot.getPlayer() == opponent && !dot.isBlocked()) {
+                    dotMap.setBlocked(dot, true);
+                    blocked++;
+                }
+            }
+        }
+        return blocked;
+    }
+
+    /**
+     * Collects the vertices of the face to the right of the directed line from -> to into
+     * faceBuffer. At each vertex the walk continues along the first line of the same owner found
+     * by turning clockwise from the line it arrived on.
+     *
+     * @return the number of vertices written
+     */
+    private int walkFace(int owner, int from, int to) {
+        int length = 0;
+        int u = from;
+        int v = to;
+        do {
+            if (length == faceBuffer.length) faceBuffer = Arrays.copyOf(faceBuffer, length * 2);
+            faceBuffer[length++] = u;
+
+            int back = connections.directionBetween(v, u);
+            int next = -1;
+            for (int step = 1; step <= ConnectionStore.DIRECTIONS; step++) {
+                int dir = (back + step) & 7;
+                if (!connections.hasEdge(v, dir)) continue;
+                int w = connections.neighbor(v, dir);
+                if (dotMap.getDot(w).getPlayer() != owner) continue;
+                next = w;
+                break;
+            }
+            u = v;
+            v = next;
+        } while (u != from || v != to);
+        return length;
+    }
+
+    /** Ray-casting point-in-polygon test against the vertices held in faceBuffer. */
+    private boolean isInsideFace(int length, int row, int col) {
+        boolean inside = false;
+        for (int i = 0, j = length - 1; i < length; j = i++) {
+            double xi = connections.colOf(faceBuffer[i]);
+            double yi = connections.rowOf(faceBuffer[i]);
+            double xj = connections.colOf(faceBuffer[j]);
+            double yj = connections.rowOf(faceBuffer[j]);
+            boolean intersect = ((yi > row) != (yj > row)) &&
+                    (col < (xj - xi) * (row - yi) / (yj - yi) + xi);
+            if (intersect) inside = !inside;
+        }
+        return inside;
+    }
+
+    // ---------------- Union-find ----------------
+
+    private void reset() {
+        Arrays.fill(enclosed, (byte) 0);
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < cells; i++) parent[k][i] = i;
+            Arrays.fill(rank[k], (byte) 0);
+        }
+    }
+
+    private int find(int k, int x) {
+        int[] p = parent[k];
+        while (p[x] != x) x = p[x];
+        return x;
+    }
+
+    private void union(int k, int rootA, int rootB) {
+        byte[] r = rank[k];
+        int child = r[rootA] < r[rootB] ? rootA : rootB;
+        int root = child == rootA ? rootB : rootA;
+        boolean raised = r[rootA] == r[rootB];
+        parent[k][child] = root;
+        if (raised) r[root]++;
+        append(child, root << 2 | k << 1 | (raised ? 1 : 0));
+    }
+
+    // ---------------- Change log ----------------
+
+    private void append(int first, int second) {
+        if (logPosition + 2 > log.length) log = Arrays.copyOf(log, log.length * 2);
+        log[logPosition++] = first;
+        log[logPosition++] = second;
+        logLength = logPosition;
+    }
+
+    private void undoChange(int first, int second) {
+        if (first < 0) {
+            enclosed[~first] &= (byte) ~(1 << second);
+            return;
+        }
+        int k = (second >> 1) & 1;
+        int root = second >>> 2;
+        parent[k][first] = first;
+        if ((second & 1) != 0) rank[k][root]--;
+    }
+
+    private void redoChange(int first, int second) {
+        if (first < 0) {
+            enclosed[~first] |= (byte) (1 << second);
+            return;
+        }
+        int k = (second >> 1) & 1;
+        int root = second >>> 2;
+        parent[k][first] = root;
+        if ((second & 1) != 0) rank[k][root]++;
+    }
+}
@@ -0,0 +1,322 @@
+package com.backontrack.dots;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for {@link GameServer}: simulates many players over as many connections, all driven
+ * by one {@link Selector} thread.
+ *
+ * Every player starts a game, places a dot on a random empty cell, waits for the computer's
+ * {@code MOVE} and repeats until it has played its moves, then starts its next game or quits.
+ * A player whose dot was refused with {@code ERR busy} tries again. The client reports moves per
+ * second, the latency from {@code PLACE} to {@code MOVE} and how often the server was busy.
+ *
+ * <pre>
+ * gradle loadTest --args='--players=2000 --games=2 --moves=40'
+ * </pre>
+ *
+ * Options: {@code --host}, {@code --port}, {@code --players}, {@code --games} (per player),
+ * {@code --moves} (per game), {@code --width}, {@code --height} and {@code --seed}.
+ */
+public final class LoadTestClient {
+
+    /** Wait before a refused dot is retried; the selector wakes in whole milliseconds. */
+    private static final long BUSY_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final InetSocketAddress server;
+    private final int players;
+    private final int gamesPerPlayer;
+    private final int movesPerGame;
+    private final int width;
+    private final int height;
+    private final long seed;
+
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+    private int busy;
+    private int errors;
+    private int finishedPlayers;
+    /** Players backing off after {@code ERR busy}, by retry time: every wait is equally long. */
+    private final ArrayDeque<SimulatedPlayer> retries = new ArrayDeque<>();
+
+    public LoadTestClient(InetSocketAddress server, int players, int gamesPerPlayer, int movesPerGame,
+                          int width, int height, long seed) {
+        if (players <= 0 || gamesPerPlayer <= 0 || movesPerGame <= 0 || width < 2 || height < 2) {
+            throw new IllegalArgumentException("Players, games, moves must be positive and the board at least 2x2");
+        }
+        this.server = server;
+        this.players = players;
+        this.gamesPerPlayer = gamesPerPlayer;
+        this.movesPerGame = Math.min(movesPerGame, width * height / 2);
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = 7777;
+        int players = 1000;
+        int games = 1;
+        int moves = 30;
+        int width = 20;
+        int height = 20;
+        long seed = 1;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "host": host = value; break;
+                case "port": port = Integer.parseInt(value); break;
+                case "players": players = Integer.parseInt(value); break;
+                case "games": games = Integer.parseInt(value); break;
+                case "moves": moves = Integer.parseInt(value); break;
+                case "width": width = Integer.parseInt(value); break;
+                case "height": height = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        LoadTestClient client = new LoadTestClient(new InetSocketAddress(host, port), players, games, moves, width, height, seed);
+        System.out.print(client.run());
+    }
+
+    /** Runs every player to the end and returns the report. */
+    public String run() throws IOException {
+        long start = System.nanoTime();
+        try (Selector selector = Selector.open()) {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            for (int i = 0; i < players; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SimulatedPlayer player = new SimulatedPlayer(channel, seeds.split());
+                player.key = channel.register(selector, SelectionKey.OP_CONNECT, player);
+                channel.connect(server);
+            }
+
+            while (finishedPlayers < players) {
+                select(selector);
+                retryDue();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SimulatedPlayer player = (SimulatedPlayer) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            player.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                        if (key.isValid() && key.isReadable()) player.read();
+                        if (key.isValid() && key.isWritable()) player.flush();
+                    } catch (IOException e) {
+                        errors++;
+                        player.finish();
+                    }
+                }
+            }
+        }
+        return report(System.nanoTime() - start);
+    }
+
+    /** Waits for the network, but no longer than until the first backed-off player is due. */
+    private void select(Selector selector) throws IOException {
+        if (retries.isEmpty()) {
+            selector.select();
+            return;
+        }
+        long wait = retries.peek().retryAt - System.nanoTime();
+        if (wait <= 0) {
+            selector.selectNow();
+        } else {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+        }
+    }
+
+    private void retryDue() {
+        long now = System.nanoTime();
+        while (!retries.isEmpty() && retries.peek().retryAt <= now) {
+            SimulatedPlayer player = retries.poll();
+            if (player.finished) continue;
+            try {
+                player.placeNext();
+            } catch (IOException e) {
+                errors++;
+                player.finish();
+            }
+        }
+    }
+
+    private String report(long elapsedNanos) {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d players, %d games each, %d moves per game on %dx%d%n",
+                players, gamesPerPlayer, movesPerGame, width, height));
+        out.append(String.format("  %d moves in %.1f s: %.0f moves/s%n", latencyCount, seconds, latencyCount / seconds));
+        out.append(String.format("  reply ms p50 %.3f p90 %.3f p99 %.3f max %.3f%n",
+                percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6,
+                percentile(sorted, 99) / 1e6, percentile(sorted, 100) / 1e6));
+        out.append(String.format("  busy %d, errors %d%n", busy, errors));
+        return out.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    /** One connection playing its games; the board is tracked locally to pick empty cells. */
+    private final class SimulatedPlayer {
+        private final SocketChannel channel;
+        private final SplittableRandom random;
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        private final StringBuilder line = new StringBuilder();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private final boolean[] occupied = new boolean[width * height];
+        private SelectionKey key;
+        private int games;
+        private int moves;
+        private int lastCell;
+        private long sentAt;
+        private long retryAt;
+        private boolean finished;
+
+        SimulatedPlayer(SocketChannel channel, SplittableRandom random) {
+            this.channel = channel;
+            this.random = random;
+        }
+
+        void read() throws IOException {
+            int read = channel.read(input);
+            if (read < 0) {
+                if (!finished) errors++;
+                finish();
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining() && !finished) {
+                char c = (char) input.get();
+                if (c == '\n') {
+                    handle(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+            input.clear();
+        }
+
+        private void handle(String reply) throws IOException {
+            String[] words = reply.split(" ");
+            switch (words[0]) {
+                case "HELLO":
+                    send("NEW " + width + " " + height);
+                    break;
+                case "GAME":
+                    Arrays.fill(occupied, false);
+                    moves = 0;
+                    placeNext();
+                    break;
+                case "MOVE":
+                    recordLatency(System.nanoTime() - sentAt);
+                    moves++;
+                    int row = Integer.parseInt(words[1]);
+                    int col = Integer.parseInt(words[2]);
+                    if (row >= 0) occupied[row * width + col] = true;
+                    if (moves < movesPerGame) {
+                        placeNext();
+                    } else if (++games < gamesPerPlayer) {
+                        send("NEW " + width + " " + height);
+                    } else {
+                        send("QUIT");
+                    }
+                    break;
+                case "ERR":
+                    if (reply.equals("ERR busy")) {
+                        busy++;
+                        occupied[lastCell] = false;
+                        // back off a little so retries do not spin against a full queue, without
+                        // holding up the other players on this thread
+                        retryAt = System.nanoTime() + BUSY_BACKOFF_NANOS;
+                        retries.add(this);
+                    } else {
+                        errors++;
+                        send("QUIT");
+                    }
+                    break;
+                case "BYE":
+                    finish();
+                    break;
+                default:
+                    errors++;
+            }
+        }
+
+        private void placeNext() throws IOException {
+            int cell;
+            do {
+                cell = random.nextInt(occupied.length);
+            } while (occupied[cell]);
+            occupied[cell] = true;
+            lastCell = cell;
+            sentAt = System.nanoTime();
+            send("PLACE " + cell / width + " " + cell % width);
+        }
+
+        private void send(String command) throws IOException {
+            output.add(ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.US_ASCII)));
+            flush();
+        }
+
+        void flush() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer buffer = output.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) break;
+                output.poll();
+            }
+            if (!finished) {
+                key.interestOps(output.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void finish() {
+            if (finished) return;
+            finished = true;
+            finishedPlayers++;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // done with it either way
+            }
+        }
+    }
+}
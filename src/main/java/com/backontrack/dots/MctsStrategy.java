@@ -0,0 +1,290 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+import com.backontrack.dots.GameMetrics.Counter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.backontrack.dots.Constants.COMPUTER;
+
+/**
+ * Monte Carlo Tree Search opponent.
+ *
+ * Each iteration walks the tree from the current position with UCT, adds one new move, plays a
+ * short random game from there on a {@link PlayoutBoard} and scores it by the captures it changed
+ * relative to the current position. Moves are limited to cells near existing dots.
+ *
+ * Several worker threads share one tree guarded by a single lock; only selection, expansion and
+ * backpropagation hold it, the playouts run in parallel. While a thread is below a node the node
+ * carries a virtual loss, which steers the other threads to different branches. The search stops
+ * at the time budget or after the playout budget, whichever comes first, and plays the most
+ * visited move. The subtree under the opponent's reply is kept for the next search.
+ *
+ * Evaluated positions are cached by {@link Zobrist} hash in a {@link TranspositionTable}, so a
+ * position reached again - by another move order, another thread or a later search - is not
+ * flood-filled twice. The table can be shared between strategies; its values are the capture
+ * balance from the computer's side, as returned by {@link PlayoutBoard#score(int)}, whichever side
+ * the strategy plays.
+ *
+ * A strategy instance serves one game at a time. Call {@link #shutdown()} when it is no longer needed.
+ */
+public class MctsStrategy implements MoveStrategy {
+
+    private static final double EXPLORATION = 1.4;
+    private static final int VIRTUAL_LOSS = 1;
+    private static final int ROLLOUT_PLIES = 24;
+    private static final int TABLE_CAPACITY = 1 << 16;
+    private static final long NOT_EVALUATED = Long.MIN_VALUE;
+
+    private final long timeBudgetMillis;
+    private final int playoutBudget;
+    private final int threads;
+    private final long seed;
+    private final ExecutorService executor;
+    private final TranspositionTable evaluations;
+    private final Object treeLock = new Object();
+
+    private int searchCount;
+
+    /** Child of the last root this strategy played, kept to reuse its subtree. */
+    private Node lastChoice;
+    private DotMap lastDotMap;
+    private int lastOccupiedCount;
+    private int lastOwner;
+
+    public MctsStrategy(long timeBudgetMillis, int playoutBudget) {
+        this(timeBudgetMillis, playoutBudget, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    public MctsStrategy(long timeBudgetMillis, int playoutBudget, int threads, long seed) {
+        this(timeBudgetMillis, playoutBudget, threads, seed, new TranspositionTable(TABLE_CAPACITY));
+    }
+
+    public MctsStrategy(long timeBudgetMillis, int playoutBudget, int threads, long seed,
+                        TranspositionTable evaluations) {
+        if (timeBudgetMillis <= 0 || playoutBudget <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Budgets and thread count must be positive");
+        }
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.playoutBudget = playoutBudget;
+        this.threads = threads;
+        this.seed = seed;
+        this.evaluations = evaluations;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Dot chooseMove(DotMap dotMap, int owner, int lastRow, int lastCol) {
+        PlayoutBoard rootBoard = PlayoutBoard.of(dotMap);
+        if (rootBoard.getEmptyCount() == 0) {
+            return null;
+        }
+        Node root = reusableRoot(dotMap, rootBoard, owner, lastRow, lastCol);
+        int rootScore = evaluate(rootBoard.copy());
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        AtomicInteger playouts = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        int search = searchCount++;
+
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(seed + 31L * search + t);
+            workers.add(executor.submit(() -> search(root, rootBoard, rootScore, deadline, playouts, completed, random)));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("MCTS worker failed", e.getCause());
+        }
+
+        Node best;
+        synchronized (treeLock) {
+            best = mostVisitedChild(root);
+            if (best == null) {
+                // no iteration finished: fall back to the first candidate
+                best = new Node(rootBoard.candidates()[0], owner);
+            }
+        }
+        lastChoice = best;
+        lastDotMap = dotMap;
+        lastOccupiedCount = rootBoard.getOccupiedCount() + 1;
+        lastOwner = owner;
+        GameLog.event(Level.INFO, Event.SEARCH_DONE, completed.get(), best.visits);
+        GameMetrics.add(Counter.PLAYOUTS, completed.get());
+        return dotMap.getDot(best.move);
+    }
+
+    /** Stops the worker threads. */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ---------------- Search ----------------
+
+    private void search(Node root, PlayoutBoard rootBoard, int rootScore, long deadline,
+                        AtomicInteger playouts, AtomicInteger completed, SplittableRandom random) {
+        PlayoutBoard board = rootBoard.copy();
+        List<Node> path = new ArrayList<>();
+        while (System.nanoTime() < deadline && playouts.getAndIncrement() < playoutBudget) {
+            if (Thread.currentThread().isInterrupted()) return;
+            board.copyFrom(rootBoard);
+            path.clear();
+            select(root, board, path, random);
+
+            int side = 3 - path.get(path.size() - 1).side;
+            for (int ply = 0; ply < ROLLOUT_PLIES; ply++) {
+                int cell = board.randomNearbyEmpty(random);
+                if (cell < 0) break;
+                board.place(cell, side);
+                side = 3 - side;
+            }
+            int diff = evaluate(board) - rootScore;
+            double computerReward = diff > 0 ? 1.0 : diff < 0 ? 0.0 : 0.5;
+            backpropagate(path, computerReward);
+            completed.incrementAndGet();
+        }
+    }
+
+    /** Capture balance of the position from the computer's side, looked up in the table when possible. */
+    private int evaluate(PlayoutBoard board) {
+        long hash = board.getHash();
+        long cached = evaluations.get(hash, NOT_EVALUATED);
+        if (cached != NOT_EVALUATED) {
+            return (int) cached;
+        }
+        int score = board.score(COMPUTER);
+        evaluations.put(hash, score);
+        return score;
+    }
+
+    /** Walks down the tree with UCT, expanding one move, and replays the moves on {@code board}. */
+    private void select(Node root, PlayoutBoard board, List<Node> path, SplittableRandom random) {
+        synchronized (treeLock) {
+            Node node = root;
+            path.add(node);
+            node.virtualLoss += VIRTUAL_LOSS;
+            while (true) {
+                if (node.untried == null) {
+                    node.untried = board.candidates();
+                    node.untriedCount = node.untried.length;
+                }
+                if (node.untriedCount > 0) {
+                    int pick = random.nextInt(node.untriedCount);
+                    int move = node.untried[pick];
+                    node.untried[pick] = node.untried[--node.untriedCount];
+                    Node child = new Node(move, 3 - node.side);
+                    node.children.add(child);
+                    board.place(move, child.side);
+                    child.virtualLoss += VIRTUAL_LOSS;
+                    path.add(child);
+                    return;
+                }
+                if (node.children.isEmpty()) {
+                    return;
+                }
+                node = bestUct(node);
+                board.place(node.move, node.side);
+                node.virtualLoss += VIRTUAL_LOSS;
+                path.add(node);
+            }
+        }
+    }
+
+    private void backpropagate(List<Node> path, double computerReward) {
+        synchronized (treeLock) {
+            for (Node node : path) {
+                node.virtualLoss -= VIRTUAL_LOSS;
+                node.visits++;
+                node.wins += node.side == COMPUTER ? computerReward : 1.0 - computerReward;
+            }
+        }
+    }
+
+    /** Child maximising the UCT value from the point of view of the side moving into it; virtual losses count as lost visits. */
+    private static Node bestUct(Node parent) {
+        double logVisits = Math.log(Math.max(1, parent.visits + parent.virtualLoss));
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node child : parent.children) {
+            int visits = child.visits + child.virtualLoss;
+            double value = visits == 0
+                    ? Double.POSITIVE_INFINITY
+                    : child.wins / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private static Node mostVisitedChild(Node parent) {
+        Node best = null;
+        for (Node child : parent.children) {
+            if (best == null || child.visits > best.visits) best = child;
+        }
+        return best;
+    }
+
+    // ---------------- Tree reuse ----------------
+
+    /**
+     * The subtree reached by this strategy's last move and the opponent's reply, if the board has
+     * moved on by exactly those two dots; otherwise a fresh root.
+     */
+    private Node reusableRoot(DotMap dotMap, PlayoutBoard board, int owner, int lastRow, int lastCol) {
+        Node previous = lastChoice;
+        lastChoice = null;
+        // the move must still be on the board: the game may have been taken back and replayed
+        if (previous != null && dotMap == lastDotMap && owner == lastOwner && dotMap.isInBounds(lastRow, lastCol)
+                && board.getOccupiedCount() == lastOccupiedCount + 1 && dotMap.getDot(previous.move).getPlayer() == owner) {
+            int reply = lastRow * board.getWidth() + lastCol;
+            synchronized (treeLock) {
+                for (Node child : previous.children) {
+                    if (child.move == reply) {
+                        return child;
+                    }
+                }
+            }
+        }
+        Node root = new Node(-1, 3 - owner);
+        root.untried = board.candidates();
+        root.untriedCount = root.untried.length;
+        return root;
+    }
+
+    private static final class Node {
+        /** Cell placed to reach this node; -1 for a fresh root. */
+        final int move;
+        /** Side that placed {@link #move}. */
+        final int side;
+        final List<Node> children = new ArrayList<>();
+        int[] untried;
+        int untriedCount;
+        int visits;
+        int virtualLoss;
+        double wins;
+
+        Node(int move, int side) {
+            this.move = move;
+            this.side = side;
+        }
+    }
+}
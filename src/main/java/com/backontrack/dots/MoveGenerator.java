@@ -0,0 +1,237 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Keeps the cells worth playing and scores them for capture and escape threats.
+ *
+ * The frontier is the set of empty cells within {@link #RADIUS} (in both directions) of a dot.
+ * For every cell the generator counts the dots around it, so a dot placed or taken back changes
+ * only the counts and frontier entries of the (2 * RADIUS + 1)^2 cells around it. The generator
+ * learns what changed by comparing the board's {@link PersistentBoard} version with the one it
+ * saw last, which visits only the cells that differ; undo, redo and even a different board of
+ * the same size are followed the same way.
+ *
+ * A move is chosen among the empty cells in the windows around the opponent's last dot and the
+ * mover's own, at most two dozen each, instead of the whole board. Only when both windows are
+ * full is the whole frontier scored. The score of a cell ({@link #score(DotMap, int, int)})
+ * rewards closing in on the opponent's dots, freeing the mover's own dots that are being
+ * surrounded and connecting to them, and penalises cells the opponent already surrounds.
+ *
+ * A generator is not thread-safe.
+ */
+final class MoveGenerator {
+
+    static final int RADIUS = 2;
+
+    /** By opponent sides of a dot taken (0-4) once the cell is played: closing in pays more and more. */
+    private static final int[] CAPTURE_WEIGHT = {0, 1, 4, 12, 40};
+    /** By opponent sides around an own dot (0-4): defending a dot about to be enclosed pays most. */
+    private static final int[] ESCAPE_WEIGHT = {0, 1, 3, 10, 30};
+    private static final int CONNECTION_WEIGHT = 20;
+    private static final int EXPOSURE_PENALTY = 3;
+    /** Below every other score: a cell surrounded by the opponent on all four sides. */
+    private static final int ENCLOSED = Integer.MIN_VALUE / 2;
+
+    private static final int[] ORTHOGONAL_ROWS = {0, 1, 0, -1};
+    private static final int[] ORTHOGONAL_COLS = {1, 0, -1, 0};
+
+    private int width;
+    private int height;
+    private PersistentBoard seen;
+    /** The version {@link #sync(DotMap)} is moving to; cells are judged empty by it. */
+    private PersistentBoard syncing;
+    /** Dots within RADIUS of each cell. */
+    private int[] near = new int[0];
+    private CellSet frontier = new CellSet(0);
+    /** Last cell each owner took, as far as the board versions tell; -1 if none. */
+    private final int[] lastPlaced = {-1, -1, -1};
+    private int considered;
+
+    /** Brings the frontier up to date with the board. */
+    void sync(DotMap dotMap) {
+        PersistentBoard board = dotMap.snapshot();
+        if (seen == null || board.getWidth() != width || board.getHeight() != height) {
+            reset(board.getWidth(), board.getHeight());
+        }
+        if (board == seen) return;
+        PersistentBoard before = seen;
+        syncing = board;
+        before.forEachDifference(board, cell -> {
+            int from = before.getOwner(cell);
+            int to = board.getOwner(cell);
+            if (from == to) return;
+            if (from == 0) {
+                frontier.remove(cell);
+                adjustNear(cell, 1);
+                lastPlaced[to] = cell;
+            } else if (to == 0) {
+                adjustNear(cell, -1);
+                if (near[cell] > 0) frontier.add(cell);
+                if (lastPlaced[from] == cell) lastPlaced[from] = -1;
+            } else {
+                lastPlaced[to] = cell;
+            }
+        });
+        seen = board;
+    }
+
+    int getFrontierSize() {
+        return frontier.size();
+    }
+
+    /** Cells scored by the last {@link #bestMove} call. */
+    int getConsidered() {
+        return considered;
+    }
+
+    /**
+     * The best cell for {@code owner} near the opponent's last dot or its own, ties broken by
+     * {@code random}. Call {@link #sync(DotMap)} first.
+     *
+     * @return a cell index, or -1 if the board has no dot yet or every frontier cell is enclosed
+     */
+    int bestMove(DotMap dotMap, int owner, int lastRow, int lastCol, Random random) {
+        considered = 0;
+        Best best = new Best(random);
+        if (dotMap.isInBounds(lastRow, lastCol)) {
+            scoreWindow(dotMap, owner, lastRow * width + lastCol, -1, best);
+        }
+        int own = lastPlaced[owner];
+        if (own >= 0) {
+            int opponentLast = dotMap.isInBounds(lastRow, lastCol) ? lastRow * width + lastCol : -1;
+            scoreWindow(dotMap, owner, own, opponentLast, best);
+        }
+        if (best.score <= ENCLOSED) {
+            // both windows full or enclosed: fall back to the whole frontier
+            for (int i = 0; i < frontier.size(); i++) {
+                best.offer(frontier.get(i), score(dotMap, frontier.get(i), owner));
+                considered++;
+            }
+        }
+        return best.score > ENCLOSED ? best.cell : -1;
+    }
+
+    /**
+     * How good an empty cell is for {@code owner}: for each unblocked dot around it, the threat it
+     * adds (opponent dots) or relieves (own dots), plus the lines it could draw, minus the sides
+     * the opponent already holds around the cell itself.
+     */
+    int score(DotMap dotMap, int cell, int owner) {
+        int opponent = 3 - owner;
+        int row = cell / width;
+        int col = cell % width;
+        int exposure = sidesTaken(dotMap, row, col, opponent, -1, -1);
+        if (exposure == 4) return ENCLOSED;
+
+        int score = -EXPOSURE_PENALTY * exposure;
+        int links = 0;
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                if ((r == row && c == col) || !dotMap.isInBounds(r, c)) continue;
+                Dot dot = dotMap.getDot(r, c);
+                if (dot.isBlocked() || dot.getPlayer() == 0) continue;
+                if (dot.getPlayer() == opponent) {
+                    score += CAPTURE_WEIGHT[sidesTaken(dotMap, r, c, owner, row, col)];
+                } else {
+                    score += ESCAPE_WEIGHT[sidesTaken(dotMap, r, c, opponent, -1, -1)];
+                    links++;
+                }
+            }
+        }
+        // one or two lines extend a chain towards a polygon; more only thicken a clump
+        return score + CONNECTION_WEIGHT * Math.min(links, 2);
+    }
+
+    // ---------------- Scoring ----------------
+
+    /** Scores the empty cells within RADIUS of {@code center}, skipping those around {@code skip}'s window. */
+    private void scoreWindow(DotMap dotMap, int owner, int center, int skip, Best best) {
+        int centerRow = center / width;
+        int centerCol = center % width;
+        for (int r = Math.max(0, centerRow - RADIUS); r <= Math.min(height - 1, centerRow + RADIUS); r++) {
+            for (int c = Math.max(0, centerCol - RADIUS); c <= Math.min(width - 1, centerCol + RADIUS); c++) {
+                if (skip >= 0 && Math.abs(r - skip / width) <= RADIUS && Math.abs(c - skip % width) <= RADIUS) continue;
+                int cell = r * width + c;
+                if (dotMap.getDot(cell).getPlayer() != 0) continue;
+                best.offer(cell, score(dotMap, cell, owner));
+                considered++;
+            }
+        }
+    }
+
+    /**
+     * Orthogonal neighbours of (row, col) held by {@code side}, counting the board edge as held and
+     * (extraRow, extraCol), the cell about to be played, as held too.
+     */
+    private static int sidesTaken(DotMap dotMap, int row, int col, int side, int extraRow, int extraCol) {
+        int taken = 0;
+        for (int i = 0; i < 4; i++) {
+            int r = row + ORTHOGONAL_ROWS[i];
+            int c = col + ORTHOGONAL_COLS[i];
+            if (!dotMap.isInBounds(r, c) || (r == extraRow && c == extraCol) || dotMap.getDot(r, c).getPlayer() == side) {
+                taken++;
+            }
+        }
+        return taken;
+    }
+
+    /** Highest score so far; equal scores are kept with equal probability (reservoir sampling). */
+    private static final class Best {
+        private final Random random;
+        int cell = -1;
+        int score = Integer.MIN_VALUE;
+        private int ties;
+
+        Best(Random random) {
+            this.random = random;
+        }
+
+        void offer(int candidate, int candidateScore) {
+            if (candidateScore > score) {
+                cell = candidate;
+                score = candidateScore;
+                ties = 1;
+            } else if (candidateScore == score && random.nextInt(++ties) == 0) {
+                cell = candidate;
+            }
+        }
+    }
+
+    // ---------------- Frontier ----------------
+
+    private void reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        if (near.length != size) {
+            near = new int[size];
+            frontier = new CellSet(size);
+        }
+        Arrays.fill(near, 0);
+        Arrays.fill(lastPlaced, -1);
+        frontier.clear();
+        seen = PersistentBoard.empty(width, height);
+    }
+
+    /** Adds {@code delta} to the dot count of every cell within RADIUS of {@code center}. */
+    private void adjustNear(int center, int delta) {
+        int centerRow = center / width;
+        int centerCol = center % width;
+        for (int r = Math.max(0, centerRow - RADIUS); r <= Math.min(height - 1, centerRow + RADIUS); r++) {
+            for (int c = Math.max(0, centerCol - RADIUS); c <= Math.min(width - 1, centerCol + RADIUS); c++) {
+                int cell = r * width + c;
+                if (cell == center) continue;
+                near[cell] += delta;
+                if (syncing.getOwner(cell) == 0) {
+                    if (near[cell] == 0) {
+                        frontier.remove(cell);
+                    } else {
+                        frontier.add(cell);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.backontrack.dots;
+
+import static com.backontrack.dots.Constants.COMPUTER;
+
+/**
+ * Decides where a side places its next dot: the computer against the player, or either side in
+ * self-play.
+ *
+ * Strategies only choose; {@link GameEngine} places the dot, connects it and looks for polygons.
+ */
+public interface MoveStrategy {
+
+    /**
+     * Picks an empty cell for {@code owner}'s next dot. Must not modify the board.
+     *
+     * @param dotMap  the current board
+     * @param owner   the side to move, {@link Constants#PLAYER} or {@link Constants#COMPUTER}
+     * @param lastRow row of the opponent's last dot, or -1 if the opponent has not moved
+     * @param lastCol column of the opponent's last dot, or -1 if the opponent has not moved
+     * @return an empty dot of {@code dotMap}, or null if there is no legal move
+     */
+    Dot chooseMove(DotMap dotMap, int owner, int lastRow, int lastCol);
+
+    /** Picks the computer's next dot; see {@link #chooseMove(DotMap, int, int, int)}. */
+    default Dot chooseMove(DotMap dotMap, int lastRow, int lastCol) {
+        return chooseMove(dotMap, COMPUTER, lastRow, lastCol);
+    }
+}
@@ -0,0 +1,209 @@
+package com.backontrack.dots;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * PersistentBoard - immutable board position with structural sharing.
+ *
+ * Every cell is packed into one int: owner, blocked flag and the {@link ConnectionStore} direction
+ * mask of its lines. The cells are kept in the leaves of a 16-way trie indexed by the row-major
+ * cell index, 16 cells per leaf. A change copies only the leaf holding the cell and the nodes on
+ * the path above it and shares everything else with the previous version, so making a move costs
+ * O(log cells) and keeping every earlier version costs only the copied paths. That is what undo
+ * and redo ({@link GameEngine#undo()}) and branching searches need: any number of positions
+ * derived from a common one, none of them copying the whole board.
+ *
+ * Versions derived from one another share the subtrees neither of them changed, so
+ * {@link #forEachDifference(PersistentBoard, IntConsumer)} compares nodes by reference and visits
+ * only the leaves that differ; {@link DotMap#restore(PersistentBoard)} uses it to move a mutable
+ * board to another version in time proportional to the change. The position's {@link Zobrist}
+ * hash is kept current with every change, as in {@link DotMap}.
+ */
+public final class PersistentBoard {
+
+    private static final int BITS = 4;
+    private static final int BRANCH = 1 << BITS;
+    private static final int INDEX_MASK = BRANCH - 1;
+
+    private static final int OWNER_MASK = 0x3;
+    private static final int BLOCKED = 1 << 2;
+    private static final int LINES_SHIFT = 8;
+
+    /** Sizes whose empty board is kept, like {@link Zobrist}'s keys. */
+    private static final int CACHED_SIZES = 16;
+    private static final Map<Long, PersistentBoard> EMPTY_BY_SIZE = Collections.synchronizedMap(
+            new LinkedHashMap<Long, PersistentBoard>(CACHED_SIZES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, PersistentBoard> eldest) {
+                    return size() > CACHED_SIZES;
+                }
+            });
+
+    private final int width;
+    private final int height;
+    private final Zobrist zobrist;
+    /** Levels of inner nodes above the leaves. */
+    private final int depth;
+    /** An {@code int[]} leaf when depth is 0, otherwise an {@code Object[]} node. */
+    private final Object root;
+    private final long hash;
+
+    private PersistentBoard(int width, int height, Zobrist zobrist, int depth, Object root, long hash) {
+        this.width = width;
+        this.height = height;
+        this.zobrist = zobrist;
+        this.depth = depth;
+        this.root = root;
+        this.hash = hash;
+    }
+
+    /**
+     * The empty board of the given size. One instance is shared per recently used size; an
+     * evicted size gets a new, equal instance, which compares like any other version.
+     */
+    public static PersistentBoard empty(int width, int height) {
+        return EMPTY_BY_SIZE.computeIfAbsent(((long) width << 32) | height, size -> {
+            int depth = 0;
+            for (long capacity = BRANCH; capacity < (long) width * height; capacity *= BRANCH) {
+                depth++;
+            }
+            // a single empty leaf and one empty node per level, shared by every slot
+            Object node = new int[BRANCH];
+            for (int level = 0; level < depth; level++) {
+                Object[] parent = new Object[BRANCH];
+                Arrays.fill(parent, node);
+                node = parent;
+            }
+            return new PersistentBoard(width, height, Zobrist.forSize(width, height), depth, node, 0L);
+        });
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return width * height;
+    }
+
+    /** Zobrist hash of owners, lines and blocked dots; equals {@link DotMap#getHash()} for the same position. */
+    public long getHash() {
+        return hash;
+    }
+
+    /** 0 - empty, 1 - player, 2 - computer. */
+    public int getOwner(int cell) {
+        return get(cell) & OWNER_MASK;
+    }
+
+    public boolean isBlocked(int cell) {
+        return (get(cell) & BLOCKED) != 0;
+    }
+
+    /** Direction mask of the lines at the cell, as {@link ConnectionStore#mask(int)}. */
+    public int getLines(int cell) {
+        return get(cell) >>> LINES_SHIFT;
+    }
+
+    // ---------------- Derived versions ----------------
+
+    public PersistentBoard withOwner(int cell, int owner) {
+        int value = get(cell);
+        int current = value & OWNER_MASK;
+        if (current == owner) return this;
+        long newHash = hash ^ zobrist.owner(cell, current) ^ zobrist.owner(cell, owner);
+        return with(cell, (value & ~OWNER_MASK) | owner, newHash);
+    }
+
+    public PersistentBoard withBlocked(int cell, boolean blocked) {
+        int value = get(cell);
+        if (((value & BLOCKED) != 0) == blocked) return this;
+        return with(cell, value ^ BLOCKED, hash ^ zobrist.blocked(cell));
+    }
+
+    /**
+     * Adds the line leaving {@code cell} in {@code direction}, on both endpoints.
+     *
+     * @throws IllegalArgumentException if the neighbour is off the board
+     */
+    public PersistentBoard withLine(int cell, int direction) {
+        int row = cell / width + ConnectionStore.rowOffset(direction);
+        int col = cell % width + ConnectionStore.colOffset(direction);
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            throw new IllegalArgumentException("Line from " + cell + " leaves the board");
+        }
+        int value = get(cell);
+        int bit = 1 << (direction + LINES_SHIFT);
+        if ((value & bit) != 0) return this;
+        int other = row * width + col;
+        PersistentBoard board = with(cell, value | bit, hash ^ zobrist.edge(cell, direction));
+        int oppositeBit = 1 << (ConnectionStore.opposite(direction) + LINES_SHIFT);
+        return board.with(other, board.get(other) | oppositeBit, board.hash);
+    }
+
+    /**
+     * Visits every cell whose owner, blocked flag or lines differ between this board and
+     * {@code target}, in index order. Subtrees shared by the two are skipped without being read.
+     *
+     * @throws IllegalArgumentException if the boards are not the same size
+     */
+    public void forEachDifference(PersistentBoard target, IntConsumer visitor) {
+        if (target.width != width || target.height != height) {
+            throw new IllegalArgumentException("Boards differ in size");
+        }
+        difference(root, target.root, depth, 0, visitor);
+    }
+
+    private static void difference(Object from, Object to, int level, int base, IntConsumer visitor) {
+        if (from == to) return;
+        if (level == 0) {
+            int[] fromLeaf = (int[]) from;
+            int[] toLeaf = (int[]) to;
+            for (int i = 0; i < BRANCH; i++) {
+                if (fromLeaf[i] != toLeaf[i]) visitor.accept(base + i);
+            }
+            return;
+        }
+        Object[] fromNode = (Object[]) from;
+        Object[] toNode = (Object[]) to;
+        int span = 1 << (BITS * level);
+        for (int i = 0; i < BRANCH; i++) {
+            difference(fromNode[i], toNode[i], level - 1, base + i * span, visitor);
+        }
+    }
+
+    // ---------------- Trie ----------------
+
+    private int get(int cell) {
+        Object node = root;
+        for (int level = depth; level > 0; level--) {
+            node = ((Object[]) node)[(cell >>> (BITS * level)) & INDEX_MASK];
+        }
+        return ((int[]) node)[cell & INDEX_MASK];
+    }
+
+    /** Path copy: a new board sharing every node except those above {@code cell}. */
+    private PersistentBoard with(int cell, int value, long newHash) {
+        return new PersistentBoard(width, height, zobrist, depth, with(root, depth, cell, value), newHash);
+    }
+
+    private static Object with(Object node, int level, int cell, int value) {
+        if (level == 0) {
+            int[] leaf = ((int[]) node).clone();
+            leaf[cell & INDEX_MASK] = value;
+            return leaf;
+        }
+        Object[] copy = ((Object[]) node).clone();
+        int slot = (cell >>> (BITS * level)) & INDEX_MASK;
+        copy[slot] = with(copy[slot], level - 1, cell, value);
+        return copy;
+    }
+}
@@ -0,0 +1,205 @@
+package com.backontrack.dots;
+
+import java.util.SplittableRandom;
+
+/**
+ * Scratch board for Monte Carlo playouts.
+ *
+ * Holds only primitive state - owners, lines, the diagonal index and a bitboard capture engine -
+ * so a search thread can reset it from the root position with a few array copies and play
+ * hundreds of random moves without touching {@link Dot} objects. A placed dot is connected to
+ * every neighbouring dot of the same side whose line would not cross one already drawn.
+ *
+ * The board keeps the {@link Zobrist} hash of its owners and lines. Blocked flags are not
+ * tracked here (they follow from owners and lines), so the hash equals the {@link DotMap} hash
+ * of the same position with its blocked keys removed.
+ */
+final class PlayoutBoard {
+
+    /** How far from an occupied cell a move is still considered. */
+    private static final int REACH = 2;
+
+    private final int width;
+    private final int height;
+    private final byte[] owner;
+    private final ConnectionStore connections;
+    private final EdgeIndex edgeIndex;
+    private final BitboardCaptureEngine captures;
+    private final Zobrist zobrist;
+    private long hash;
+
+    /** Occupied cells in placement order. */
+    private final int[] occupied;
+    private int occupiedCount;
+
+    /** Empty cells, unordered; {@code emptySlot[cell]} is the cell's position in {@code empty}. */
+    private final int[] empty;
+    private final int[] emptySlot;
+    private int emptyCount;
+
+    private final boolean[] marked;
+
+    private PlayoutBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        this.owner = new byte[size];
+        this.connections = new ConnectionStore(width, height);
+        this.edgeIndex = new EdgeIndex(width, height);
+        this.captures = new BitboardCaptureEngine(width, height);
+        this.zobrist = Zobrist.forSize(width, height);
+        this.occupied = new int[size];
+        this.empty = new int[size];
+        this.emptySlot = new int[size];
+        this.marked = new boolean[size];
+    }
+
+    /** Snapshot of the given board. */
+    static PlayoutBoard of(DotMap dotMap) {
+        ConnectionStore source = dotMap.getConnections();
+        PlayoutBoard board = new PlayoutBoard(source.getWidth(), source.getHeight());
+        board.connections.copyFrom(source);
+        board.edgeIndex.copyFrom(dotMap.getEdgeIndex());
+        board.captures.load(dotMap);
+        board.hash = dotMap.getHash();
+        for (int cell = 0; cell < board.owner.length; cell++) {
+            Dot dot = dotMap.getDot(cell);
+            int player = dot.getPlayer();
+            board.owner[cell] = (byte) player;
+            if (dot.isBlocked()) board.hash ^= board.zobrist.blocked(cell);
+            if (player == 0) {
+                board.emptySlot[cell] = board.emptyCount;
+                board.empty[board.emptyCount++] = cell;
+            } else {
+                board.occupied[board.occupiedCount++] = cell;
+            }
+        }
+        return board;
+    }
+
+    PlayoutBoard copy() {
+        PlayoutBoard copy = new PlayoutBoard(width, height);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /** Overwrites this board with another board of the same size, without allocating. */
+    void copyFrom(PlayoutBoard other) {
+        System.arraycopy(other.owner, 0, owner, 0, owner.length);
+        connections.copyFrom(other.connections);
+        edgeIndex.copyFrom(other.edgeIndex);
+        captures.copyFrom(other.captures);
+        hash = other.hash;
+        System.arraycopy(other.occupied, 0, occupied, 0, other.occupiedCount);
+        occupiedCount = other.occupiedCount;
+        System.arraycopy(other.empty, 0, empty, 0, other.emptyCount);
+        System.arraycopy(other.emptySlot, 0, emptySlot, 0, emptySlot.length);
+        emptyCount = other.emptyCount;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    int getEmptyCount() {
+        return emptyCount;
+    }
+
+    /** Zobrist hash of the owners and lines on this board. */
+    long getHash() {
+        return hash;
+    }
+
+    /** Places a dot for {@code side} on an empty cell and connects it to its neighbours of the same side. */
+    void place(int cell, int side) {
+        owner[cell] = (byte) side;
+        hash ^= zobrist.owner(cell, side);
+        int slot = emptySlot[cell];
+        int last = empty[--emptyCount];
+        empty[slot] = last;
+        emptySlot[last] = slot;
+        occupied[occupiedCount++] = cell;
+
+        int row = connections.rowOf(cell);
+        int col = connections.colOf(cell);
+        captures.dotPlaced(row, col, side);
+        for (int direction = 0; direction < ConnectionStore.DIRECTIONS; direction++) {
+            int neighbor = connections.neighbor(cell, direction);
+            if (neighbor < 0 || owner[neighbor] != side) continue;
+            int nRow = connections.rowOf(neighbor);
+            int nCol = connections.colOf(neighbor);
+            if (edgeIndex.crossesAny(row, col, nRow, nCol)) continue;
+            if (connections.addEdge(cell, neighbor)) {
+                edgeIndex.add(row, col, nRow, nCol);
+                captures.connectionAdded(row, col, nRow, nCol, side);
+                hash ^= zobrist.edge(cell, direction);
+            }
+        }
+    }
+
+    /**
+     * Empty cells within {@link #REACH} of an occupied cell, in row-major order; every empty cell
+     * if there are none. Moves further out cannot take part in a fight yet.
+     */
+    int[] candidates() {
+        int count = 0;
+        for (int i = 0; i < occupiedCount; i++) {
+            int row = connections.rowOf(occupied[i]);
+            int col = connections.colOf(occupied[i]);
+            for (int r = Math.max(0, row - REACH); r <= Math.min(height - 1, row + REACH); r++) {
+                for (int c = Math.max(0, col - REACH); c <= Math.min(width - 1, col + REACH); c++) {
+                    int cell = r * width + c;
+                    if (owner[cell] == 0 && !marked[cell]) {
+                        marked[cell] = true;
+                        count++;
+                    }
+                }
+            }
+        }
+        if (count == 0) {
+            int[] all = new int[emptyCount];
+            for (int cell = 0, n = 0; cell < owner.length; cell++) {
+                if (owner[cell] == 0) all[n++] = cell;
+            }
+            return all;
+        }
+        int[] result = new int[count];
+        for (int cell = 0, n = 0; n < count; cell++) {
+            if (marked[cell]) {
+                marked[cell] = false;
+                result[n++] = cell;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A random empty cell, preferably within {@link #REACH} of a random occupied cell.
+     *
+     * @return the cell, or -1 if the board is full
+     */
+    int randomNearbyEmpty(SplittableRandom random) {
+        if (emptyCount == 0) return -1;
+        if (occupiedCount > 0) {
+            for (int attempt = 0; attempt < 8; attempt++) {
+                int from = occupied[random.nextInt(occupiedCount)];
+                int row = connections.rowOf(from) + random.nextInt(-REACH, REACH + 1);
+                int col = connections.colOf(from) + random.nextInt(-REACH, REACH + 1);
+                if (row < 0 || row >= height || col < 0 || col >= width) continue;
+                int cell = row * width + col;
+                if (owner[cell] == 0) return cell;
+            }
+        }
+        return empty[random.nextInt(emptyCount)];
+    }
+
+    /** Opponent dots enclosed by {@code side} minus dots of {@code side} enclosed by the opponent. */
+    int score(int side) {
+        captures.computeBlocked();
+        return captures.countBlocked(3 - side) - captures.countBlocked(side);
+    }
+}
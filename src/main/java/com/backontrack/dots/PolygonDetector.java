@@ -1,12 +1,17 @@
 package com.backontrack.dots;
 
+import com.backontrack.dots.GameMetrics.Counter;
+import com.backontrack.dots.GameMetrics.Phase;
+
 import java.util.*;
 
 /**
  * PolygonDetector - Java 11 compatible.
  *
  * Uses:
- *  - dotMap: Map<Dot, Set<Dot>> where each Set contains CONNECTED adjacent dots (8-neighbors if connected).
+ *  - dotMap: DotMap whose ConnectionStore holds the drawn lines as per-cell direction masks
+ *    (8-neighbors if connected). The store is read directly; the graphs searched are per-cell
+ *    direction masks as well, so no Map<Dot, Set<Dot>> view is built.
  *  - Dot must have getRow(), getCol(), getPlayer(), isBlocked(), setBlocked(...)
  *  - Dot.equals/hashCode MUST depend only on row & col.
  *
@@ -17,71 +22,186 @@ import java.util.*;
  *    can make (using candidate edges between adjacent non-blocked computer dots, excluding
  *    candidate edges that would cross existing drawn edges). Polygon must have size >= 4
  *    and enclose at least one player dot.
+ *  - findBestPolygonForComputer(dotMap) and findAllPolygonsForComputer(dotMap) use the
+ *    same candidate graph but list its faces with a FaceEnumerator: every region the
+ *    candidate edges can close is found once, with its area and enclosed player dots.
  *  - playerHasPossiblePolygon(dotMap) similar but for player -> returns boolean.
+ *
+ * Cycles are found by a depth-first search kept on an explicit stack of cell indices, so a
+ * long chain of dots cannot overflow the thread stack; a cycle is the slice of that stack
+ * between a back edge's ends. Every back edge is met once and is the only non-tree edge of its
+ * cycle, so no cycle is reported twice and none needs a key. The stack, the visit marks and
+ * the bounding-box tree over stack positions are scratch buffers reused between calls: apart
+ * from the returned maps a search allocates nothing once they have grown to the board size.
+ * An instance is therefore not thread-safe.
  */
 public class PolygonDetector {
 
-    // ---------------- Public API ----------------
+    private static final int MIN_CYCLE_SIZE = 4;
 
-    /** Update dot.blocked flags: any dot that lies inside any polygon drawn by the opponent becomes blocked. */
-    public void updateBlockedDots(Map<Dot, Set<Dot>> dotMap) {
-        // 1) clear blocking
-        for (Dot d : dotMap.keySet()) d.setBlocked(false);
+    /** Called with the stack slice [from, to) holding a cycle; returns true to end the search. */
+    private interface CycleHandler {
+        boolean onCycle(int from, int to);
+    }
 
-        // 2) find drawn polygons for players (owner 1 and 2) using ONLY already drawn edges
-        Map<Dot, Set<Dot>> drawnAdjPlayer = buildDrawnAdjacency(dotMap, 1);
-        Map<Dot, Set<Dot>> drawnAdjComputer = buildDrawnAdjacency(dotMap, 2);
+    private int width;
+    /** Direction mask of the graph being searched, per cell. */
+    private int[] adjacency = new int[0];
+    /** The cells whose mask may be non-zero, in row-major order: the owner's dots the graph was built from. */
+    private int[] graphCells = new int[0];
+    private int graphCellCount;
+    private int[] visited = new int[0];
+    private int visitStamp;
+    /** Position of a cell on the DFS stack, or -1. */
+    private int[] stackPos = new int[0];
+    private int[] stackCell = new int[0];
+    private int[] stackParent = new int[0];
+    private int[] stackDir = new int[0];
+    private int[] stackRow = new int[0];
+    private int[] stackCol = new int[0];
+    /**
+     * Segment trees over stack positions (leaves from {@link #leaves}) holding the minimum row
+     * and column and the negated maximum ones, so a cycle's bounding box costs O(log n).
+     */
+    private int leaves;
+    private int[] minRowTree = new int[0];
+    private int[] minColTree = new int[0];
+    private int[] negMaxRowTree = new int[0];
+    private int[] negMaxColTree = new int[0];
+    /** Opponent dots in the rectangle from (0, 0) up to, excluding, (row, col); (width + 1) per row. */
+    private int[] opponentCounts = new int[0];
+    /** Opponent dots, minus those the current search has blocked, in no particular order. */
+    private int[] opponentCells = new int[0];
+    private int opponentCellCount;
+    /** Cycles met by {@link #forEachCycle} since the last full update, for its flight recorder event. */
+    private int cyclesFound;
+    private final FaceEnumerator faces = new FaceEnumerator();
 
-        List<List<Dot>> playerPolys = findAllCyclesAsLists(drawnAdjPlayer);
-        List<List<Dot>> computerPolys = findAllCyclesAsLists(drawnAdjComputer);
+    // ---------------- Public API ----------------
 
-        // 3) For each player polygon, block enclosed computer dots; for each computer polygon, block enclosed player dots
-        for (List<Dot> poly : playerPolys) {
-            for (Dot d : dotMap.keySet()) {
-                if (d.getPlayer() == 2 && isInsidePolygon(poly, d)) d.setBlocked(true);
-            }
-        }
-        for (List<Dot> poly : computerPolys) {
-            for (Dot d : dotMap.keySet()) {
-                if (d.getPlayer() == 1 && isInsidePolygon(poly, d)) d.setBlocked(true);
+    /** Update dot.blocked flags: any dot that lies inside any polygon drawn by the opponent becomes blocked. */
+    public void updateBlockedDots(DotMap dotMap) {
+        long start = GameMetrics.start();
+        FlightEvents.BlockedDots event = new FlightEvents.BlockedDots();
+        event.begin();
+        cyclesFound = 0;
+        // 1) clear blocking
+        for (int i = 0; i < dotMap.size(); i++) dotMap.setBlocked(dotMap.getDot(i), false);
+
+        // 2) for each player polygon drawn with ONLY existing edges, block enclosed computer dots;
+        //    for each computer polygon, block enclosed player dots
+        prepare(dotMap);
+        blockInsideDrawnPolygons(dotMap, 1, 2);
+        blockInsideDrawnPolygons(dotMap, 2, 1);
+        GameMetrics.stop(Phase.BLOCKED_DOTS, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.cyclesFound = cyclesFound;
+            for (int i = 0; i < dotMap.size(); i++) {
+                if (dotMap.getDot(i).isBlocked()) event.blockedDots++;
             }
+            event.commit();
         }
     }
 
     /** Find first polygon the computer can form (candidate edges considered). Returned as Map<Dot,Dot> edges. */
-    public Map<Dot, Dot> findFirstPolygonForComputer(Map<Dot, Set<Dot>> dotMap) {
+    public Map<Dot, Dot> findFirstPolygonForComputer(DotMap dotMap) {
         // build candidate graph for computer (owner=2) considering blocked flags and existing drawn edges blocking crossings
-        Map<Dot, Set<Dot>> candidate = buildCandidateGraph(dotMap, 2);
-        return findFirstCycle(candidate, dotMap, 1); // opponent = player (1)
+        prepare(dotMap);
+        buildCandidateGraph(dotMap, 2);
+        return findFirstCycle(dotMap, 1); // opponent = player (1)
+    }
+
+    /**
+     * Find the polygon the computer can form that captures the most player dots, the smallest
+     * such one on a tie. Only faces of the candidate graph are considered: any polygon is split
+     * by the candidate edges inside it into faces, and those capture its dots between them.
+     */
+    public Map<Dot, Dot> findBestPolygonForComputer(DotMap dotMap) {
+        long start = GameMetrics.start();
+        prepare(dotMap);
+        buildCandidateGraph(dotMap, 2);
+        enumerateFaces(dotMap, 1);
+        int best = faces.best();
+        Map<Dot, Dot> polygon = best < 0 ? Collections.emptyMap() : faces.toEdgeMap(dotMap, best);
+        GameMetrics.stop(Phase.POLYGON_SEARCH, start);
+        return polygon;
     }
 
-    /** Find all polygons the computer can form (candidate edges considered). */
-    public List<Map<Dot, Dot>> findAllPolygonsForComputer(Map<Dot, Set<Dot>> dotMap) {
-        Map<Dot, Set<Dot>> candidate = buildCandidateGraph(dotMap, 2);
-        return findAllCycles(candidate, dotMap, 1);
+    /** Find all polygons the computer can form (candidate edges considered): every face enclosing a player dot. */
+    public List<Map<Dot, Dot>> findAllPolygonsForComputer(DotMap dotMap) {
+        prepare(dotMap);
+        buildCandidateGraph(dotMap, 2);
+        List<Map<Dot, Dot>> out = new ArrayList<>();
+        int count = enumerateFaces(dotMap, 1);
+        for (int face = 0; face < count; face++) {
+            if (faces.getEnclosedOpponents(face) > 0) out.add(faces.toEdgeMap(dotMap, face));
+        }
+        return out;
     }
 
     /** Check whether the human player (1) has any possible polygon (candidate edges) enclosing at least one computer dot (2). */
-    public boolean playerHasPossiblePolygon(Map<Dot, Set<Dot>> dotMap) {
-        Map<Dot, Set<Dot>> candidate = buildCandidateGraph(dotMap, 1);
-        Map<Dot, Dot> poly = findFirstCycle(candidate, dotMap, 2);
-        return !poly.isEmpty();
+    public boolean playerHasPossiblePolygon(DotMap dotMap) {
+        long start = GameMetrics.start();
+        prepare(dotMap);
+        buildCandidateGraph(dotMap, 1);
+        enumerateFaces(dotMap, 2);
+        boolean possible = faces.best() >= 0;
+        GameMetrics.stop(Phase.PLAYER_THREAT, start);
+        return possible;
+    }
+
+    private int enumerateFaces(DotMap dotMap, int opponentValue) {
+        FlightEvents.CycleSearch event = new FlightEvents.CycleSearch();
+        event.begin();
+        int count = faces.enumerate(dotMap, adjacency, graphCells, graphCellCount, opponentValue);
+        GameMetrics.add(Counter.FACES_ENUMERATED, count);
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.method = "faces";
+            event.cyclesFound = count;
+            event.commit();
+        }
+        return count;
     }
 
     // ---------------- Build drawn adjacency (only existing drawn edges) ----------------
 
-    /** Build adjacency map from dotMap but only links between same-owner drawn edges. This represents already-drawn graph. */
-    private Map<Dot, Set<Dot>> buildDrawnAdjacency(Map<Dot, Set<Dot>> dotMap, int ownerValue) {
-        Map<Dot, Set<Dot>> adj = new HashMap<>();
-        for (Dot d : dotMap.keySet()) {
-            if (d.getPlayer() != ownerValue) continue;
-            for (Dot nb : dotMap.getOrDefault(d, Collections.emptySet())) {
-                if (nb.getPlayer() != ownerValue) continue;
-                // both are same owner and the edge is drawn (entry in dotMap)
-                adj.computeIfAbsent(d, k -> new HashSet<>()).add(nb);
+    /** Build adjacency masks but only links between same-owner drawn edges. This represents already-drawn graph. */
+    private void buildDrawnAdjacency(DotMap dotMap, int ownerValue) {
+        ConnectionStore connections = dotMap.getConnections();
+        startGraph(dotMap, ownerValue, false);
+        for (int k = 0; k < graphCellCount; k++) {
+            int i = graphCells[k];
+            int mask = 0;
+            int drawn = connections.mask(i);
+            while (drawn != 0) {
+                int dir = Integer.numberOfTrailingZeros(drawn);
+                drawn &= drawn - 1;
+                // both are same owner and the edge is drawn (bit set in the connection store)
+                if (dotMap.getDot(connections.neighbor(i, dir)).getPlayer() == ownerValue) mask |= 1 << dir;
             }
+            adjacency[i] = mask;
         }
-        return adj;
+    }
+
+    /**
+     * Clears the masks of the previous graph and lists the owner's dots, skipping blocked ones if
+     * asked, as the cells of the next. Both graphs are built from the owner's dots alone, so their
+     * cost follows the number of dots rather than the size of the board.
+     */
+    private void startGraph(DotMap dotMap, int ownerValue, boolean skipBlocked) {
+        for (int k = 0; k < graphCellCount; k++) adjacency[graphCells[k]] = 0;
+        CellSet owned = dotMap.getCells(ownerValue);
+        graphCellCount = 0;
+        for (int k = 0; k < owned.size(); k++) {
+            int cell = owned.get(k);
+            if (skipBlocked && dotMap.getDot(cell).isBlocked()) continue;
+            graphCells[graphCellCount++] = cell;
+        }
+        Arrays.sort(graphCells, 0, graphCellCount);
     }
 
     // ---------------- Candidate graph builder (owner-owned adjacency, skipping blocked) ----------------
@@ -92,335 +212,306 @@ public class PolygonDetector {
      *    a) the edge already exists (drawn) OR
      *    b) the candidate edge would not cross any already-drawn edge (from either owner)
      * - blocked dots are ignored (no candidate edges touching them)
+     * Crossings are looked up in the DotMap's EdgeIndex: unit-length edges can only cross
+     * the opposite diagonal of the same unit square.
      */
-    private Map<Dot, Set<Dot>> buildCandidateGraph(Map<Dot, Set<Dot>> dotMap, int ownerValue) {
-        Map<Long, Dot> byRC = new HashMap<>();
-        for (Dot d : dotMap.keySet()) byRC.put(rcKey(d.getRow(), d.getCol()), d);
-
-        Set<Edge> existingEdges = collectExistingEdges(dotMap);
-
-        Map<Dot, Set<Dot>> adj = new HashMap<>();
-        for (Dot a : dotMap.keySet()) {
-            if (a.getPlayer() != ownerValue) continue;
-            if (a.isBlocked()) continue; // can't be used
-
-            for (int dr = -1; dr <= 1; dr++) {
-                for (int dc = -1; dc <= 1; dc++) {
-                    if (dr == 0 && dc == 0) continue;
-                    Dot b = byRC.get(rcKey(a.getRow() + dr, a.getCol() + dc));
-                    if (b == null) continue;
-                    if (b.getPlayer() != ownerValue) continue;
-                    if (b.isBlocked()) continue;
-
-                    Edge cand = new Edge(a, b);
-                    boolean already = existingEdges.contains(cand);
-                    if (already || !crossesAny(cand, existingEdges)) {
-                        adj.computeIfAbsent(a, k -> new HashSet<>()).add(b);
-                        adj.computeIfAbsent(b, k -> new HashSet<>()).add(a);
-                    }
+    private void buildCandidateGraph(DotMap dotMap, int ownerValue) {
+        FlightEvents.CandidateGraph event = new FlightEvents.CandidateGraph();
+        event.begin();
+        ConnectionStore connections = dotMap.getConnections();
+        EdgeIndex edgeIndex = dotMap.getEdgeIndex();
+
+        startGraph(dotMap, ownerValue, true); // blocked dots can't be used
+        int tested = 0;
+        for (int k = 0; k < graphCellCount; k++) {
+            int i = graphCells[k];
+            Dot a = dotMap.getDot(i);
+
+            for (int dir = 0; dir < ConnectionStore.DIRECTIONS; dir++) {
+                int j = connections.neighbor(i, dir);
+                if (j < 0) continue;
+                Dot b = dotMap.getDot(j);
+                if (b.getPlayer() != ownerValue) continue;
+                if (b.isBlocked()) continue;
+
+                boolean already = connections.hasEdge(i, dir);
+                if (!already) tested++;
+                if (already || !edgeIndex.crossesAny(a.getRow(), a.getCol(), b.getRow(), b.getCol())) {
+                    adjacency[i] |= 1 << dir;
+                    adjacency[j] |= 1 << ConnectionStore.opposite(dir);
                 }
             }
         }
-        return adj;
-    }
-
-    // ---------------- Collect existing drawn edges -------------------------------------
-
-    private Set<Edge> collectExistingEdges(Map<Dot, Set<Dot>> dotMap) {
-        Set<Edge> out = new HashSet<>();
-        for (Map.Entry<Dot, Set<Dot>> e : dotMap.entrySet()) {
-            Dot u = e.getKey();
-            for (Dot v : e.getValue()) {
-                out.add(new Edge(u, v));
-            }
+        GameMetrics.add(Counter.EDGES_TESTED, tested);
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.owner = ownerValue;
+            event.edgesTested = tested;
+            event.commit();
         }
-        return out;
     }
 
-    // ---------------- Cycle-finding (first) on an adjacency map ------------------------
-
-    private Map<Dot, Dot> findFirstCycle(Map<Dot, Set<Dot>> adj, Map<Dot, Set<Dot>> dotMap, int opponentValue) {
-        Set<Dot> visited = new HashSet<>();
-
-        for (Dot start : adj.keySet()) {
-            if (visited.contains(start)) continue;
+    // ---------------- Cycle-finding on the adjacency masks ------------------------
+
+    private Map<Dot, Dot> findFirstCycle(DotMap dotMap, int opponentValue) {
+        indexOpponentDots(dotMap, opponentValue);
+        int[] found = new int[2];
+        boolean any = forEachCycle(dotMap, (from, to) -> {
+            if (!enclosesOpponentDot(dotMap, from, to, opponentValue)) return false;
+            found[0] = from;
+            found[1] = to;
+            return true;
+        });
+        return any ? buildEdgeMap(dotMap, found[0], found[1]) : Collections.emptyMap();
+    }
 
-            Deque<Dot> stack = new ArrayDeque<>();
-            Set<Dot> onStack = new HashSet<>();
-            Map<Dot, Dot> got = dfsFindFirst(adj, dotMap, start, null, visited, stack, onStack, opponentValue);
-            if (!got.isEmpty()) return got;
-        }
-        return Collections.emptyMap();
+    /** Blocks the opponent dots inside every polygon drawn by ownerValue. */
+    private void blockInsideDrawnPolygons(DotMap dotMap, int ownerValue, int opponentValue) {
+        buildDrawnAdjacency(dotMap, ownerValue);
+        indexOpponentDots(dotMap, opponentValue);
+        forEachCycle(dotMap, (from, to) -> {
+            blockEnclosed(dotMap, from, to, opponentValue);
+            return false;
+        });
     }
 
-    private Map<Dot, Dot> dfsFindFirst(Map<Dot, Set<Dot>> adj,
-                                       Map<Dot, Set<Dot>> dotMap,
-                                       Dot current,
-                                       Dot parent,
-                                       Set<Dot> visited,
-                                       Deque<Dot> stack,
-                                       Set<Dot> onStack,
-                                       int opponentValue) {
-        visited.add(current);
-        stack.addLast(current);
-        onStack.add(current);
-
-        for (Dot neighbor : adj.getOrDefault(current, Collections.emptySet())) {
-            if (neighbor.equals(parent)) continue;
-
-            if (!visited.contains(neighbor)) {
-                Map<Dot, Dot> got = dfsFindFirst(adj, dotMap, neighbor, current, visited, stack, onStack, opponentValue);
-                if (!got.isEmpty()) return got;
-            } else if (onStack.contains(neighbor)) {
-                List<Dot> cycle = extractCycleFromStack(stack, neighbor);
-                if (cycle.size() >= 4) {
-                    if (enclosesOpponentDot(cycle, dotMap, opponentValue)) {
-                        return buildEdgeMap(cycle);
+    /**
+     * Depth-first search over {@link #adjacency} from every unvisited graph cell in row-major order,
+     * with neighbours tried in direction order. Each back edge to a dot still on the stack
+     * closes a cycle of the stack slice from that dot to the current one (in path order);
+     * cycles shorter than {@link #MIN_CYCLE_SIZE} are skipped.
+     *
+     * @return true if the handler ended the search
+     */
+    private boolean forEachCycle(DotMap dotMap, CycleHandler handler) {
+        FlightEvents.CycleSearch event = new FlightEvents.CycleSearch();
+        event.begin();
+        ConnectionStore connections = dotMap.getConnections();
+        int stamp = nextVisitStamp();
+        int cycles = 0;
+        for (int k = 0; k < graphCellCount; k++) {
+            int start = graphCells[k];
+            if (adjacency[start] == 0 || visited[start] == stamp) continue;
+
+            visited[start] = stamp;
+            int sp = push(0, start, -1);
+            while (sp > 0) {
+                int top = sp - 1;
+                int cell = stackCell[top];
+                int remaining = adjacency[cell] & (0xFF << stackDir[top]) & 0xFF;
+                if (remaining == 0) {
+                    stackPos[cell] = -1;
+                    sp--;
+                    continue;
+                }
+                int dir = Integer.numberOfTrailingZeros(remaining);
+                stackDir[top] = dir + 1;
+                int neighbor = connections.neighbor(cell, dir);
+                if (neighbor == stackParent[top]) continue;
+
+                if (visited[neighbor] != stamp) {
+                    visited[neighbor] = stamp;
+                    sp = push(sp, neighbor, cell);
+                } else if (stackPos[neighbor] >= 0 && sp - stackPos[neighbor] >= MIN_CYCLE_SIZE) {
+                    cycles++;
+                    if (handler.onCycle(stackPos[neighbor], sp)) {
+                        for (int i = 0; i < sp; i++) stackPos[stackCell[i]] = -1;
+                        cycleSearchDone(dotMap, event, cycles);
+                        return true;
                     }
                 }
             }
         }
+        cycleSearchDone(dotMap, event, cycles);
+        return false;
+    }
 
-        stack.removeLast();
-        onStack.remove(current);
-        return Collections.emptyMap();
+    private void cycleSearchDone(DotMap dotMap, FlightEvents.CycleSearch event, int cycles) {
+        cyclesFound += cycles;
+        GameMetrics.add(Counter.CYCLES_EXPLORED, cycles);
+        event.end();
+        if (event.shouldCommit()) {
+            event.board(dotMap);
+            event.method = "dfs";
+            event.cyclesFound = cycles;
+            event.commit();
+        }
     }
 
-    // ---------------- Cycle-finding (all) on an adjacency map -------------------------
+    private int push(int sp, int cell, int parent) {
+        int row = cell / width;
+        int col = cell % width;
+        stackCell[sp] = cell;
+        stackParent[sp] = parent;
+        stackDir[sp] = 0;
+        stackRow[sp] = row;
+        stackCol[sp] = col;
+        stackPos[cell] = sp;
+        setLeaf(minRowTree, sp, row);
+        setLeaf(minColTree, sp, col);
+        setLeaf(negMaxRowTree, sp, -row);
+        setLeaf(negMaxColTree, sp, -col);
+        return sp + 1;
+    }
 
-    private List<Map<Dot, Dot>> findAllCycles(Map<Dot, Set<Dot>> adj, Map<Dot, Set<Dot>> dotMap, int opponentValue) {
-        List<Map<Dot, Dot>> out = new ArrayList<>();
-        Set<Dot> visited = new HashSet<>();
-        Set<String> seen = new HashSet<>();
-        for (Dot start : adj.keySet()) {
-            if (visited.contains(start)) continue;
-            Deque<Dot> stack = new ArrayDeque<>();
-            Set<Dot> onStack = new HashSet<>();
-            dfsFindAll(adj, dotMap, start, null, visited, stack, onStack, opponentValue, out, seen);
+    /** Entries below the top never change while on the stack, so every node within [0, sp) stays exact. */
+    private void setLeaf(int[] tree, int position, int value) {
+        int node = leaves + position;
+        tree[node] = value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            tree[node] = Math.min(tree[2 * node], tree[2 * node + 1]);
         }
-        return out;
     }
 
-    private void dfsFindAll(Map<Dot, Set<Dot>> adj,
-                            Map<Dot, Set<Dot>> dotMap,
-                            Dot current,
-                            Dot parent,
-                            Set<Dot> visited,
-                            Deque<Dot> stack,
-                            Set<Dot> onStack,
-                            int opponentValue,
-                            List<Map<Dot, Dot>> out,
-                            Set<String> seen) {
-        visited.add(current);
-        stack.addLast(current);
-        onStack.add(current);
-
-        for (Dot neighbor : adj.getOrDefault(current, Collections.emptySet())) {
-            if (neighbor.equals(parent)) continue;
-
-            if (!visited.contains(neighbor)) {
-                dfsFindAll(adj, dotMap, neighbor, current, visited, stack, onStack, opponentValue, out, seen);
-            } else if (onStack.contains(neighbor)) {
-                List<Dot> cycle = extractCycleFromStack(stack, neighbor);
-                if (cycle.size() >= 4 && enclosesOpponentDot(cycle, dotMap, opponentValue)) {
-                    String key = normalizeCycleKey(cycle);
-                    if (!seen.contains(key)) {
-                        seen.add(key);
-                        out.add(buildEdgeMap(cycle));
-                    }
-                }
-            }
+    /** Minimum of the tree's values at stack positions [from, to). */
+    private int rangeMin(int[] tree, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int lo = leaves + from, hi = leaves + to; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) min = Math.min(min, tree[lo++]);
+            if ((hi & 1) == 1) min = Math.min(min, tree[--hi]);
         }
-
-        stack.removeLast();
-        onStack.remove(current);
+        return min;
     }
 
-    // ---------------- Find all cycles as lists (used for marking blocked dots) ---------
+    // ---------------- Scratch buffers -------------------------
+
+    /** Sizes the scratch buffers for the board; they only grow. */
+    private void prepare(DotMap dotMap) {
+        width = dotMap.getWidth();
+        int size = dotMap.size();
+        if (adjacency.length < size) {
+            adjacency = new int[size];
+            graphCells = new int[size];
+            graphCellCount = 0;
+            visited = new int[size];
+            visitStamp = 0;
+            stackPos = new int[size];
+            Arrays.fill(stackPos, -1);
+            stackCell = new int[size];
+            stackParent = new int[size];
+            stackDir = new int[size];
+            stackRow = new int[size];
+            stackCol = new int[size];
+            leaves = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+            minRowTree = new int[2 * leaves];
+            minColTree = new int[2 * leaves];
+            negMaxRowTree = new int[2 * leaves];
+            negMaxColTree = new int[2 * leaves];
+            opponentCells = new int[size];
+        }
+        int counts = (dotMap.getHeight() + 1) * (width + 1);
+        if (opponentCounts.length < counts) {
+            opponentCounts = new int[counts];
+        }
+    }
 
-    /**
-     * Finds all cycles in the provided adjacency map (no enclosing check).
-     * Returns list of cycles (each cycle as List<Dot> in vertex order).
-     */
-    private List<List<Dot>> findAllCyclesAsLists(Map<Dot, Set<Dot>> adj) {
-        List<List<Dot>> out = new ArrayList<>();
-        Set<Dot> visited = new HashSet<>();
-        Set<String> seen = new HashSet<>();
-        for (Dot start : adj.keySet()) {
-            if (visited.contains(start)) continue;
-            Deque<Dot> stack = new ArrayDeque<>();
-            Set<Dot> onStack = new HashSet<>();
-            dfsCollectCycles(adj, start, null, visited, stack, onStack, out, seen);
+    private int nextVisitStamp() {
+        if (++visitStamp == 0) {
+            Arrays.fill(visited, 0);
+            visitStamp = 1;
         }
-        return out;
+        return visitStamp;
     }
 
-    private void dfsCollectCycles(Map<Dot, Set<Dot>> adj,
-                                  Dot current,
-                                  Dot parent,
-                                  Set<Dot> visited,
-                                  Deque<Dot> stack,
-                                  Set<Dot> onStack,
-                                  List<List<Dot>> out,
-                                  Set<String> seen) {
-        visited.add(current);
-        stack.addLast(current);
-        onStack.add(current);
-
-        for (Dot neighbor : adj.getOrDefault(current, Collections.emptySet())) {
-            if (neighbor.equals(parent)) continue;
-
-            if (!visited.contains(neighbor)) {
-                dfsCollectCycles(adj, neighbor, current, visited, stack, onStack, out, seen);
-            } else if (onStack.contains(neighbor)) {
-                List<Dot> cycle = extractCycleFromStack(stack, neighbor);
-                if (cycle.size() >= 4) {
-                    String key = normalizeCycleKey(cycle);
-                    if (!seen.contains(key)) {
-                        seen.add(key);
-                        out.add(cycle);
-                    }
+    private void indexOpponentDots(DotMap dotMap, int opponentValue) {
+        int stride = width + 1;
+        opponentCellCount = 0;
+        for (int row = 0; row < dotMap.getHeight(); row++) {
+            int inRow = 0;
+            for (int col = 0; col < width; col++) {
+                if (dotMap.getDot(row * width + col).getPlayer() == opponentValue) {
+                    opponentCells[opponentCellCount++] = row * width + col;
+                    inRow++;
                 }
+                opponentCounts[(row + 1) * stride + col + 1] = opponentCounts[row * stride + col + 1] + inRow;
             }
         }
-
-        stack.removeLast();
-        onStack.remove(current);
     }
 
-    // ---------------- Helpers: cycle extraction, build edges -------------------------
+    // ---------------- Helpers: build edges -------------------------
 
-    private List<Dot> extractCycleFromStack(Deque<Dot> stack, Dot neighbor) {
-        List<Dot> cycle = new ArrayList<>();
-        Iterator<Dot> it = stack.descendingIterator(); // current -> ... -> oldest
-        while (it.hasNext()) {
-            Dot d = it.next();
-            cycle.add(d);
-            if (d.equals(neighbor)) break;
-        }
-        Collections.reverse(cycle); // neighbor ... current
-        return cycle;
-    }
-
-    private Map<Dot, Dot> buildEdgeMap(List<Dot> cycle) {
+    private Map<Dot, Dot> buildEdgeMap(DotMap dotMap, int from, int to) {
         Map<Dot, Dot> edges = new LinkedHashMap<>();
-        int n = cycle.size();
-        for (int i = 0; i < n; i++) {
-            Dot a = cycle.get(i);
-            Dot b = cycle.get((i + 1) % n);
-            edges.put(a, b);
+        for (int i = from; i < to; i++) {
+            int next = i + 1 < to ? i + 1 : from;
+            edges.put(dotMap.getDot(stackCell[i]), dotMap.getDot(stackCell[next]));
         }
         return edges;
     }
 
     // ---------------- Geometry: enclosure tests -------------------------------------
 
-    private boolean enclosesOpponentDot(List<Dot> polygon, Map<Dot, Set<Dot>> dotMap, int opponentValue) {
-        for (Dot d : dotMap.keySet()) {
-            if (d.getPlayer() != opponentValue) continue;
-            if (isInsidePolygon(polygon, d)) return true;
+    private boolean enclosesOpponentDot(DotMap dotMap, int from, int to, int opponentValue) {
+        return scanEnclosed(dotMap, from, to, opponentValue, false);
+    }
+
+    private void blockEnclosed(DotMap dotMap, int from, int to, int opponentValue) {
+        scanEnclosed(dotMap, from, to, opponentValue, true);
+    }
+
+    /**
+     * Tests the opponent dots within the cycle's bounding box, which the prefix counts skip in
+     * constant time when it holds none. Either blocks every enclosed one or stops at the first.
+     * A box larger than the number of opponent dots left is checked through their list instead;
+     * blocked dots leave that list, since later cycles cannot change them any more.
+     */
+    private boolean scanEnclosed(DotMap dotMap, int from, int to, int opponentValue, boolean block) {
+        int minRow = rangeMin(minRowTree, from, to);
+        int maxRow = -rangeMin(negMaxRowTree, from, to);
+        int minCol = rangeMin(minColTree, from, to);
+        int maxCol = -rangeMin(negMaxColTree, from, to);
+        int stride = width + 1;
+        int inBox = opponentCounts[(maxRow + 1) * stride + maxCol + 1] - opponentCounts[minRow * stride + maxCol + 1]
+                - opponentCounts[(maxRow + 1) * stride + minCol] + opponentCounts[minRow * stride + minCol];
+        if (inBox == 0) return false;
+
+        boolean found = false;
+        if ((long) (maxRow - minRow + 1) * (maxCol - minCol + 1) > opponentCellCount) {
+            for (int i = 0; i < opponentCellCount; i++) {
+                int row = opponentCells[i] / width;
+                int col = opponentCells[i] % width;
+                if (row < minRow || row > maxRow || col < minCol || col > maxCol) continue;
+                if (!isInsidePolygon(from, to, row, col)) continue;
+                if (!block) return true;
+                dotMap.setBlocked(dotMap.getDot(opponentCells[i]), true);
+                opponentCells[i--] = opponentCells[--opponentCellCount];
+                found = true;
+            }
+            return found;
         }
-        return false;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Dot d = dotMap.getDot(row * width + col);
+                if (d.getPlayer() != opponentValue || (block && d.isBlocked()) || !isInsidePolygon(from, to, row, col)) continue;
+                if (!block) return true;
+                dotMap.setBlocked(d, true);
+                found = true;
+            }
+        }
+        return found;
     }
 
     /**
      * Ray-casting point-in-polygon test.
-     * polygon: List<Dot> vertex order, using getRow() as y and getCol() as x.
+     * polygon: the stack slice [from, to) in vertex order, using the row as y and the column as x.
      */
-    private boolean isInsidePolygon(List<Dot> polygon, Dot point) {
-        if (polygon == null || polygon.size() < 3) return false;
+    private boolean isInsidePolygon(int from, int to, int row, int col) {
         boolean inside = false;
-        double px = point.getCol();
-        double py = point.getRow();
-
-        for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
-            double xi = polygon.get(i).getCol();
-            double yi = polygon.get(i).getRow();
-            double xj = polygon.get(j).getCol();
-            double yj = polygon.get(j).getRow();
+        double px = col;
+        double py = row;
+
+        for (int i = from, j = to - 1; i < to; j = i++) {
+            double xi = stackCol[i];
+            double yi = stackRow[i];
+            double xj = stackCol[j];
+            double yj = stackRow[j];
             boolean intersect = ((yi > py) != (yj > py)) &&
                     (px < (xj - xi) * (py - yi) / (yj - yi) + xi);
             if (intersect) inside = !inside;
         }
         return inside;
     }
-
-    // ---------------- Edge crossing checks -----------------------------------------
-
-    private static final class Edge {
-        final Dot a, b;
-        Edge(Dot u, Dot v) { if (cmp(u, v) <= 0) { a = u; b = v; } else { a = v; b = u; } }
-        private static int cmp(Dot d1, Dot d2) {
-            int c = Integer.compare(d1.getRow(), d2.getRow());
-            return (c != 0) ? c : Integer.compare(d1.getCol(), d2.getCol());
-        }
-        @Override public boolean equals(Object o) { if (!(o instanceof Edge)) return false; Edge e = (Edge) o; return a.equals(e.a) && b.equals(e.b); }
-        @Override public int hashCode() { return 31 * a.hashCode() + b.hashCode(); }
-    }
-
-    private boolean crossesAny(Edge cand, Set<Edge> existing) {
-        for (Edge e : existing) {
-            // sharing endpoints is allowed
-            if (cand.a.equals(e.a) || cand.a.equals(e.b) || cand.b.equals(e.a) || cand.b.equals(e.b)) continue;
-            if (segmentsIntersect(cand.a, cand.b, e.a, e.b)) return true;
-        }
-        return false;
-    }
-
-    private boolean segmentsIntersect(Dot p1, Dot p2, Dot q1, Dot q2) {
-        int o1 = orient(p1, p2, q1);
-        int o2 = orient(p1, p2, q2);
-        int o3 = orient(q1, q2, p1);
-        int o4 = orient(q1, q2, p2);
-        if (o1 != o2 && o3 != o4) return true;
-        if (o1 == 0 && onSeg(p1, q1, p2)) return true;
-        if (o2 == 0 && onSeg(p1, q2, p2)) return true;
-        if (o3 == 0 && onSeg(q1, p1, q2)) return true;
-        if (o4 == 0 && onSeg(q1, p2, q2)) return true;
-        return false;
-    }
-
-    private int orient(Dot a, Dot b, Dot c) {
-        long x1 = b.getCol() - a.getCol();
-        long y1 = b.getRow() - a.getRow();
-        long x2 = c.getCol() - a.getCol();
-        long y2 = c.getRow() - a.getRow();
-        long v = x1 * y2 - y1 * x2;
-        return Long.compare(v, 0);
-    }
-
-    private boolean onSeg(Dot a, Dot b, Dot c) {
-        return Math.min(a.getCol(), c.getCol()) <= b.getCol() && b.getCol() <= Math.max(a.getCol(), c.getCol()) &&
-                Math.min(a.getRow(), c.getRow()) <= b.getRow() && b.getRow() <= Math.max(a.getRow(), c.getRow());
-    }
-
-    // ---------------- Utils --------------------------------------------------------
-
-    private long rcKey(int r, int c) { return (((long) r) << 32) ^ (c & 0xffffffffL); }
-
-    private String normalizeCycleKey(List<Dot> cyc) {
-        int n = cyc.size();
-        int best = 0;
-        for (int i = 1; i < n; i++) if (lt(cyc.get(i), cyc.get(best))) best = i;
-        String f = keyFrom(cyc, best, +1);
-        String b = keyFrom(cyc, (best - 1 + n) % n, -1);
-        return (f.compareTo(b) <= 0) ? f : b;
-    }
-    private boolean lt(Dot a, Dot b) {
-        if (a.getRow() != b.getRow()) return a.getRow() < b.getRow();
-        return a.getCol() < b.getCol();
-    }
-    private String keyFrom(List<Dot> cyc, int start, int step) {
-        StringBuilder sb = new StringBuilder();
-        int n = cyc.size();
-        int idx = start;
-        for (int k = 0; k < n; k++) {
-            Dot d = cyc.get(idx);
-            sb.append(d.getRow()).append(',').append(d.getCol()).append(';');
-            idx = (idx + step + n) % n;
-        }
-        return sb.toString();
-    }
 }
 
 
@@ -0,0 +1,107 @@
+package com.backontrack.dots;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds any position of a {@link GameRecord}.
+ *
+ * The engine reads the log once and keeps a snapshot of the owners and lines every
+ * {@code snapshotInterval} moves, as a {@link PersistentBoard}. A position is then restored from the snapshot just before it,
+ * found by index, plus at most {@code snapshotInterval} moves of the log, instead of replaying the
+ * game from the start. Blocked flags are recomputed for the position with
+ * {@link PolygonDetector#updateBlockedDots(DotMap)}, so the returned board is ready for analysis.
+ *
+ * Consecutive snapshots share every part of the board the moves between them did not touch, so
+ * they cost little more than the cells that changed. An engine reuses its detector's buffers and
+ * is not thread-safe.
+ */
+public final class ReplayEngine {
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 64;
+
+    private final GameRecord record;
+    private final int snapshotInterval;
+    /** Snapshot k holds the position after k * snapshotInterval moves. */
+    private final List<PersistentBoard> snapshots = new ArrayList<>();
+    /** Log position of the first dot after each snapshot. */
+    private final List<Integer> snapshotPositions = new ArrayList<>();
+    private final PolygonDetector polygonDetector = new PolygonDetector();
+
+    public ReplayEngine(GameRecord record) {
+        this(record, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public ReplayEngine(GameRecord record, int snapshotInterval) {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        this.record = record;
+        this.snapshotInterval = snapshotInterval;
+        indexSnapshots();
+    }
+
+    public int getMoveCount() {
+        return record.getMoveCount();
+    }
+
+    /**
+     * The board after the first {@code move} dots, including the lines drawn before the next dot.
+     *
+     * @param move 0 for the empty board up to {@link #getMoveCount()} for the final position
+     * @return a new board with blocked flags set
+     */
+    public DotMap positionAt(int move) {
+        if (move < 0 || move > record.getMoveCount()) {
+            throw new IllegalArgumentException("Move " + move + " outside 0.." + record.getMoveCount());
+        }
+        int snapshot = Math.min(move / snapshotInterval, snapshotPositions.size() - 1);
+
+        DotMap dotMap = new DotMap(record.getWidth(), record.getHeight());
+        dotMap.createDotMap();
+        dotMap.restore(snapshots.get(snapshot));
+
+        ConnectionStore geometry = dotMap.getConnections();
+        GameRecord.Cursor cursor = record.cursor(snapshotPositions.get(snapshot));
+        int moves = snapshot * snapshotInterval;
+        while (cursor.next()) {
+            if (cursor.line) {
+                Dot to = dotMap.getDot(geometry.neighbor(cursor.cell, cursor.direction));
+                dotMap.addConnection(dotMap.getDot(cursor.cell), to);
+            } else {
+                if (moves == move) break;
+                Dot dot = dotMap.getDot(cursor.cell);
+                if (cursor.owner == 1) {
+                    dotMap.attributeDotToPlayer(dot);
+                } else {
+                    dotMap.attributeDotToComputer(dot);
+                }
+                moves++;
+            }
+        }
+
+        polygonDetector.updateBlockedDots(dotMap);
+        return dotMap;
+    }
+
+    private void indexSnapshots() {
+        PersistentBoard board = PersistentBoard.empty(record.getWidth(), record.getHeight());
+        GameRecord.Cursor cursor = record.cursor(0);
+        int moves = 0;
+        int position = 0;
+        while (true) {
+            if (moves % snapshotInterval == 0 && moves / snapshotInterval == snapshotPositions.size()) {
+                snapshots.add(board);
+                snapshotPositions.add(position);
+            }
+            if (!cursor.next()) break;
+            if (cursor.line) {
+                board = board.withLine(cursor.cell, cursor.direction);
+            } else {
+                board = board.withOwner(cursor.cell, cursor.owner);
+                moves++;
+            }
+            position = cursor.position;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameMetrics.Phase;
+
+import java.util.Arrays;
+
+/**
+ * For both sides at once, which cells each could enclose next and how many dots away that is.
+ *
+ * {@link #update(DotMap)} analyses a position in one pass per side, with the bit-parallel flood
+ * of a {@link BitboardCaptureEngine}:
+ * <ul>
+ *  <li>the side's drawn lines alone give the cells it has already enclosed
+ *      ({@link #isEnclosed(int, int, int)});</li>
+ *  <li>adding every line it could still draw between its free dots, as
+ *      {@link PolygonDetector}'s candidate graph does, gives the cells it could enclose without
+ *      placing a dot: distance 0;</li>
+ *  <li>each empty cell that would join two of the side's dots already connected through
+ *      candidate lines closes a new loop. A union-find over the candidate lines finds those
+ *      cells, and one more flood per cell gives what a dot there would enclose: distance 1,
+ *      with that cell as the closing move.</li>
+ * </ul>
+ * The last flood covers only the {@link #WINDOW} rows and columns around the closing cell, and
+ * whatever touches the window's border counts as outside, so a trial costs the same on any
+ * board. At most {@link #MAX_TRIALS} cells per side are tried, those next to the most free
+ * opponent dots first. A polygon that does not fit the window, or whose closing cell is not
+ * among those tried, is not found. Everything further away is {@link #FAR}. Per side the map also keeps the closing move that
+ * would enclose the most free opponent dots, so a strategy can attack with its own best move
+ * and defend by taking the opponent's, from the same data.
+ *
+ * Side indices are owners, {@link Constants#PLAYER} and {@link Constants#COMPUTER}. The analysis
+ * is reused while the board version ({@link DotMap#snapshot()}) is unchanged. Nothing in the game
+ * analyses positions on its own; a strategy that wants the map keeps one. A map is not
+ * thread-safe.
+ */
+public final class ThreatMap {
+
+    /** Distance of a cell the side cannot enclose with one more dot, or at all. */
+    public static final int FAR = Integer.MAX_VALUE;
+
+    /** Cells on each side of a closing cell that its trial flood covers. */
+    static final int WINDOW = 7;
+
+    /** Closing cells tried per side and analysis. */
+    static final int MAX_TRIALS = 64;
+
+    private int width;
+    private int height;
+    private PersistentBoard analysed;
+    private BitboardCaptureEngine drawn;
+    private BitboardCaptureEngine candidate;
+    private BitboardCaptureEngine trial;
+
+    /** Indexed by side, then cell. */
+    private final int[][] distance = new int[3][];
+    private final int[][] closingMove = new int[3][];
+    private final int[][] closingGain = new int[3][];
+    private final boolean[][] enclosed = new boolean[3][];
+    private final int[] bestMove = {-1, -1, -1};
+    private final int[] bestGain = new int[3];
+    private final int[] freeOpponentsAtZero = new int[3];
+    /** Union-find per side over its candidate lines. */
+    private final int[][] parent = new int[3][];
+    /** Per side and free dot, the forward directions of its candidate lines. */
+    private final int[][] candidateLines = new int[3][];
+    private final boolean[] candidateCycle = new boolean[3];
+    private int[] newlyEnclosed = new int[0];
+    /** Closing cells found for the side being analysed, then the same cells by score. */
+    private int[] candidates = new int[0];
+    private int[] ordered = new int[0];
+    private int[] scores = new int[0];
+    private final int[] scoreCounts = new int[ConnectionStore.DIRECTIONS + 2];
+    private final int[] roots = new int[ConnectionStore.DIRECTIONS];
+    private final int[] links = new int[ConnectionStore.DIRECTIONS];
+
+    /** Analyses the position, unless it is the one analysed last. */
+    public void update(DotMap dotMap) {
+        PersistentBoard board = dotMap.snapshot();
+        if (board == analysed) return;
+        long start = GameMetrics.start();
+        if (drawn == null || dotMap.getWidth() != width || dotMap.getHeight() != height) {
+            resize(dotMap.getWidth(), dotMap.getHeight());
+        }
+        drawn.load(dotMap);
+        candidate.clear();
+        for (int side = 1; side <= 2; side++) {
+            // lines without a cycle enclose nothing, and the flood is the expensive part
+            if (hasDrawnCycle(dotMap, side)) {
+                drawn.floodAround(side);
+                for (int cell = 0; cell < dotMap.size(); cell++) {
+                    enclosed[side][cell] = drawn.isInside(cell / width, cell % width);
+                }
+            } else {
+                Arrays.fill(enclosed[side], false);
+            }
+            candidateCycle[side] = addCandidateLines(dotMap, side);
+        }
+        for (int side = 1; side <= 2; side++) {
+            analyseSide(dotMap, side);
+        }
+        analysed = board;
+        GameMetrics.stop(Phase.THREAT_MAP, start);
+    }
+
+    /**
+     * Dots {@code side} still has to place to enclose the cell: 0 if lines between its dots can
+     * do it (or already have), 1 if one more dot can, {@link #FAR} otherwise and for its own dots.
+     */
+    public int getDistance(int side, int row, int col) {
+        return distance[side][row * width + col];
+    }
+
+    /** Whether the cell lies inside a polygon {@code side} has drawn. */
+    public boolean isEnclosed(int side, int row, int col) {
+        return enclosed[side][row * width + col];
+    }
+
+    /**
+     * The cell where a dot of {@code side} would enclose the given cell, the one enclosing the most
+     * free opponent dots if several would; -1 unless the distance is 1.
+     */
+    public int getClosingMove(int side, int row, int col) {
+        return closingMove[side][row * width + col];
+    }
+
+    /** The cell where one dot of {@code side} encloses the most free opponent dots, or -1 if none encloses any. */
+    public int getBestClosingMove(int side) {
+        return bestMove[side];
+    }
+
+    /** Free opponent dots {@link #getBestClosingMove(int)} would enclose. */
+    public int getBestClosingGain(int side) {
+        return bestGain[side];
+    }
+
+    /** Free opponent dots {@code side} could enclose with lines alone. */
+    public int getLinesOnlyThreat(int side) {
+        return freeOpponentsAtZero[side];
+    }
+
+    /**
+     * Whether {@code side} has, or could close with lines alone, a polygon around an opponent dot:
+     * the question {@link PolygonDetector#playerHasPossiblePolygon(DotMap)} answers for the player.
+     */
+    public boolean canEncloseWithLines(int side) {
+        int opponent = 3 - side;
+        for (int cell = 0; cell < distance[side].length; cell++) {
+            if (distance[side][cell] == 0 && analysed.getOwner(cell) == opponent) return true;
+        }
+        return false;
+    }
+
+    // ---------------- Analysis ----------------
+
+    /**
+     * Walls of the side's free dots and of every line it has drawn or could draw between them,
+     * with the dots those lines connect joined in the side's union-find.
+     *
+     * @return whether the lines form a cycle
+     */
+    private boolean addCandidateLines(DotMap dotMap, int side) {
+        ConnectionStore connections = dotMap.getConnections();
+        EdgeIndex edgeIndex = dotMap.getEdgeIndex();
+        for (int cell = 0; cell < dotMap.size(); cell++) parent[side][cell] = cell;
+        Arrays.fill(candidateLines[side], 0);
+        boolean cycle = false;
+        for (int cell = 0; cell < dotMap.size(); cell++) {
+            if (!isFree(dotMap, cell, side)) continue;
+            int row = cell / width;
+            int col = cell % width;
+            candidate.dotPlaced(row, col, side);
+            for (int dir = ConnectionStore.EAST; dir <= ConnectionStore.SOUTH_WEST; dir++) {
+                int other = connections.neighbor(cell, dir);
+                if (other < 0 || !isFree(dotMap, other, side)) continue;
+                int otherRow = other / width;
+                int otherCol = other % width;
+                if (connections.hasEdge(cell, dir) || !edgeIndex.crossesAny(row, col, otherRow, otherCol)) {
+                    candidate.connectionAdded(row, col, otherRow, otherCol, side);
+                    candidateLines[side][cell] |= 1 << dir;
+                    cycle |= !union(side, cell, other);
+                }
+            }
+        }
+        return cycle;
+    }
+
+    /** Whether the side's drawn lines form a cycle; uses the side's union-find as scratch. */
+    private boolean hasDrawnCycle(DotMap dotMap, int side) {
+        ConnectionStore connections = dotMap.getConnections();
+        for (int cell = 0; cell < dotMap.size(); cell++) parent[side][cell] = cell;
+        for (int cell = 0; cell < dotMap.size(); cell++) {
+            if (dotMap.getDot(cell).getPlayer() != side) continue;
+            int lines = connections.mask(cell) & ConnectionStore.FORWARD_MASK;
+            while (lines != 0) {
+                int other = connections.neighbor(cell, Integer.numberOfTrailingZeros(lines));
+                lines &= lines - 1;
+                if (dotMap.getDot(other).getPlayer() == side && !union(side, cell, other)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void analyseSide(DotMap dotMap, int side) {
+        int opponent = 3 - side;
+        int[] sideDistance = distance[side];
+        Arrays.fill(closingMove[side], -1);
+        Arrays.fill(closingGain[side], 0);
+        bestMove[side] = -1;
+        bestGain[side] = 0;
+        freeOpponentsAtZero[side] = 0;
+
+        if (candidateCycle[side]) candidate.floodAround(side);
+        for (int cell = 0; cell < dotMap.size(); cell++) {
+            int owner = dotMap.getDot(cell).getPlayer();
+            if (owner != side && candidateCycle[side] && candidate.isInside(cell / width, cell % width)) {
+                sideDistance[cell] = 0;
+                if (owner == opponent && !dotMap.getDot(cell).isBlocked()) freeOpponentsAtZero[side]++;
+            } else {
+                sideDistance[cell] = FAR;
+            }
+        }
+
+        // counting sort of the closing cells, most adjacent free opponent dots first
+        int found = 0;
+        Arrays.fill(scoreCounts, 0);
+        for (int cell = 0; cell < dotMap.size(); cell++) {
+            if (dotMap.getDot(cell).getPlayer() != 0 || enclosed[opponent][cell]) continue;
+            if (closingLinks(dotMap, cell, side) == 0) continue;
+            candidates[found] = cell;
+            scores[found] = adjacentTargets(dotMap, cell, side);
+            scoreCounts[scores[found]]++;
+            found++;
+        }
+        // then scoreCounts[s + 1] is where the cells scoring s start
+        for (int score = ConnectionStore.DIRECTIONS; score >= 0; score--) {
+            scoreCounts[score] += scoreCounts[score + 1];
+        }
+        for (int i = 0; i < found; i++) {
+            ordered[scoreCounts[scores[i] + 1]++] = candidates[i];
+        }
+        for (int i = 0; i < Math.min(found, MAX_TRIALS); i++) {
+            int cell = ordered[i];
+            tryClosingMove(dotMap, cell, side, closingLinks(dotMap, cell, side));
+        }
+        // only now, so that every trial compares against the cells enclosable without a dot
+        for (int cell = 0; cell < dotMap.size(); cell++) {
+            if (closingMove[side][cell] >= 0) sideDistance[cell] = 1;
+        }
+    }
+
+    /**
+     * Collects in {@link #links} the free dots of {@code side} a dot at {@code cell} could be
+     * joined to without crossing a drawn line.
+     *
+     * A loop through the new dot encloses something new only if it joins two dots already
+     * connected to each other, and not merely across a triangle with a line between them: a
+     * triangle on the grid holds no dot.
+     *
+     * @return how many there are, or 0 if no new loop closes
+     */
+    private int closingLinks(DotMap dotMap, int cell, int side) {
+        ConnectionStore connections = dotMap.getConnections();
+        EdgeIndex edgeIndex = dotMap.getEdgeIndex();
+        int row = cell / width;
+        int col = cell % width;
+        int count = 0;
+        boolean closes = false;
+        for (int dir = 0; dir < ConnectionStore.DIRECTIONS; dir++) {
+            int other = connections.neighbor(cell, dir);
+            if (other < 0 || !isFree(dotMap, other, side)) continue;
+            if (edgeIndex.crossesAny(row, col, other / width, other % width)) continue;
+            int root = find(side, other);
+            for (int i = 0; i < count && !closes; i++) {
+                closes = roots[i] == root && !isTriangle(dotMap, links[i], other);
+            }
+            roots[count] = root;
+            links[count++] = other;
+        }
+        return closes ? count : 0;
+    }
+
+    /** Floods the window around {@code cell} with the side's candidate lines and the new dot's links. */
+    private void tryClosingMove(DotMap dotMap, int cell, int side, int linkCount) {
+        ConnectionStore connections = dotMap.getConnections();
+        int row = cell / width;
+        int col = cell % width;
+        int top = Math.max(0, row - WINDOW);
+        int bottom = Math.min(height - 1, row + WINDOW);
+        int left = Math.max(0, col - WINDOW);
+        int right = Math.min(width - 1, col + WINDOW);
+        trial.clear();
+        for (int r = top; r <= bottom; r++) {
+            for (int c = left; c <= right; c++) {
+                int from = r * width + c;
+                if (!isFree(dotMap, from, side)) continue;
+                trial.dotPlaced(r - top, c - left, side);
+                int lines = candidateLines[side][from];
+                while (lines != 0) {
+                    int to = connections.neighbor(from, Integer.numberOfTrailingZeros(lines));
+                    lines &= lines - 1;
+                    int toRow = to / width;
+                    int toCol = to % width;
+                    if (toRow > bottom || toCol < left || toCol > right) continue;
+                    trial.connectionAdded(r - top, c - left, toRow - top, toCol - left, side);
+                }
+            }
+        }
+        trial.dotPlaced(row - top, col - left, side);
+        for (int i = 0; i < linkCount; i++) {
+            trial.connectionAdded(row - top, col - left, links[i] / width - top, links[i] % width - left, side);
+        }
+        trial.floodAround(side);
+
+        int opponent = 3 - side;
+        int found = 0;
+        int gain = 0;
+        for (int r = top; r <= bottom; r++) {
+            for (int c = left; c <= right; c++) {
+                int other = r * width + c;
+                if (distance[side][other] != FAR || other == cell || !trial.isInside(r - top, c - left)) continue;
+                Dot dot = dotMap.getDot(other);
+                if (dot.getPlayer() == side) continue;
+                newlyEnclosed[found++] = other;
+                if (dot.getPlayer() == opponent && !dot.isBlocked()) gain++;
+            }
+        }
+        for (int i = 0; i < found; i++) {
+            int other = newlyEnclosed[i];
+            if (closingMove[side][other] < 0 || gain > closingGain[side][other]) {
+                closingMove[side][other] = cell;
+                closingGain[side][other] = gain;
+            }
+        }
+        if (gain > bestGain[side]) {
+            bestGain[side] = gain;
+            bestMove[side] = cell;
+        }
+    }
+
+    /** Free opponent dots next to the cell that {@code side} cannot yet enclose with lines alone. */
+    private int adjacentTargets(DotMap dotMap, int cell, int side) {
+        ConnectionStore connections = dotMap.getConnections();
+        int targets = 0;
+        for (int dir = 0; dir < ConnectionStore.DIRECTIONS; dir++) {
+            int other = connections.neighbor(cell, dir);
+            if (other >= 0 && distance[side][other] == FAR && isFree(dotMap, other, 3 - side)) targets++;
+        }
+        return targets;
+    }
+
+    /** Whether two neighbours of a cell are next to each other and joined by a line drawn or possible. */
+    private boolean isTriangle(DotMap dotMap, int a, int b) {
+        int rowA = a / width;
+        int colA = a % width;
+        int rowB = b / width;
+        int colB = b % width;
+        if (Math.abs(rowA - rowB) > 1 || Math.abs(colA - colB) > 1) return false;
+        return dotMap.getConnections().hasEdgeBetween(a, b) || !dotMap.getEdgeIndex().crossesAny(rowA, colA, rowB, colB);
+    }
+
+    private static boolean isFree(DotMap dotMap, int cell, int side) {
+        Dot dot = dotMap.getDot(cell);
+        return dot.getPlayer() == side && !dot.isBlocked();
+    }
+
+    // ---------------- Union-find ----------------
+
+    private int find(int side, int cell) {
+        int[] parents = parent[side];
+        while (parents[cell] != cell) {
+            parents[cell] = parents[parents[cell]];
+            cell = parents[cell];
+        }
+        return cell;
+    }
+
+    /** @return false if the two were already connected */
+    private boolean union(int side, int a, int b) {
+        int rootA = find(side, a);
+        int rootB = find(side, b);
+        if (rootA == rootB) return false;
+        parent[side][rootA] = rootB;
+        return true;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        drawn = new BitboardCaptureEngine(width, height);
+        candidate = new BitboardCaptureEngine(width, height);
+        trial = new BitboardCaptureEngine(Math.min(width, 2 * WINDOW + 1), Math.min(height, 2 * WINDOW + 1));
+        for (int side = 1; side <= 2; side++) {
+            distance[side] = new int[size];
+            closingMove[side] = new int[size];
+            closingGain[side] = new int[size];
+            enclosed[side] = new boolean[size];
+            parent[side] = new int[size];
+            candidateLines[side] = new int[size];
+        }
+        newlyEnclosed = new int[size];
+        candidates = new int[size];
+        ordered = new int[size];
+        scores = new int[size];
+        analysed = null;
+    }
+}
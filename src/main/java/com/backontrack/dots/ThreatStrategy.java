@@ -0,0 +1,69 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Event;
+import com.backontrack.dots.GameLog.Level;
+import com.backontrack.dots.GameMetrics.Counter;
+
+import java.util.Random;
+
+/**
+ * Plays the best-scored cell near the last moves, as ranked by a {@link MoveGenerator}.
+ *
+ * Where {@link HeuristicStrategy} scans the whole board for lonely dots and retries random cells
+ * until it finds an empty one, this strategy scores only the few dozen empty cells around the
+ * opponent's last dot and its own, for the capture threats a dot there makes and the escapes it
+ * gives its own dots. The generator keeps its frontier of playable cells between moves, so that
+ * scoring costs the same on a full board as on an empty one. It can play either side; select it
+ * with {@link GameEngine#setComputerStrategy(MoveStrategy)} or {@code --a=threat} in
+ * {@link TournamentRunner}.
+ *
+ * Before scoring, a {@link ThreatMap} of the position is consulted. A cell where one opponent dot
+ * would close a polygon around free dots of the mover is taken first, to deny it; otherwise a
+ * cell where one dot of the mover closes a polygon around the opponent's is played. Defence comes
+ * first because a dot only closes a polygon once {@link GameEngine} has drawn the lines to it,
+ * which its connection rule does not always do, while an occupied cell is denied for good. The
+ * analysis floods the whole board a few times and a small window per closing cell tried, well
+ * under a millisecond for most positions on the classic board.
+ *
+ * A strategy keeps a generator in step with one game at a time and is not thread-safe.
+ */
+public class ThreatStrategy implements MoveStrategy {
+
+    private final Random random;
+    private final MoveGenerator generator = new MoveGenerator();
+    private final ThreatMap threats = new ThreatMap();
+
+    public ThreatStrategy(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public Dot chooseMove(DotMap dotMap, int owner, int lastRow, int lastCol) {
+        threats.update(dotMap);
+        int opponent = 3 - owner;
+        int defence = threats.getBestClosingMove(opponent);
+        if (defence >= 0 && !threats.isEnclosed(opponent, defence / dotMap.getWidth(), defence % dotMap.getWidth())) {
+            GameLog.event(Level.TRACE, Event.CANDIDATE, defence / dotMap.getWidth(), defence % dotMap.getWidth());
+            return dotMap.getDot(defence);
+        }
+        int attack = threats.getBestClosingMove(owner);
+        if (attack >= 0) {
+            GameLog.event(Level.TRACE, Event.CANDIDATE, attack / dotMap.getWidth(), attack % dotMap.getWidth());
+            return dotMap.getDot(attack);
+        }
+
+        generator.sync(dotMap);
+        int cell = generator.bestMove(dotMap, owner, lastRow, lastCol, random);
+        GameMetrics.add(Counter.CANDIDATES_SCORED, generator.getConsidered());
+        if (cell >= 0) {
+            GameLog.event(Level.TRACE, Event.CANDIDATE, cell / dotMap.getWidth(), cell % dotMap.getWidth());
+            return dotMap.getDot(cell);
+        }
+        if (dotMap.getDotCount(0) == dotMap.size()) {
+            // opening move: the middle of the board
+            return dotMap.getDot(dotMap.getHeight() / 2, dotMap.getWidth() / 2);
+        }
+        // every cell near a dot is enclosed by the opponent
+        return dotMap.findFirstAvailableDot();
+    }
+}
@@ -0,0 +1,353 @@
+package com.backontrack.dots;
+
+import com.backontrack.dots.GameLog.Level;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import static com.backontrack.dots.Constants.*;
+
+/**
+ * Headless self-play: plays many games between two move strategies in parallel and reports win
+ * rates, captures, move latency percentiles and throughput.
+ *
+ * Every game runs on its own {@link GameEngine} with its own strategy instances, seeded from the
+ * tournament seed and the game number, so a tournament is reproducible whatever the thread count
+ * (MCTS is limited by playouts, not time, for the same reason). Games are spread over a
+ * {@link ForkJoinPool}; strategy A moves first in even games and second in odd ones. Both sides
+ * play like the computer: their dots are connected automatically and the capture engine scores
+ * the enclosures. A game ends when the board is full, a strategy has no move or the move limit
+ * is reached; the side that captured more dots wins. With an archive set, the {@link GameRecord} of
+ * every game is appended to it as the game ends (so in completion order), after any records the
+ * file already holds.
+ *
+ * <pre>
+ * gradle tournament --args='--games=200 --a=heuristic --b=mcts:2000'
+ * </pre>
+ *
+ * Options: {@code --games}, {@code --threads}, {@code --width}, {@code --height},
+ * {@code --max-moves}, {@code --seed}, {@code --a}, {@code --b} and {@code --record} (archive
+ * file); a strategy is {@code heuristic}, {@code threat} or {@code mcts[:playouts]}.
+ */
+public final class TournamentRunner {
+
+    private static final int DEFAULT_MCTS_PLAYOUTS = 2000;
+    private static final long MCTS_TIME_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int games;
+    private final int threads;
+    private final int width;
+    private final int height;
+    private final int maxMoves;
+    private final long seed;
+    private final String nameA;
+    private final String nameB;
+    private final LongFunction<MoveStrategy> strategyA;
+    private final LongFunction<MoveStrategy> strategyB;
+    private Path archive;
+
+    public TournamentRunner(int games, int threads, int width, int height, int maxMoves, long seed,
+                            String strategyA, String strategyB) {
+        if (games <= 0 || threads <= 0 || maxMoves <= 0) {
+            throw new IllegalArgumentException("Games, threads and move limit must be positive");
+        }
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("The board must be at least 2x2, not " + width + "x" + height);
+        }
+        this.games = games;
+        this.threads = threads;
+        this.width = width;
+        this.height = height;
+        this.maxMoves = maxMoves;
+        this.seed = seed;
+        this.nameA = strategyA;
+        this.nameB = strategyB;
+        this.strategyA = strategyFactory(strategyA);
+        this.strategyB = strategyFactory(strategyB);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty("dots.log.level") == null) {
+            // every move would be logged at INFO otherwise
+            GameLog.setLevel(Level.WARN);
+        }
+
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int width = GRID_SIZE_X;
+        int height = GRID_SIZE_Y;
+        int maxMoves = -1;
+        long seed = 1;
+        String a = "heuristic";
+        String b = "mcts";
+        String record = null;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "games": games = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "width": width = Integer.parseInt(value); break;
+                case "height": height = Integer.parseInt(value); break;
+                case "max-moves": maxMoves = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "a": a = value; break;
+                case "b": b = value; break;
+                case "record": record = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (maxMoves < 0) {
+            maxMoves = width * height;
+        }
+
+        TournamentRunner runner = new TournamentRunner(games, threads, width, height, maxMoves, seed, a, b);
+        if (record != null) {
+            runner.setArchive(Paths.get(record));
+        }
+        System.out.print(runner.run().report());
+        System.out.print(GameMetrics.snapshot().format());
+    }
+
+    /** Appends the record of every game to {@code archive}; null (the default) keeps no records. */
+    public void setArchive(Path archive) {
+        this.archive = archive;
+    }
+
+    /** Plays the whole tournament and waits for it. */
+    public Result run() throws InterruptedException {
+        DataOutputStream out = null;
+        if (archive != null) {
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archive,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open game archive " + archive, e);
+            }
+        }
+        DataOutputStream records = out;
+        List<Callable<GameResult>> tasks = new ArrayList<>(games);
+        for (int game = 0; game < games; game++) {
+            int number = game;
+            tasks.add(() -> play(number, records));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<GameResult> results = new ArrayList<>(games);
+            for (Future<GameResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return new Result(this, results, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tournament game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            if (records != null) {
+                try {
+                    records.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot write game archive " + archive, e);
+                }
+            }
+        }
+    }
+
+    // ---------------- One game ----------------
+
+    private GameResult play(int game, DataOutputStream records) throws IOException {
+        SplittableRandom seeds = new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L);
+        GameEngine engine = new GameEngine(width, height, new Random(seeds.nextLong()));
+        MoveStrategy a = strategyA.apply(seeds.nextLong());
+        MoveStrategy b = strategyB.apply(seeds.nextLong());
+        // the player always moves first
+        int sideA = game % 2 == 0 ? PLAYER : COMPUTER;
+
+        GameResult result = new GameResult(maxMoves);
+        try {
+            int side = PLAYER;
+            for (int move = 0; move < maxMoves; move++) {
+                boolean isA = side == sideA;
+                long started = System.nanoTime();
+                Dot dot = engine.chooseMove(side, isA ? a : b);
+                long latency = System.nanoTime() - started;
+                if (dot == null) {
+                    break;
+                }
+                if (engine.playMove(side, dot) == null) {
+                    throw new IllegalStateException((isA ? nameA : nameB) + " chose a taken cell " + dot);
+                }
+                if (isA) {
+                    result.latenciesA[result.movesA++] = latency;
+                } else {
+                    result.latenciesB[result.movesB++] = latency;
+                }
+                side = 3 - side;
+            }
+        } finally {
+            shutdown(a);
+            shutdown(b);
+        }
+
+        result.capturesA = engine.getState().getCaptures(sideA);
+        result.capturesB = engine.getState().getCaptures(3 - sideA);
+        if (records != null) {
+            synchronized (records) {
+                engine.getRecord().writeTo(records);
+            }
+        }
+        return result;
+    }
+
+    private static void shutdown(MoveStrategy strategy) {
+        if (strategy instanceof MctsStrategy) {
+            ((MctsStrategy) strategy).shutdown();
+        }
+    }
+
+    /** Builds a factory of seeded strategies from {@code heuristic}, {@code threat} or {@code mcts[:playouts]}. */
+    static LongFunction<MoveStrategy> strategyFactory(String spec) {
+        String[] parts = spec.split(":", 2);
+        switch (parts[0]) {
+            case "heuristic":
+                return seed -> new HeuristicStrategy(new Random(seed));
+            case "threat":
+                return seed -> new ThreatStrategy(new Random(seed));
+            case "mcts":
+                int playouts = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_MCTS_PLAYOUTS;
+                // one search thread per game: the games themselves keep the cores busy
+                return seed -> new MctsStrategy(MCTS_TIME_BUDGET_MILLIS, playouts, 1, seed);
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + spec);
+        }
+    }
+
+    private static final class GameResult {
+        final long[] latenciesA;
+        final long[] latenciesB;
+        int movesA;
+        int movesB;
+        int capturesA;
+        int capturesB;
+
+        GameResult(int maxMoves) {
+            latenciesA = new long[(maxMoves + 1) / 2];
+            latenciesB = new long[(maxMoves + 1) / 2];
+        }
+    }
+
+    /** Totals of a finished tournament. */
+    public static final class Result {
+        private final TournamentRunner runner;
+        private final int winsA;
+        private final int winsB;
+        private final long capturesA;
+        private final long capturesB;
+        private final long[] latenciesA;
+        private final long[] latenciesB;
+        private final long elapsedNanos;
+
+        private Result(TournamentRunner runner, List<GameResult> games, long elapsedNanos) {
+            this.runner = runner;
+            this.elapsedNanos = elapsedNanos;
+            int winsA = 0, winsB = 0, movesA = 0, movesB = 0;
+            long capturesA = 0, capturesB = 0;
+            for (GameResult game : games) {
+                if (game.capturesA > game.capturesB) winsA++;
+                if (game.capturesB > game.capturesA) winsB++;
+                capturesA += game.capturesA;
+                capturesB += game.capturesB;
+                movesA += game.movesA;
+                movesB += game.movesB;
+            }
+            this.winsA = winsA;
+            this.winsB = winsB;
+            this.capturesA = capturesA;
+            this.capturesB = capturesB;
+
+            latenciesA = new long[movesA];
+            latenciesB = new long[movesB];
+            int a = 0, b = 0;
+            for (GameResult game : games) {
+                System.arraycopy(game.latenciesA, 0, latenciesA, a, game.movesA);
+                System.arraycopy(game.latenciesB, 0, latenciesB, b, game.movesB);
+                a += game.movesA;
+                b += game.movesB;
+            }
+            Arrays.sort(latenciesA);
+            Arrays.sort(latenciesB);
+        }
+
+        public int getWinsA() {
+            return winsA;
+        }
+
+        public int getWinsB() {
+            return winsB;
+        }
+
+        public int getDraws() {
+            return runner.games - winsA - winsB;
+        }
+
+        public double getGamesPerSecond() {
+            return runner.games / (elapsedNanos / 1e9);
+        }
+
+        /** Move latency of strategy A at {@code percentile} (0-100), in nanoseconds; nearest rank. */
+        public long getLatencyA(double percentile) {
+            return percentile(latenciesA, percentile);
+        }
+
+        public long getLatencyB(double percentile) {
+            return percentile(latenciesB, percentile);
+        }
+
+        public String report() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%d games on %dx%d, %d threads, seed %d%n",
+                    runner.games, runner.width, runner.height, runner.threads, runner.seed));
+            line(out, "A " + runner.nameA, winsA, capturesA, latenciesA);
+            line(out, "B " + runner.nameB, winsB, capturesB, latenciesB);
+            out.append(String.format("  draws %5.1f%%%n", 100.0 * getDraws() / runner.games));
+            out.append(String.format("  %.2f games/s (%.1f s)%n", getGamesPerSecond(), elapsedNanos / 1e9));
+            return out.toString();
+        }
+
+        private void line(StringBuilder out, String name, int wins, long captures, long[] latencies) {
+            out.append(String.format("  %-16s wins %5.1f%%  captures/game %6.2f  move ms p50 %.3f p90 %.3f p99 %.3f max %.3f%n",
+                    name, 100.0 * wins / runner.games, (double) captures / runner.games,
+                    percentile(latencies, 50) / 1e6, percentile(latencies, 90) / 1e6,
+                    percentile(latencies, 99) / 1e6, percentile(latencies, 100) / 1e6));
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.backontrack.dots;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, lock-free cache from 64-bit position hashes (see {@link Zobrist}) to 64-bit values,
+ * safe to share between search threads.
+ *
+ * Each slot is two words of one {@link AtomicLongArray}: {@code key ^ value} and {@code value}.
+ * Writers store both words without locking. A reader accepts a slot only if the two words XOR
+ * back to the key it probes, so a slot torn by two concurrent writers reads as a miss instead of
+ * returning another position's value. A new entry always replaces the one in its slot, so the
+ * table never grows past its capacity; an evicted or torn entry only costs a re-evaluation.
+ *
+ * The meaning of the value is up to the caller; callers sharing a table must agree on it.
+ */
+public class TranspositionTable {
+
+    /** Mixed into the check word so that a never-written slot (all zeros) does not match key 0. */
+    private static final long EMPTY_GUARD = 0xA5A5_5A5A_C3C3_3C3CL;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** @param capacity number of entries, rounded up to a power of two */
+    public TranspositionTable(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^29: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.slots = new AtomicLongArray(2 * size);
+        this.mask = size - 1;
+    }
+
+    /** Returns the value stored for {@code key}, or {@code missing} if the table does not hold it. */
+    public long get(long key, long missing) {
+        int slot = slotOf(key);
+        long check = slots.getOpaque(slot);
+        long value = slots.getOpaque(slot + 1);
+        if ((check ^ value ^ EMPTY_GUARD) == key) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        return missing;
+    }
+
+    public void put(long key, long value) {
+        int slot = slotOf(key);
+        slots.setOpaque(slot, key ^ value ^ EMPTY_GUARD);
+        slots.setOpaque(slot + 1, value);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Empties the table. Not atomic with respect to concurrent writers. */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) slots.setOpaque(i, 0L);
+        hits.reset();
+        misses.reset();
+    }
+
+    private int slotOf(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) << 1;
+    }
+}
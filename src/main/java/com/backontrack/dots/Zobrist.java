@@ -0,0 +1,78 @@
+package com.backontrack.dots;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of a board position.
+ *
+ * A position hash is the XOR of one key per owned cell (per owner), one key per drawn line and
+ * one key per blocked dot. Every change to the board flips exactly one key, so {@link DotMap}
+ * and {@link PlayoutBoard} keep their hash current with a single XOR per change, and undoing a
+ * change restores the previous hash. The empty board hashes to 0.
+ *
+ * Keys are drawn from a fixed seed, so all boards of the same size share the same keys: hashes
+ * can be compared across boards, threads and runs, and stored in a shared {@link TranspositionTable}.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    /** Sizes whose keys are kept; keys for any other size are drawn again, identical, when asked for. */
+    private static final int CACHED_SIZES = 16;
+    private static final Map<Long, Zobrist> BY_SIZE = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Zobrist>(CACHED_SIZES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Zobrist> eldest) {
+                    return size() > CACHED_SIZES;
+                }
+            });
+
+    /** Lines are keyed on the endpoint they leave in one of these directions: E, SE, S, SW. */
+    private static final int FORWARD_DIRECTIONS = 4;
+
+    private final int width;
+    private final long[] ownerKeys;
+    private final long[] edgeKeys;
+    private final long[] blockedKeys;
+
+    private Zobrist(int width, int height) {
+        this.width = width;
+        int cells = width * height;
+        SplittableRandom random = new SplittableRandom(SEED);
+        this.ownerKeys = new long[2 * cells];
+        this.edgeKeys = new long[FORWARD_DIRECTIONS * cells];
+        this.blockedKeys = new long[cells];
+        for (int i = 0; i < ownerKeys.length; i++) ownerKeys[i] = random.nextLong();
+        for (int i = 0; i < edgeKeys.length; i++) edgeKeys[i] = random.nextLong();
+        for (int i = 0; i < blockedKeys.length; i++) blockedKeys[i] = random.nextLong();
+    }
+
+    /**
+     * The keys for boards of the given size. Instances are immutable, and those of the most
+     * recently used sizes are cached; the cache is bounded, so a server that lets clients pick the
+     * board size does not keep every size forever.
+     */
+    public static Zobrist forSize(int width, int height) {
+        return BY_SIZE.computeIfAbsent(((long) width << 32) | height, size -> new Zobrist(width, height));
+    }
+
+    /** Key for {@code cell} owned by {@code owner} (1 or 2); 0 for an empty cell. */
+    public long owner(int cell, int owner) {
+        return owner == 0 ? 0L : ownerKeys[2 * cell + owner - 1];
+    }
+
+    /** Key for the line leaving {@code cell} in {@code direction} (a {@link ConnectionStore} direction). */
+    public long edge(int cell, int direction) {
+        if (direction >= FORWARD_DIRECTIONS) {
+            cell += ConnectionStore.rowOffset(direction) * width + ConnectionStore.colOffset(direction);
+            direction = ConnectionStore.opposite(direction);
+        }
+        return edgeKeys[FORWARD_DIRECTIONS * cell + direction];
+    }
+
+    public long blocked(int cell) {
+        return blockedKeys[cell];
+    }
+}
@@ -0,0 +1,175 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The publisher's side of the {@link Flow} contract: nothing is delivered beyond demand, a slow
+ * subscriber gets merged batches that still chain version to version, a late subscriber starts
+ * from the whole position, and a non-positive request ends the subscription with an error.
+ * Delivery runs on the calling thread, so every call below has been delivered when it returns.
+ */
+class BoardChangePublisherTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    @Test
+    void deliversNoMoreThanRequested() {
+        BoardChangePublisher publisher = new BoardChangePublisher(WIDTH, HEIGHT, Runnable::run, 16);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        List<PersistentBoard> versions = versions(4);
+        for (PersistentBoard version : versions) publisher.publish(version);
+
+        assertEquals(1, recorder.batches.size());
+        recorder.subscription.request(2);
+        assertEquals(3, recorder.batches.size());
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(4, recorder.batches.size());
+        assertChained(recorder.batches, PersistentBoard.empty(WIDTH, HEIGHT), versions.get(3));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, recorder.batches.get(i).getSequence());
+            assertEquals(1, recorder.batches.get(i).getActions());
+        }
+        assertEquals(0, publisher.getCoalesced());
+    }
+
+    @Test
+    void mergesIntoTheLastBatchWhenTheBufferIsFull() {
+        BoardChangePublisher publisher = new BoardChangePublisher(WIDTH, HEIGHT, Runnable::run, 2);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        List<PersistentBoard> versions = versions(5);
+        for (PersistentBoard version : versions) publisher.publish(version);
+        assertEquals(3, publisher.getCoalesced());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(2, recorder.batches.size());
+        BoardChangePublisher.Batch merged = recorder.batches.get(1);
+        assertEquals(4, merged.getActions());
+        assertEquals(5, merged.getSequence());
+        assertSame(versions.get(0), merged.getBefore());
+        assertSame(versions.get(4), merged.getAfter());
+        assertEquals(BoardChange.between(versions.get(0), versions.get(4)).toString(), merged.getChanges().toString());
+        assertChained(recorder.batches, PersistentBoard.empty(WIDTH, HEIGHT), versions.get(4));
+    }
+
+    @Test
+    void lateSubscriberStartsFromTheWholePosition() {
+        BoardChangePublisher publisher = new BoardChangePublisher(WIDTH, HEIGHT, Runnable::run, 16);
+        List<PersistentBoard> versions = versions(3);
+        // published with nobody subscribed: nothing is compared, but the position is remembered
+        for (PersistentBoard version : versions) assertFalse(publisher.publish(version));
+
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        assertEquals(1, recorder.batches.size());
+        BoardChangePublisher.Batch opening = recorder.batches.get(0);
+        assertEquals(0, opening.getActions());
+        assertSame(versions.get(2), opening.getAfter());
+        assertEquals(BoardChange.between(PersistentBoard.empty(WIDTH, HEIGHT), versions.get(2)).toString(),
+                opening.getChanges().toString());
+
+        PersistentBoard next = versions.get(2).withOwner(WIDTH * HEIGHT - 1, Constants.COMPUTER);
+        assertTrue(publisher.publish(next));
+        assertChained(recorder.batches, PersistentBoard.empty(WIDTH, HEIGHT), next);
+    }
+
+    @Test
+    void nonPositiveRequestEndsTheSubscriptionWithAnError() {
+        BoardChangePublisher publisher = new BoardChangePublisher(WIDTH, HEIGHT, Runnable::run, 16);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        assertEquals(1, publisher.getSubscriberCount());
+
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.getSubscriberCount());
+        assertFalse(publisher.publish(versions(1).get(0)));
+        recorder.subscription.request(1);
+        assertTrue(recorder.batches.isEmpty());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    void closeCompletesAfterTheHeldBatches() {
+        BoardChangePublisher publisher = new BoardChangePublisher(WIDTH, HEIGHT, Runnable::run, 16);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        for (PersistentBoard version : versions(2)) publisher.publish(version);
+        publisher.close();
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(2, recorder.batches.size());
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+    }
+
+    /** Successive versions of one board, each placing one more dot. */
+    private static List<PersistentBoard> versions(int count) {
+        List<PersistentBoard> versions = new ArrayList<>();
+        PersistentBoard board = PersistentBoard.empty(WIDTH, HEIGHT);
+        for (int i = 0; i < count; i++) {
+            board = board.withOwner(i * 7 % (WIDTH * HEIGHT), i % 2 == 0 ? Constants.PLAYER : Constants.COMPUTER);
+            versions.add(board);
+        }
+        return versions;
+    }
+
+    private static void assertChained(List<BoardChangePublisher.Batch> batches, PersistentBoard first, PersistentBoard last) {
+        PersistentBoard expected = first;
+        for (BoardChangePublisher.Batch batch : batches) {
+            assertSame(expected, batch.getBefore());
+            expected = batch.getAfter();
+        }
+        assertSame(last, expected);
+    }
+
+    /** Records what it is sent, and requests {@code initial} batches when subscribed. */
+    private static final class Recorder implements Flow.Subscriber<BoardChangePublisher.Batch> {
+        private final long initial;
+        final List<BoardChangePublisher.Batch> batches = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            assertNull(this.subscription, "subscribed twice");
+            this.subscription = subscription;
+            if (initial > 0) subscription.request(initial);
+        }
+
+        @Override
+        public void onNext(BoardChangePublisher.Batch batch) {
+            assertNull(error);
+            assertFalse(completed);
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            assertNull(error);
+            assertFalse(completed);
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            assertNull(error);
+            assertFalse(completed);
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The three ways of finding captured dots must agree: {@link IncrementalCaptureEngine}, fed one
+ * dot or line at a time as the game plays, {@link PolygonDetector#updateBlockedDots(DotMap)} and
+ * {@link BitboardCaptureEngine#updateBlockedDots(DotMap)}, both recomputing from the final board.
+ */
+class CaptureEngineEquivalenceTest {
+
+    private static final int BOARDS = 300;
+
+    @Test
+    void incrementalEngineMatchesDetector() {
+        for (int seed = 0; seed < BOARDS; seed++) {
+            DotMap live = randomGame(seed);
+            DotMap detected = copyOf(live);
+            new PolygonDetector().updateBlockedDots(detected);
+            assertSameBlocked(detected, live, "incremental engine, seed " + seed);
+        }
+    }
+
+    @Test
+    void bitboardEngineMatchesDetector() {
+        for (int seed = 0; seed < BOARDS; seed++) {
+            DotMap board = randomGame(seed);
+            DotMap detected = copyOf(board);
+            new PolygonDetector().updateBlockedDots(detected);
+            DotMap flooded = copyOf(board);
+            new BitboardCaptureEngine(board.getWidth(), board.getHeight()).updateBlockedDots(flooded);
+            assertSameBlocked(detected, flooded, "bitboard engine, seed " + seed);
+        }
+    }
+
+    /**
+     * Random dots of both owners and random lines between same-owner neighbours, crossing
+     * diagonals included, with blocked flags kept by an {@link IncrementalCaptureEngine}.
+     */
+    private static DotMap randomGame(long seed) {
+        Random random = new Random(seed);
+        int width = 8 + random.nextInt(10);
+        int height = 8 + random.nextInt(10);
+        DotMap dotMap = new DotMap(width, height);
+        dotMap.createDotMap();
+        IncrementalCaptureEngine engine = new IncrementalCaptureEngine(dotMap);
+        ConnectionStore connections = dotMap.getConnections();
+        for (int step = 0; step < 2 * width * height; step++) {
+            Dot dot = dotMap.getDot(random.nextInt(dotMap.size()));
+            if (random.nextBoolean()) {
+                if (dot.getPlayer() != 0) continue;
+                if (random.nextBoolean()) {
+                    dotMap.attributeDotToPlayer(dot);
+                } else {
+                    dotMap.attributeDotToComputer(dot);
+                }
+                engine.dotPlaced(dot);
+            } else {
+                int other = connections.neighbor(dotMap.indexOf(dot), random.nextInt(ConnectionStore.DIRECTIONS));
+                if (other < 0 || dot.getPlayer() == 0 || dotMap.getDot(other).getPlayer() != dot.getPlayer()) continue;
+                if (dotMap.addConnection(dot, dotMap.getDot(other))) {
+                    engine.connectionAdded(dot, dotMap.getDot(other));
+                }
+            }
+        }
+        return dotMap;
+    }
+
+    /** The same dots and lines, without blocked flags. */
+    private static DotMap copyOf(DotMap board) {
+        DotMap copy = new DotMap(board.getWidth(), board.getHeight());
+        copy.createDotMap();
+        for (int i = 0; i < board.size(); i++) {
+            int owner = board.getDot(i).getPlayer();
+            if (owner == 1) copy.attributeDotToPlayer(copy.getDot(i));
+            if (owner == 2) copy.attributeDotToComputer(copy.getDot(i));
+        }
+        board.getConnections().forEachEdge((from, to) -> copy.addConnection(copy.getDot(from), copy.getDot(to)));
+        return copy;
+    }
+
+    private static void assertSameBlocked(DotMap expected, DotMap actual, String what) {
+        for (int i = 0; i < expected.size(); i++) {
+            Dot dot = expected.getDot(i);
+            assertEquals(dot.isBlocked(), actual.getDot(i).isBlocked(),
+                    what + ": dot (" + dot.getRow() + ", " + dot.getCol() + ")");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A reply's deadline may fire at any moment, but it must only ever interrupt the reply's own
+ * search: never the placement and callback that follow it, nor whatever the pooled thread runs next.
+ */
+class ComputerMoveServiceTest {
+
+    @Test
+    void deadlineAtTheEndOfTheSearchDoesNotOutliveIt() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(SlowToInterrupt::new);
+        CapturingWatchdog watchdog = new CapturingWatchdog();
+        try {
+            GameEngine game = new GameEngine(20, 20, new Random(0));
+            ComputerMoveService service =
+                    new ComputerMoveService(game, 60_000, 0, Runnable::run, executor, watchdog);
+            Random random = new Random(1);
+            Thread[] firing = new Thread[1];
+
+            game.setComputerStrategy((dotMap, owner, lastRow, lastCol) -> {
+                Dot choice = randomEmptyDot(dotMap, random);
+                // the deadline fires as the search returns, and is slow to reach the thread
+                SlowToInterrupt self = (SlowToInterrupt) Thread.currentThread();
+                self.arm();
+                firing[0] = new Thread(watchdog.deadline);
+                firing[0].start();
+                self.awaitInterruptCall();
+                return choice;
+            });
+
+            for (int i = 0; i < 5; i++) {
+                AtomicBoolean interruptedAfterSearch = new AtomicBoolean();
+                CountDownLatch replied = new CountDownLatch(1);
+                service.requestReply(dot -> {
+                    SlowToInterrupt self = (SlowToInterrupt) Thread.currentThread();
+                    self.callbackStarted.countDown();
+                    try {
+                        firing[0].join(5_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    interruptedAfterSearch.set(Thread.currentThread().isInterrupted());
+                    replied.countDown();
+                });
+                assertTrue(replied.await(10, TimeUnit.SECONDS), "reply " + i);
+                assertFalse(interruptedAfterSearch.get(), "the deadline of reply " + i + " outlived its search");
+            }
+        } finally {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    private static Dot randomEmptyDot(DotMap dotMap, Random random) {
+        for (int attempt = 0; attempt < 10_000; attempt++) {
+            Dot dot = dotMap.getDot(random.nextInt(dotMap.size()));
+            if (dot.getPlayer() == 0) return dot;
+        }
+        return null;
+    }
+
+    /**
+     * A pool thread on which an interrupt from another thread takes effect late: only once the
+     * reply's callback has started, or after a while if it does not start.
+     */
+    private static final class SlowToInterrupt extends Thread {
+        volatile CountDownLatch interruptCalled = new CountDownLatch(1);
+        volatile CountDownLatch callbackStarted = new CountDownLatch(1);
+
+        SlowToInterrupt(Runnable runnable) {
+            super(runnable, "slow-to-interrupt");
+            setDaemon(true);
+        }
+
+        void arm() {
+            interruptCalled = new CountDownLatch(1);
+            callbackStarted = new CountDownLatch(1);
+        }
+
+        void awaitInterruptCall() {
+            try {
+                interruptCalled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void interrupt() {
+            if (Thread.currentThread() != this) {
+                CountDownLatch started = callbackStarted;
+                interruptCalled.countDown();
+                try {
+                    started.await(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.interrupt();
+        }
+    }
+
+    /** Holds the deadline of the latest reply instead of running it. */
+    private static final class CapturingWatchdog extends ScheduledThreadPoolExecutor {
+        volatile Runnable deadline;
+
+        CapturingWatchdog() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            deadline = command;
+            return super.schedule(() -> { }, 1, TimeUnit.DAYS);
+        }
+    }
+}
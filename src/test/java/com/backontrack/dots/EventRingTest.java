@@ -0,0 +1,98 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A read either copies an entry exactly as it was published or reports that it cannot: never an
+ * entry still being written, overwritten meanwhile, or not published yet.
+ */
+class EventRingTest {
+
+    @Test
+    void readsPublishedEntries() {
+        EventRing ring = new EventRing(5);
+        assertEquals(8, ring.capacity());
+        EventRing.Entry entry = new EventRing.Entry();
+        assertFalse(ring.read(0, entry));
+
+        ring.publish(2, 7, 1, 2, 3, 4, "first");
+        ring.publish(3, 8, 5, 6, 7, 8, null);
+        assertEquals(2, ring.head());
+        assertTrue(ring.read(0, entry));
+        assertEquals(0, entry.sequence);
+        assertEquals(2, entry.level);
+        assertEquals(7, entry.event);
+        assertArrayEquals(new int[]{1, 2, 3, 4}, entry.args);
+        assertEquals("first", entry.message);
+        assertTrue(ring.read(1, entry));
+        assertEquals(8, entry.event);
+        assertNull(entry.message);
+        assertFalse(ring.read(2, entry));
+    }
+
+    @Test
+    void keepsOnlyTheNewestEntries() {
+        EventRing ring = new EventRing(4);
+        for (int i = 0; i < 10; i++) ring.publish(0, 0, i, 0, 0, 0, null);
+        EventRing.Entry entry = new EventRing.Entry();
+        for (long sequence = 0; sequence < 6; sequence++) {
+            assertFalse(ring.read(sequence, entry), "entry " + sequence + " was overwritten");
+        }
+        for (long sequence = 6; sequence < 10; sequence++) {
+            assertTrue(ring.read(sequence, entry));
+            assertEquals(sequence, entry.args[0]);
+        }
+    }
+
+    @Test
+    void concurrentReadsNeverSeeTornEntries() throws Exception {
+        // a small ring, so that writers keep overwriting the slots the reader is copying
+        EventRing ring = new EventRing(16);
+        int writers = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong torn = new AtomicLong();
+        AtomicLong read = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500_000; i++) {
+                        ring.publish(writer, i & 0x7F, writer, i, writer ^ i, ~i, null);
+                    }
+                }));
+            }
+            Future<?> reader = executor.submit(() -> {
+                EventRing.Entry entry = new EventRing.Entry();
+                while (!done.get()) {
+                    long head = ring.head();
+                    for (long sequence = Math.max(0, head - ring.capacity()); sequence < head; sequence++) {
+                        if (!ring.read(sequence, entry)) continue;
+                        read.incrementAndGet();
+                        int[] args = entry.args;
+                        if (entry.sequence != sequence || entry.level != args[0] || entry.event != (args[1] & 0x7F)
+                                || args[2] != (args[0] ^ args[1]) || args[3] != ~args[1]) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            for (Future<?> future : futures) future.get(60, TimeUnit.SECONDS);
+            done.set(true);
+            reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(read.get() > 0);
+        assertEquals(0, torn.get());
+    }
+}
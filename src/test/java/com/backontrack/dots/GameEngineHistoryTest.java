@@ -0,0 +1,108 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static com.backontrack.dots.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Undo and redo must leave a game exactly as if the moves taken back had never been played:
+ * board, captures and the capture engine's enclosures, which decide every later capture.
+ */
+class GameEngineHistoryTest {
+
+    private static final int WIDTH = 14;
+    private static final int HEIGHT = 12;
+
+    @Test
+    void undoAndRedoMatchAnUninterruptedGame() {
+        for (int seed = 0; seed < 60; seed++) {
+            Random random = new Random(seed);
+            GameEngine game = new GameEngine(WIDTH, HEIGHT, new Random(0));
+            List<int[]> played = new ArrayList<>();
+            Deque<int[]> undone = new ArrayDeque<>();
+            for (int step = 0; step < 250; step++) {
+                int choice = random.nextInt(10);
+                if (choice == 0 && !played.isEmpty()) {
+                    assertTrue(game.undo());
+                    undone.push(played.remove(played.size() - 1));
+                } else if (choice == 1 && !undone.isEmpty()) {
+                    assertTrue(game.redo());
+                    played.add(undone.pop());
+                } else {
+                    int[] action = randomAction(game, random);
+                    if (action == null || !apply(game, action)) continue;
+                    played.add(action);
+                    undone.clear();
+                }
+                if (step % 5 == 0) {
+                    assertSameGame(replay(played), game, "seed " + seed + ", step " + step);
+                }
+            }
+        }
+    }
+
+    @Test
+    void discardedActionCannotBeRedone() {
+        GameEngine game = new GameEngine(WIDTH, HEIGHT, new Random(0));
+        assertTrue(game.placeDot(2, 2));
+        assertTrue(game.discardLastAction());
+        assertFalse(game.redo());
+        assertEquals(0, game.getState().getOwner(2, 2));
+        assertEquals(0, game.getRecord().getMoveCount());
+    }
+
+    /** A dot for either side on a random cell, or a player line in a random direction. */
+    private static int[] randomAction(GameEngine game, Random random) {
+        int cell = random.nextInt(WIDTH * HEIGHT);
+        int row = cell / WIDTH;
+        int col = cell % WIDTH;
+        if (random.nextInt(3) == 0) {
+            int direction = random.nextInt(ConnectionStore.DIRECTIONS);
+            return new int[]{0, row, col, row + ConnectionStore.rowOffset(direction), col + ConnectionStore.colOffset(direction)};
+        }
+        if (game.getState().getOwner(row, col) != 0) return null;
+        return new int[]{random.nextBoolean() ? PLAYER : COMPUTER, row, col};
+    }
+
+    private static boolean apply(GameEngine game, int[] action) {
+        if (action[0] == 0) {
+            return game.connect(action[1], action[2], action[3], action[4]);
+        }
+        Dot dot = game.chooseMove(action[0], (dotMap, owner, lastRow, lastCol) -> dotMap.getDot(action[1], action[2]));
+        return game.playMove(action[0], dot) != null;
+    }
+
+    private static GameEngine replay(List<int[]> actions) {
+        GameEngine game = new GameEngine(WIDTH, HEIGHT, new Random(0));
+        for (int[] action : actions) {
+            assertTrue(apply(game, action));
+        }
+        return game;
+    }
+
+    private static void assertSameGame(GameEngine expected, GameEngine actual, String where) {
+        GameState want = expected.getState();
+        GameState got = actual.getState();
+        assertEquals(want.getMoveCount(), got.getMoveCount(), where + ": moves");
+        assertEquals(want.getCaptures(PLAYER), got.getCaptures(PLAYER), where + ": player captures");
+        assertEquals(want.getCaptures(COMPUTER), got.getCaptures(COMPUTER), where + ": computer captures");
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                String cell = where + ", cell (" + row + ", " + col + ")";
+                assertEquals(want.getOwner(row, col), got.getOwner(row, col), cell + ": owner");
+                assertEquals(want.isBlocked(row, col), got.isBlocked(row, col), cell + ": blocked");
+                for (int owner = PLAYER; owner <= COMPUTER; owner++) {
+                    assertEquals(expected.isEnclosedBy(row, col, owner), actual.isEnclosedBy(row, col, owner),
+                            cell + ": enclosed by " + owner);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records must come back from an archive exactly as written, and a stream that does not hold a
+ * valid record must fail when read rather than during a replay.
+ */
+class GameRecordTest {
+
+    @Test
+    void recordsRoundTripThroughOneArchive() throws IOException {
+        GameRecord first = randomRecord(37, 23, new Random(1));
+        GameRecord second = randomRecord(5, 9, new Random(2));
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(archive)) {
+            first.writeTo(out);
+            second.writeTo(out);
+        }
+
+        DataInputStream in = input(archive.toByteArray());
+        assertSameRecord(first, GameRecord.readFrom(in));
+        assertSameRecord(second, GameRecord.readFrom(in));
+        assertNull(GameRecord.readFrom(in));
+    }
+
+    @Test
+    void largestBoardRoundTrips() throws IOException {
+        int side = GameRecord.MAX_SIDE;
+        GameRecord record = new GameRecord(side, side);
+        record.dotPlaced(side - 1, side - 1, Constants.COMPUTER);
+        record.dotPlaced(side - 2, side - 1, Constants.COMPUTER);
+        record.connectionAdded(side - 2, side - 1, side - 1, side - 1);
+        record.dotPlaced(side - 2, side - 2, Constants.PLAYER);
+        assertSameRecord(record, GameRecord.readFrom(input(bytesOf(record))));
+    }
+
+    @Test
+    void rejectsBadBoardSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new GameRecord(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new GameRecord(10, GameRecord.MAX_SIDE + 1));
+        assertThrows(IOException.class, () -> GameRecord.readFrom(input(header(0, 10, 0, 0))));
+        assertThrows(IOException.class, () -> GameRecord.readFrom(input(header(GameRecord.MAX_SIDE + 1, 10, 0, 0))));
+    }
+
+    @Test
+    void rejectsCorruptStreams() {
+        byte[] valid = bytesOf(randomRecord(10, 10, new Random(3)));
+
+        byte[] badMagic = valid.clone();
+        badMagic[0] ^= 1;
+        assertThrows(IOException.class, () -> GameRecord.readFrom(input(badMagic)));
+
+        byte[] badVersion = valid.clone();
+        badVersion[4] = 99;
+        assertThrows(IOException.class, () -> GameRecord.readFrom(input(badVersion)));
+
+        byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+        assertThrows(EOFException.class, () -> GameRecord.readFrom(input(truncated)));
+    }
+
+    @Test
+    void rejectsCorruptEntries() throws IOException {
+        // entries as GameRecord appends them: (cell * 2 + owner - 1) << 1 for a dot, (cell * 4 + direction) << 1 | 1 for a line
+        assertNotNull(GameRecord.readFrom(input(record(10, 10, 1, varint(0)))));
+
+        // a dot off the board
+        assertCorrupt(record(10, 10, 1, varint(100 * 2 << 1)));
+        // a line leaving the board to the east from the last column
+        assertCorrupt(record(10, 10, 0, varint((9 * 4 + ConnectionStore.EAST) << 1 | 1)));
+        // the log ends after a continuation byte
+        assertCorrupt(record(10, 10, 1, new byte[]{0, (byte) 0x80}));
+        // a fifth byte holding more than the top four bits of 32, or announcing a sixth
+        assertCorrupt(record(10, 10, 1, new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10}));
+        assertCorrupt(record(10, 10, 1, new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}));
+        // the header counts two dots, the log holds one
+        assertCorrupt(record(10, 10, 2, varint(0)));
+    }
+
+    private static void assertCorrupt(byte[] bytes) {
+        assertThrows(IOException.class, () -> GameRecord.readFrom(input(bytes)));
+    }
+
+    /** A header as {@link GameRecord#writeTo(DataOutputStream)} writes it, followed by {@code log}. */
+    private static byte[] record(int width, int height, int moveCount, byte[] log) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(header(width, height, moveCount, log.length));
+        bytes.writeBytes(log);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] varint(int value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while ((value & ~0x7F) != 0) {
+            bytes.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes.write(value);
+        return bytes.toByteArray();
+    }
+
+    private static GameRecord randomRecord(int width, int height, Random random) {
+        GameRecord record = new GameRecord(width, height);
+        for (int i = 0; i < width * height; i++) {
+            int row = random.nextInt(height);
+            int col = random.nextInt(width);
+            if (random.nextBoolean()) {
+                record.dotPlaced(row, col, 1 + random.nextInt(2));
+            } else {
+                int direction = random.nextInt(ConnectionStore.DIRECTIONS);
+                int toRow = row + ConnectionStore.rowOffset(direction);
+                int toCol = col + ConnectionStore.colOffset(direction);
+                if (toRow >= 0 && toRow < height && toCol >= 0 && toCol < width) {
+                    record.connectionAdded(row, col, toRow, toCol);
+                }
+            }
+        }
+        return record;
+    }
+
+    private static void assertSameRecord(GameRecord expected, GameRecord actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        assertEquals(expected.getByteLength(), actual.getByteLength());
+        assertEquals(entries(expected), entries(actual));
+    }
+
+    private static List<String> entries(GameRecord record) {
+        List<String> entries = new ArrayList<>();
+        GameRecord.Cursor cursor = record.cursor(0);
+        while (cursor.next()) {
+            entries.add(cursor.line ? "line " + cursor.cell + " " + cursor.direction : "dot " + cursor.cell + " " + cursor.owner);
+        }
+        return entries;
+    }
+
+    private static byte[] bytesOf(GameRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            record.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** A header as {@link GameRecord#writeTo(DataOutputStream)} writes it. */
+    private static byte[] header(int width, int height, int moveCount, int length) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0x444F5453);
+            out.writeByte(1);
+            out.writeShort(width);
+            out.writeShort(height);
+            out.writeInt(moveCount);
+            out.writeInt(length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,97 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Versions of a board must stay as they were when derived, and comparing two of them must visit
+ * exactly the cells that differ, whatever the path between them.
+ */
+class PersistentBoardTest {
+
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 19;
+
+    @Test
+    void forEachDifferenceVisitsExactlyTheChangedCells() {
+        Random random = new Random(1);
+        List<PersistentBoard> versions = new ArrayList<>();
+        List<int[]> values = new ArrayList<>();
+        PersistentBoard board = PersistentBoard.empty(WIDTH, HEIGHT);
+        int[] cells = new int[board.size()];
+        versions.add(board);
+        values.add(cells.clone());
+        for (int step = 0; step < 300; step++) {
+            int cell = random.nextInt(board.size());
+            int owner = random.nextInt(3);
+            board = board.withOwner(cell, owner).withBlocked(cell, random.nextInt(4) == 0);
+            cells[cell] = owner * 2 + (board.isBlocked(cell) ? 1 : 0);
+            versions.add(board);
+            values.add(cells.clone());
+        }
+
+        for (int trial = 0; trial < 200; trial++) {
+            int from = random.nextInt(versions.size());
+            int to = random.nextInt(versions.size());
+            List<Integer> expected = new ArrayList<>();
+            for (int cell = 0; cell < board.size(); cell++) {
+                if (values.get(from)[cell] != values.get(to)[cell]) expected.add(cell);
+            }
+            List<Integer> visited = new ArrayList<>();
+            versions.get(from).forEachDifference(versions.get(to), visited::add);
+            assertEquals(expected, visited, "versions " + from + " and " + to);
+        }
+    }
+
+    @Test
+    void earlierVersionsAreNotChangedByLaterOnes() {
+        PersistentBoard empty = PersistentBoard.empty(WIDTH, HEIGHT);
+        PersistentBoard dot = empty.withOwner(40, Constants.PLAYER);
+        PersistentBoard line = dot.withOwner(41, Constants.PLAYER).withLine(40, ConnectionStore.EAST);
+
+        assertEquals(0, empty.getOwner(40));
+        assertEquals(0, dot.getLines(40));
+        assertEquals(1 << ConnectionStore.EAST, line.getLines(40));
+        assertEquals(1 << ConnectionStore.WEST, line.getLines(41));
+        assertSame(line, line.withLine(41, ConnectionStore.WEST));
+        assertSame(dot, dot.withOwner(40, Constants.PLAYER));
+        List<Integer> visited = new ArrayList<>();
+        line.forEachDifference(line, visited::add);
+        assertTrue(visited.isEmpty());
+    }
+
+    @Test
+    void hashMatchesTheDotMapForTheSamePosition() {
+        DotMap dotMap = new DotMap(WIDTH, HEIGHT);
+        dotMap.createDotMap();
+        PersistentBoard board = PersistentBoard.empty(WIDTH, HEIGHT);
+        assertEquals(dotMap.getHash(), board.getHash());
+
+        Dot a = dotMap.getDot(3, 4);
+        Dot b = dotMap.getDot(4, 5);
+        dotMap.attributeDotToComputer(a);
+        dotMap.attributeDotToComputer(b);
+        dotMap.addConnection(a, b);
+        dotMap.setBlocked(b, true);
+        int cellA = dotMap.indexOf(a);
+        int cellB = dotMap.indexOf(b);
+        board = board.withOwner(cellA, Constants.COMPUTER).withOwner(cellB, Constants.COMPUTER)
+                .withLine(cellA, ConnectionStore.SOUTH_EAST).withBlocked(cellB, true);
+        assertEquals(dotMap.getHash(), board.getHash());
+        assertEquals(dotMap.getHash(), dotMap.snapshot().getHash());
+    }
+
+    @Test
+    void rejectsLinesOffTheBoardAndBoardsOfAnotherSize() {
+        PersistentBoard board = PersistentBoard.empty(WIDTH, HEIGHT);
+        assertThrows(IllegalArgumentException.class, () -> board.withLine(WIDTH - 1, ConnectionStore.EAST));
+        assertThrows(IllegalArgumentException.class, () -> board.withLine(0, ConnectionStore.NORTH));
+        assertThrows(IllegalArgumentException.class,
+                () -> board.forEachDifference(PersistentBoard.empty(WIDTH, HEIGHT + 1), cell -> { }));
+    }
+}
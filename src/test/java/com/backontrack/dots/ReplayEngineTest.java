@@ -0,0 +1,99 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.backontrack.dots.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Every position a replay rebuilds, from a snapshot and part of the log, must be the one the game
+ * had after that many dots, with the lines drawn before the next dot and its captures marked.
+ */
+class ReplayEngineTest {
+
+    @Test
+    void positionAtMatchesTheGameAfterEveryMove() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            GameEngine game = new GameEngine(12, 10, new Random(seed));
+            List<int[]> positions = new ArrayList<>();
+            for (int step = 0; step < 150; step++) {
+                int row = random.nextInt(10);
+                int col = random.nextInt(12);
+                if (random.nextInt(3) == 0) {
+                    int direction = random.nextInt(ConnectionStore.DIRECTIONS);
+                    game.connect(row, col, row + ConnectionStore.rowOffset(direction), col + ConnectionStore.colOffset(direction));
+                } else if (game.getState().getOwner(row, col) == 0) {
+                    // the position after the previous dot is complete once the next one is placed
+                    positions.add(snapshotOf(game));
+                    int owner = random.nextBoolean() ? PLAYER : COMPUTER;
+                    game.playMove(owner, game.chooseMove(owner, (dotMap, side, lastRow, lastCol) -> dotMap.getDot(row, col)));
+                }
+            }
+            positions.add(snapshotOf(game));
+
+            for (int interval : new int[]{1, 7, ReplayEngine.DEFAULT_SNAPSHOT_INTERVAL}) {
+                ReplayEngine replay = new ReplayEngine(game.getRecord(), interval);
+                assertEquals(positions.size() - 1, replay.getMoveCount());
+                for (int move = 0; move < positions.size(); move++) {
+                    assertSamePosition(positions.get(move), replay.positionAt(move),
+                            "seed " + seed + ", interval " + interval + ", move " + move);
+                }
+            }
+        }
+    }
+
+    @Test
+    void positionAtMarksCaptures() {
+        GameEngine game = new GameEngine(6, 6, new Random(0));
+        int[][] ring = {{1, 2}, {2, 1}, {3, 2}, {2, 3}};
+        for (int[] cell : ring) assertTrue(game.placeDot(cell[0], cell[1]));
+        Dot inside = game.chooseMove(COMPUTER, (dotMap, owner, lastRow, lastCol) -> dotMap.getDot(2, 2));
+        assertNotNull(game.playMove(COMPUTER, inside));
+        for (int i = 0; i < ring.length; i++) {
+            int[] from = ring[i];
+            int[] to = ring[(i + 1) % ring.length];
+            assertTrue(game.connect(from[0], from[1], to[0], to[1]));
+        }
+
+        ReplayEngine replay = new ReplayEngine(game.getRecord(), 2);
+        assertFalse(replay.positionAt(4).getDot(2, 2).isBlocked());
+        assertTrue(replay.positionAt(5).getDot(2, 2).isBlocked());
+        assertTrue(game.getState().isBlocked(2, 2));
+    }
+
+    @Test
+    void rejectsMovesOutsideTheGame() {
+        GameEngine game = new GameEngine(6, 6, new Random(0));
+        assertTrue(game.placeDot(1, 1));
+        ReplayEngine replay = new ReplayEngine(game.getRecord());
+        assertThrows(IllegalArgumentException.class, () -> replay.positionAt(-1));
+        assertThrows(IllegalArgumentException.class, () -> replay.positionAt(2));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayEngine(game.getRecord(), 0));
+    }
+
+    /** Per cell: owner, blocked flag (bit 2) and line directions (from bit 8). */
+    private static int[] snapshotOf(GameEngine game) {
+        GameState state = game.getState();
+        ConnectionStore connections = state.getConnections();
+        int[] cells = new int[connections.size()];
+        for (int cell = 0; cell < cells.length; cell++) {
+            int row = cell / state.getWidth();
+            int col = cell % state.getWidth();
+            cells[cell] = state.getOwner(row, col) | (state.isBlocked(row, col) ? 4 : 0) | connections.mask(cell) << 8;
+        }
+        return cells;
+    }
+
+    private static void assertSamePosition(int[] expected, DotMap actual, String where) {
+        for (int cell = 0; cell < expected.length; cell++) {
+            Dot dot = actual.getDot(cell);
+            int replayed = dot.getPlayer() | (dot.isBlocked() ? 4 : 0) | actual.getConnections().mask(cell) << 8;
+            assertEquals(expected[cell], replayed, where + ", cell " + cell);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.backontrack.dots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The table may forget any entry, but must never return a value stored for another position,
+ * not even while several threads overwrite the same slots.
+ */
+class TranspositionTableTest {
+
+    private static final long MISSING = Long.MIN_VALUE;
+
+    @Test
+    void returnsStoredValuesAndMissesOthers() {
+        TranspositionTable table = new TranspositionTable(1000);
+        assertEquals(1024, table.capacity());
+        // a never-written slot holds zeros, which must not read as key 0 with value 0
+        assertEquals(MISSING, table.get(0L, MISSING));
+
+        table.put(0L, 0L);
+        table.put(42L, -7L);
+        assertEquals(0L, table.get(0L, MISSING));
+        assertEquals(-7L, table.get(42L, MISSING));
+        assertEquals(MISSING, table.get(43L, MISSING));
+        assertEquals(2, table.getHits());
+        assertEquals(2, table.getMisses());
+
+        table.clear();
+        assertEquals(MISSING, table.get(42L, MISSING));
+        assertEquals(0, table.getHits());
+        assertEquals(1, table.getMisses());
+    }
+
+    @Test
+    void newEntryReplacesTheOneInItsSlot() {
+        TranspositionTable table = new TranspositionTable(16);
+        long key = 5L;
+        // same low bits, so the same slot of a 16-entry table
+        long rival = key + (16L << 32) + 16L;
+        table.put(key, 1L);
+        table.put(rival, 2L);
+        assertEquals(MISSING, table.get(key, MISSING));
+        assertEquals(2L, table.get(rival, MISSING));
+    }
+
+    @Test
+    void rejectsBadCapacities() {
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable((1 << 29) + 1));
+    }
+
+    @Test
+    void concurrentWritersNeverMixEntries() throws Exception {
+        // a small table, so that the threads keep overwriting each other's slots
+        TranspositionTable table = new TranspositionTable(64);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicLong wrong = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 200_000; i++) {
+                        long key = random.nextLong(4096) * 0x9E3779B97F4A7C15L + seed;
+                        if (random.nextBoolean()) {
+                            table.put(key, valueOf(key));
+                        } else {
+                            long value = table.get(key, MISSING);
+                            if (value != MISSING) {
+                                hits.incrementAndGet();
+                                if (value != valueOf(key)) wrong.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(hits.get() > 0);
+        assertEquals(0, wrong.get());
+    }
+
+    private static long valueOf(long key) {
+        return Long.rotateLeft(key, 17) ^ 0x5DEECE66DL;
+    }
+}